@@ -0,0 +1,57 @@
+package com.stringcode.websocket_app.benchmark;
+
+import com.stringcode.websocket_app.config.JacksonConfig;
+import com.stringcode.websocket_app.dto.WebSocketMessageDto;
+import com.stringcode.websocket_app.enums.WireProtocol;
+import com.stringcode.websocket_app.service.MessageBroadcaster;
+import com.stringcode.websocket_app.service.SessionRegistry;
+import com.stringcode.websocket_app.service.WireCodec;
+import com.stringcode.websocket_app.service.cluster.SingleNodeClusterBus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Room fan-out with a shared encoded frame, against encoding once per recipient.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class BroadcastBenchmark {
+
+	@Param({"10", "100", "1000"})
+	int roomSize;
+
+	@Param({"1000", "10000"})
+	int totalSessions;
+
+	private SessionRegistry registry;
+	private MessageBroadcaster broadcaster;
+	private WebSocketMessageDto message;
+
+	@Setup
+	public void setUp() {
+		registry = new SessionRegistry();
+		broadcaster = new MessageBroadcaster(new WireCodec(new JacksonConfig().objectMapper()), registry, new SingleNodeClusterBus(), new SimpleMeterRegistry());
+		for (int i = 0; i < Math.max(totalSessions, roomSize); i++) {
+			String username = "user" + i;
+			registry.register(new StubWebSocketSession(String.valueOf(i)), username);
+			registry.join(username, "room" + (i / roomSize));
+		}
+		message = Fixtures.chat("room0");
+	}
+
+	@Benchmark
+	public void broadcastToRoom() {
+		broadcaster.broadcastToRoom("room0", message);
+	}
+
+	@Benchmark
+	public void broadcastToRoomEncodingPerRecipient() {
+		for (WebSocketSession session : registry.getRoomSessions("room0")) {
+			broadcaster.sendToSession(session, broadcaster.encode(message, WireProtocol.JSON));
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package com.stringcode.websocket_app.benchmark;
+
+import com.stringcode.websocket_app.config.JacksonConfig;
+import com.stringcode.websocket_app.dto.WebSocketMessageDto;
+import com.stringcode.websocket_app.enums.WireProtocol;
+import com.stringcode.websocket_app.service.MessageBroadcaster;
+import com.stringcode.websocket_app.service.SessionRegistry;
+import com.stringcode.websocket_app.service.WireCodec;
+import com.stringcode.websocket_app.service.cluster.SingleNodeClusterBus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization cost of a single send, per wire protocol and message shape.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class EncodingBenchmark {
+
+	@Param({"JSON", "CBOR"})
+	WireProtocol protocol;
+
+	@Param({"CHAT", "PRESENCE_BATCH"})
+	String kind;
+
+	private MessageBroadcaster broadcaster;
+	private StubWebSocketSession session;
+	private WebSocketMessageDto message;
+
+	@Setup
+	public void setUp() {
+		broadcaster = new MessageBroadcaster(new WireCodec(new JacksonConfig().objectMapper()), new SessionRegistry(), new SingleNodeClusterBus(), new SimpleMeterRegistry());
+		session = new StubWebSocketSession("1", protocol.getSubprotocol());
+		message = kind.equals("CHAT") ? Fixtures.chat("general") : Fixtures.presenceBatch("general", 20);
+	}
+
+	@Benchmark
+	public WebSocketMessage<?> encode() {
+		return broadcaster.encode(message, protocol);
+	}
+
+	@Benchmark
+	public void sendToSession() {
+		broadcaster.send(session, message);
+	}
+}
@@ -0,0 +1,34 @@
+package com.stringcode.websocket_app.benchmark;
+
+import com.stringcode.websocket_app.dto.WebSocketMessageDto;
+import com.stringcode.websocket_app.dto.payload.ChatPayload;
+import com.stringcode.websocket_app.enums.MessageType;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+final class Fixtures {
+
+	static final LocalDateTime TIMESTAMP = LocalDateTime.of(2024, 5, 1, 12, 30, 15, 123_000_000);
+
+	private Fixtures() {
+	}
+
+	static WebSocketMessageDto chat(String roomId) {
+		return new WebSocketMessageDto(MessageType.CHAT,
+				new ChatPayload("Has anyone tried the new build yet? Deploy looks green on my side.", roomId),
+				TIMESTAMP, "alice", "alice");
+	}
+
+	static WebSocketMessageDto presenceBatch(String roomId, int events) {
+		List<Map<String, String>> list = new ArrayList<>(events);
+		for (int i = 0; i < events; i++) {
+			list.add(Map.of("type", i % 2 == 0 ? "JOIN" : "LEAVE", "username", "user" + i, "roomId", roomId));
+		}
+		return new WebSocketMessageDto(MessageType.PRESENCE_BATCH,
+				Map.of("scope", "room", "roomId", roomId, "version", 42L, "events", list),
+				TIMESTAMP, "SYSTEM", "SYSTEM");
+	}
+}
@@ -0,0 +1,52 @@
+package com.stringcode.websocket_app.benchmark;
+
+import com.stringcode.websocket_app.config.JacksonConfig;
+import com.stringcode.websocket_app.dto.WebSocketMessageDto;
+import com.stringcode.websocket_app.enums.WireProtocol;
+import com.stringcode.websocket_app.service.WireCodec;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of inbound frames as done by ChatWebSocketHandler, in both wire formats.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class FrameDecodingBenchmark {
+
+	private static final String TAIL = ",\"timestamp\":\"2024-05-01T12:30:15.123Z\",\"senderId\":\"alice\",\"senderName\":\"alice\"}";
+
+	@Param({"CHAT", "JOIN", "ICE_CANDIDATE"})
+	String kind;
+
+	private WireCodec codec;
+	private TextMessage text;
+	private BinaryMessage binary;
+
+	@Setup
+	public void setUp() throws Exception {
+		codec = new WireCodec(new JacksonConfig().objectMapper());
+		String payload = switch (kind) {
+			case "CHAT" -> "{\"content\":\"Has anyone tried the new build yet?\",\"roomId\":\"general\"}";
+			case "JOIN" -> "{\"roomId\":\"general\",\"username\":\"alice\"}";
+			default -> "{\"candidate\":\"candidate:842163049 1 udp 1677729535 203.0.113.7 46154 typ srflx raddr 10.0.0.5 rport 46154 generation 0\",\"sdpMid\":\"0\",\"sdpMLineIndex\":0}";
+		};
+		text = new TextMessage("{\"type\":\"" + kind + "\",\"payload\":" + payload + TAIL);
+		WebSocketMessageDto decoded = codec.decode(text);
+		binary = (BinaryMessage) codec.encode(decoded, WireProtocol.CBOR);
+	}
+
+	@Benchmark
+	public WebSocketMessageDto decodeJson() throws Exception {
+		return codec.decode(text);
+	}
+
+	@Benchmark
+	public WebSocketMessageDto decodeCbor() throws Exception {
+		return codec.decode(binary);
+	}
+}
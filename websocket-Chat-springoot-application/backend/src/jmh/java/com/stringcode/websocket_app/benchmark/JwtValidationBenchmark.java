@@ -0,0 +1,64 @@
+package com.stringcode.websocket_app.benchmark;
+
+import com.stringcode.websocket_app.service.JwtService;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token checks done by JwtAuthenticationFilter per request: the cached path against a
+ * full verification with a freshly built key and parser for each of the three reads.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class JwtValidationBenchmark {
+
+	private static final String SECRET = "9a4f4c35456545445258584850524b584e4b524b584e4b524b584e4b524b584e";
+
+	private JwtService jwtService;
+	private UserDetails user;
+	private String token;
+
+	@Setup
+	public void setUp() {
+		jwtService = new JwtService(new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(jwtService, "secretKey", SECRET);
+		ReflectionTestUtils.setField(jwtService, "jwtExpiration", 3_600_000L);
+		ReflectionTestUtils.setField(jwtService, "verifiedCacheSize", 10_000L);
+		jwtService.init();
+		user = User.withUsername("alice").password("x").build();
+		token = jwtService.generateToken(user);
+	}
+
+	@Benchmark
+	public boolean cachedValidation() {
+		String username = jwtService.extractUsername(token);
+		return username != null && jwtService.isTokenValid(token, user);
+	}
+
+	@Benchmark
+	public boolean uncachedValidation() {
+		String username = parse(token).getSubject();
+		return username != null
+				&& parse(token).getSubject().equals(user.getUsername())
+				&& !parse(token).getExpiration().before(new Date());
+	}
+
+	private static Claims parse(String token) {
+		return Jwts.parser()
+				.verifyWith(Keys.hmacShaKeyFor(Decoders.BASE64.decode(SECRET)))
+				.build()
+				.parseSignedClaims(token)
+				.getPayload();
+	}
+}
@@ -0,0 +1,239 @@
+package com.stringcode.websocket_app.benchmark;
+
+import com.stringcode.websocket_app.dto.ChatMessageDto;
+import com.stringcode.websocket_app.enums.MessageType;
+import com.stringcode.websocket_app.model.ChatMessage;
+import com.stringcode.websocket_app.service.log.SegmentLogMessageStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Append and history-page throughput of the segment log against PostgreSQL.
+ * <p>
+ * PostgreSQL runs the statements {@code JpaMessageStore} issues through plain JDBC, on a
+ * scratch table with the history index: inserts in committed batches of 100 as the
+ * write-behind writer does, and the latest / before-cursor keyset queries. That leaves
+ * out Hibernate, so it is the database's best case. The log appends one message at a
+ * time and is flushed once a second in the background, as the scheduler does in the app.
+ * <p>
+ * The PostgreSQL benchmarks need a database:
+ * {@code -Djmh.args="MessageStore -p jdbcUrl=jdbc:postgresql://localhost:5432/chatapp?user=postgres&password=..."};
+ * run only the log with {@code -Djmh.args="MessageStoreBenchmark.log"}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MessageStoreBenchmark {
+
+	private static final int ROOMS = 100;
+	private static final int MESSAGES_PER_ROOM = 2_000;
+	private static final int PAGE = 50;
+	private static final int BATCH = 100;
+	private static final String CONTENT = "a typical chat message of about sixty characters, give or take";
+
+	@State(Scope.Benchmark)
+	public static class LogState {
+
+		Path dir;
+		SegmentLogMessageStore store;
+		ScheduledExecutorService flusher;
+		long lastId;
+
+		@Setup
+		public void setUp() throws IOException {
+			dir = Files.createTempDirectory("message-log-bench");
+			store = new SegmentLogMessageStore(new SimpleMeterRegistry(), dir.toString(), 16 * 1024 * 1024, 4096, 0);
+			store.open();
+			for (int i = 0; i < MESSAGES_PER_ROOM; i++) {
+				for (int room = 0; room < ROOMS; room++) {
+					store.append(message(room));
+				}
+			}
+			lastId = (long) ROOMS * MESSAGES_PER_ROOM;
+			store.flush();
+			flusher = Executors.newSingleThreadScheduledExecutor();
+			flusher.scheduleWithFixedDelay(store::flush, 1, 1, TimeUnit.SECONDS);
+		}
+
+		@TearDown
+		public void tearDown() throws IOException {
+			flusher.shutdownNow();
+			store.close();
+			try (Stream<Path> files = Files.walk(dir)) {
+				for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+					Files.delete(file);
+				}
+			}
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class PostgresState {
+
+		@Param("jdbc:postgresql://localhost:5432/chatapp?user=postgres")
+		String jdbcUrl;
+
+		Connection connection;
+		PreparedStatement insert;
+		PreparedStatement latest;
+		PreparedStatement timestamp;
+		PreparedStatement before;
+		long nextId;
+		long lastId;
+
+		@Setup
+		public void setUp() throws SQLException {
+			connection = DriverManager.getConnection(jdbcUrl.contains("reWriteBatchedInserts")
+					? jdbcUrl : jdbcUrl + (jdbcUrl.contains("?") ? "&" : "?") + "reWriteBatchedInserts=true");
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("drop table if exists chat_messages_bench");
+				statement.execute("create table chat_messages_bench (id bigint primary key, content text, room_id varchar(255), " +
+						"sender_name varchar(255), \"timestamp\" timestamp(6) not null, type varchar(255))");
+				statement.execute("create index on chat_messages_bench (room_id, \"timestamp\", id)");
+			}
+			connection.setAutoCommit(false);
+			insert = connection.prepareStatement("insert into chat_messages_bench (content, room_id, sender_name, \"timestamp\", type, id) values (?, ?, ?, ?, ?, ?)");
+			latest = connection.prepareStatement("select id, type, content, sender_name, room_id, \"timestamp\" from chat_messages_bench " +
+					"where room_id = ? order by \"timestamp\" desc, id desc limit ?");
+			timestamp = connection.prepareStatement("select \"timestamp\" from chat_messages_bench where id = ? and room_id = ?");
+			before = connection.prepareStatement("select id, type, content, sender_name, room_id, \"timestamp\" from chat_messages_bench " +
+					"where room_id = ? and \"timestamp\" <= ? and (\"timestamp\" < ? or (\"timestamp\" = ? and id < ?)) " +
+					"order by \"timestamp\" desc, id desc limit ?");
+			for (int i = 0; i < MESSAGES_PER_ROOM * ROOMS / BATCH; i++) {
+				insertBatch();
+			}
+			lastId = nextId;
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("analyze chat_messages_bench");
+			}
+			connection.commit();
+		}
+
+		@TearDown
+		public void tearDown() throws SQLException {
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("drop table chat_messages_bench");
+			}
+			connection.commit();
+			connection.close();
+		}
+
+		void insertBatch() throws SQLException {
+			for (int i = 0; i < BATCH; i++) {
+				ChatMessage m = message((int) (nextId % ROOMS));
+				insert.setString(1, m.getContent());
+				insert.setString(2, m.getRoomId());
+				insert.setString(3, m.getSenderName());
+				insert.setTimestamp(4, Timestamp.valueOf(m.getTimestamp()));
+				insert.setString(5, m.getType().name());
+				insert.setLong(6, ++nextId);
+				insert.addBatch();
+			}
+			insert.executeBatch();
+			connection.commit();
+		}
+
+		List<ChatMessageDto> findLatest(String roomId) throws SQLException {
+			latest.setString(1, roomId);
+			latest.setInt(2, PAGE);
+			return rows(latest);
+		}
+
+		List<ChatMessageDto> findBefore(String roomId, long beforeId) throws SQLException {
+			timestamp.setLong(1, beforeId);
+			timestamp.setString(2, roomId);
+			Timestamp ts;
+			try (ResultSet rs = timestamp.executeQuery()) {
+				if (!rs.next()) {
+					return List.of();
+				}
+				ts = rs.getTimestamp(1);
+			}
+			before.setString(1, roomId);
+			before.setTimestamp(2, ts);
+			before.setTimestamp(3, ts);
+			before.setTimestamp(4, ts);
+			before.setLong(5, beforeId);
+			before.setInt(6, PAGE);
+			return rows(before);
+		}
+
+		private static List<ChatMessageDto> rows(PreparedStatement query) throws SQLException {
+			List<ChatMessageDto> page = new ArrayList<>(PAGE);
+			try (ResultSet rs = query.executeQuery()) {
+				while (rs.next()) {
+					page.add(new ChatMessageDto(rs.getLong(1), MessageType.valueOf(rs.getString(2)), rs.getString(3),
+							rs.getString(4), rs.getString(5), rs.getTimestamp(6).toLocalDateTime(), null));
+				}
+			}
+			return page;
+		}
+	}
+
+	@Benchmark
+	public ChatMessage logAppend(LogState state) {
+		ChatMessage message = message(ThreadLocalRandom.current().nextInt(ROOMS));
+		state.store.append(message);
+		return message;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void postgresAppend(PostgresState state) throws SQLException {
+		state.insertBatch();
+	}
+
+	@Benchmark
+	public List<ChatMessageDto> logLatestPage(LogState state) {
+		return state.store.findLatest(randomRoom(), PAGE);
+	}
+
+	@Benchmark
+	public List<ChatMessageDto> postgresLatestPage(PostgresState state) throws SQLException {
+		return state.findLatest(randomRoom());
+	}
+
+	// A page before a random message of the preloaded history; ids are spread round-robin over the rooms.
+	@Benchmark
+	public List<ChatMessageDto> logPageBefore(LogState state) {
+		long id = ThreadLocalRandom.current().nextLong(1, state.lastId + 1);
+		return state.store.findBefore(roomOf(id), id, PAGE);
+	}
+
+	@Benchmark
+	public List<ChatMessageDto> postgresPageBefore(PostgresState state) throws SQLException {
+		long id = ThreadLocalRandom.current().nextLong(1, state.lastId + 1);
+		return state.findBefore(roomOf(id), id);
+	}
+
+	private static String randomRoom() {
+		return "room" + ThreadLocalRandom.current().nextInt(ROOMS);
+	}
+
+	private static String roomOf(long id) {
+		return "room" + (id - 1) % ROOMS;
+	}
+
+	private static ChatMessage message(int room) {
+		return ChatMessage.builder()
+				.type(MessageType.CHAT)
+				.content(CONTENT)
+				.senderName("user" + room)
+				.roomId("room" + room)
+				.timestamp(LocalDateTime.now())
+				.build();
+	}
+}
@@ -0,0 +1,49 @@
+package com.stringcode.websocket_app.benchmark;
+
+import com.stringcode.websocket_app.config.JacksonConfig;
+import com.stringcode.websocket_app.service.MessageBroadcaster;
+import com.stringcode.websocket_app.service.PresencePublisher;
+import com.stringcode.websocket_app.service.SessionRegistry;
+import com.stringcode.websocket_app.service.WireCodec;
+import com.stringcode.websocket_app.service.cluster.ClusterPresence;
+import com.stringcode.websocket_app.service.cluster.SingleNodeClusterBus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building and sending the online-users snapshot a client gets on connect.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class OnlineUsersBenchmark {
+
+	@Param({"100", "1000", "10000"})
+	int onlineUsers;
+
+	private PresencePublisher publisher;
+	private StubWebSocketSession session;
+
+	@Setup
+	public void setUp() {
+		SessionRegistry registry = new SessionRegistry();
+		SingleNodeClusterBus bus = new SingleNodeClusterBus();
+		MessageBroadcaster broadcaster = new MessageBroadcaster(new WireCodec(new JacksonConfig().objectMapper()), registry, bus, new SimpleMeterRegistry());
+		publisher = new PresencePublisher(new ClusterPresence(bus, registry), broadcaster, new SimpleMeterRegistry());
+		for (int i = 0; i < onlineUsers; i++) {
+			String username = "user" + i;
+			registry.register(new StubWebSocketSession(String.valueOf(i)), username);
+			registry.join(username, "room" + (i % 50));
+			publisher.userChanged(username);
+		}
+		publisher.publish();
+		session = new StubWebSocketSession("requester");
+	}
+
+	@Benchmark
+	public void sendOnlineUsers() {
+		publisher.sendOnlineUsers(session);
+	}
+}
@@ -0,0 +1,105 @@
+package com.stringcode.websocket_app.benchmark;
+
+import com.stringcode.websocket_app.config.JacksonConfig;
+import com.stringcode.websocket_app.dto.WebSocketMessageDto;
+import com.stringcode.websocket_app.service.MessageBroadcaster;
+import com.stringcode.websocket_app.service.RoomExecutor;
+import com.stringcode.websocket_app.service.SessionRegistry;
+import com.stringcode.websocket_app.service.WireCodec;
+import com.stringcode.websocket_app.service.cluster.SingleNodeClusterBus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Room fan-out handed to the {@link RoomExecutor} stripes, against fan-out on the sending
+ * thread under a per-room lock, the other way to keep a room's messages in order.
+ * <p>
+ * Several threads send to {@code rooms} rooms of {@code roomSize} members. A striped
+ * invocation submits a batch and waits until the stripes have delivered all of it, so
+ * both variants measure the time until every recipient has the frame. A task the
+ * stripes shed still counts as done.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Threads(4)
+public class RoomExecutorBenchmark {
+
+	private static final int BATCH = 100;
+
+	@Param({"1", "16", "256"})
+	int rooms;
+
+	@Param({"10", "100"})
+	int roomSize;
+
+	@Param({"0"})
+	int stripes;
+
+	private MessageBroadcaster broadcaster;
+	private RoomExecutor roomExecutor;
+	private String[] roomIds;
+	private Object[] roomLocks;
+	private WebSocketMessageDto[] messages;
+
+	@Setup
+	public void setUp() {
+		SessionRegistry registry = new SessionRegistry();
+		broadcaster = new MessageBroadcaster(new WireCodec(new JacksonConfig().objectMapper()), registry, new SingleNodeClusterBus(), new SimpleMeterRegistry());
+		roomExecutor = new RoomExecutor(new SimpleMeterRegistry(), stripes, 10_000);
+		roomIds = new String[rooms];
+		roomLocks = new Object[rooms];
+		messages = new WebSocketMessageDto[rooms];
+		for (int room = 0; room < rooms; room++) {
+			roomIds[room] = "room" + room;
+			roomLocks[room] = new Object();
+			messages[room] = Fixtures.chat(roomIds[room]);
+			for (int i = 0; i < roomSize; i++) {
+				String username = "user" + room + "-" + i;
+				registry.register(new StubWebSocketSession(username), username);
+				registry.join(username, roomIds[room]);
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws InterruptedException {
+		roomExecutor.shutdown();
+	}
+
+	@State(Scope.Thread)
+	public static class Sender {
+		int next;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void striped(Sender sender) throws InterruptedException {
+		CountDownLatch delivered = new CountDownLatch(BATCH);
+		for (int i = 0; i < BATCH; i++) {
+			int room = sender.next++ % rooms;
+			boolean queued = roomExecutor.execute(roomIds[room], () -> {
+				broadcaster.broadcastToRoom(roomIds[room], messages[room]);
+				delivered.countDown();
+			});
+			if (!queued) {
+				delivered.countDown();
+			}
+		}
+		delivered.await();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void direct(Sender sender) {
+		for (int i = 0; i < BATCH; i++) {
+			int room = sender.next++ % rooms;
+			synchronized (roomLocks[room]) {
+				broadcaster.broadcastToRoom(roomIds[room], messages[room]);
+			}
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package com.stringcode.websocket_app.loadtest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Command line options of the load test. A {@code --profile} sets a preset; any other
+ * {@code --key=value} overrides it.
+ */
+final class LoadTestOptions {
+
+	private static final Map<String, Map<String, String>> PROFILES = Map.of(
+			"default", Map.of("clients", "1000", "room-size", "50", "rate", "1", "duration", "30"),
+			"large-rooms", Map.of("clients", "2000", "room-size", "500", "rate", "0.2", "duration", "30"),
+			"chatty", Map.of("clients", "1000", "room-size", "10", "rate", "5", "duration", "30"),
+			"storm", Map.of("clients", "5000", "room-size", "100", "rate", "0", "duration", "5")
+	);
+
+	int clients = 1000;
+	int roomSize = 50;
+	// CHAT messages per second per client
+	double rate = 1;
+	// Share of sends that are ICE_CANDIDATE relays instead of CHAT
+	double signalRatio = 0.1;
+	int warmupSeconds = 5;
+	int durationSeconds = 30;
+	int connectBatch = 200;
+
+	static LoadTestOptions parse(String[] args) {
+		Map<String, String> values = new HashMap<>();
+		for (String arg : args) {
+			if (!arg.startsWith("--") || !arg.contains("=")) {
+				throw new IllegalArgumentException("Expected --key=value, got: " + arg);
+			}
+			values.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+		}
+		Map<String, String> merged = new HashMap<>();
+		String profile = values.getOrDefault("profile", "default");
+		Map<String, String> preset = PROFILES.get(profile);
+		if (preset == null) {
+			throw new IllegalArgumentException("Unknown profile " + profile + ", expected one of " + PROFILES.keySet());
+		}
+		merged.putAll(preset);
+		merged.putAll(values);
+
+		LoadTestOptions options = new LoadTestOptions();
+		merged.forEach((key, value) -> {
+			switch (key) {
+				case "profile" -> {
+				}
+				case "clients" -> options.clients = Integer.parseInt(value);
+				case "room-size" -> options.roomSize = Integer.parseInt(value);
+				case "rate" -> options.rate = Double.parseDouble(value);
+				case "signal-ratio" -> options.signalRatio = Double.parseDouble(value);
+				case "warmup" -> options.warmupSeconds = Integer.parseInt(value);
+				case "duration" -> options.durationSeconds = Integer.parseInt(value);
+				case "connect-batch" -> options.connectBatch = Integer.parseInt(value);
+				default -> throw new IllegalArgumentException("Unknown option --" + key);
+			}
+		});
+		return options;
+	}
+
+	int rooms() {
+		return (clients + roomSize - 1) / roomSize;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("clients=%d room-size=%d rooms=%d rate=%.2f/s signal-ratio=%.2f warmup=%ds duration=%ds",
+				clients, roomSize, rooms(), rate, signalRatio, warmupSeconds, durationSeconds);
+	}
+}
@@ -0,0 +1,187 @@
+package com.stringcode.websocket_app.loadtest;
+
+import com.stringcode.websocket_app.WebsocketAppApplication;
+import com.stringcode.websocket_app.model.User;
+import com.stringcode.websocket_app.repository.UserRepository;
+import com.stringcode.websocket_app.service.JwtService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Headless load test: starts the application on an embedded database, connects
+ * simulated clients that log in, join rooms and exchange CHAT and signaling frames,
+ * then reports latency percentiles, fan-out throughput, presence cost and heap per
+ * connection. Run with {@code ./mvnw -Ploadtest verify -Dloadtest.args="--profile=chatty"}.
+ * <p>
+ * Clients and server share one JVM, so latencies include client-side handling and the
+ * heap figure covers both ends of each connection.
+ */
+public final class LoadTestRunner {
+
+	private LoadTestRunner() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		LoadTestOptions options = LoadTestOptions.parse(args);
+		System.out.println("Load test: " + options);
+
+		ConfigurableApplicationContext context = new SpringApplication(WebsocketAppApplication.class)
+				.run("--spring.profiles.active=loadtest");
+		int exitCode = 0;
+		try {
+			run(context, options);
+		} catch (Exception e) {
+			e.printStackTrace();
+			exitCode = 1;
+		} finally {
+			context.close();
+		}
+		System.exit(exitCode);
+	}
+
+	private static void run(ConfigurableApplicationContext context, LoadTestOptions options) throws Exception {
+		int port = Integer.parseInt(context.getEnvironment().getRequiredProperty("local.server.port"));
+		MeterRegistry meters = context.getBean(MeterRegistry.class);
+		List<String> tokens = createUsers(context, options.clients);
+
+		SimulatedClient.Stats stats = new SimulatedClient.Stats();
+		ExecutorService clientIo = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+		HttpClient http = HttpClient.newBuilder().executor(clientIo).build();
+		List<SimulatedClient> clients = new ArrayList<>(options.clients);
+
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		long heapBefore = usedHeapAfterGc(memory);
+		double presenceFramesBefore = counter(meters, "chat.presence.frames");
+
+		// Connect and join in batches; the presence storm is everything until presence goes quiet.
+		long connectStart = System.nanoTime();
+		for (int from = 0; from < options.clients; from += options.connectBatch) {
+			List<CompletableFuture<SimulatedClient>> batch = new ArrayList<>();
+			for (int i = from; i < Math.min(options.clients, from + options.connectBatch); i++) {
+				SimulatedClient client = new SimulatedClient("user" + i, "room" + (i / options.roomSize), stats);
+				URI uri = URI.create("ws://localhost:" + port + "/ws?token=" + URLEncoder.encode(tokens.get(i), StandardCharsets.UTF_8));
+				batch.add(client.connect(http, uri));
+				clients.add(client);
+			}
+			CompletableFuture.allOf(batch.toArray(CompletableFuture[]::new)).get(60, TimeUnit.SECONDS);
+		}
+		long connectedNanos = System.nanoTime() - connectStart;
+		awaitPresenceQuiet(stats, 1000);
+		long stormNanos = stats.lastPresenceNanos.get() - connectStart;
+		long heapAfter = usedHeapAfterGc(memory);
+		double serverPresenceFrames = counter(meters, "chat.presence.frames") - presenceFramesBefore;
+
+		ScheduledExecutorService senders = Executors.newScheduledThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+		if (options.rate > 0) {
+			long periodMicros = (long) (1_000_000 / options.rate);
+			for (SimulatedClient client : clients) {
+				senders.scheduleAtFixedRate(() -> {
+					if (ThreadLocalRandom.current().nextDouble() < options.signalRatio) {
+						client.sendSignal();
+					} else {
+						client.sendChat();
+					}
+				}, ThreadLocalRandom.current().nextLong(periodMicros), periodMicros, TimeUnit.MICROSECONDS);
+			}
+		}
+
+		Thread.sleep(options.warmupSeconds * 1000L);
+		stats.chatLatency.getIntervalHistogram();
+		stats.signalLatency.getIntervalHistogram();
+		long sentBefore = stats.sent.get();
+		long deliveredBefore = stats.chatReceived.get() + stats.signalReceived.get();
+		long measureStart = System.nanoTime();
+
+		Thread.sleep(options.durationSeconds * 1000L);
+		long measuredNanos = System.nanoTime() - measureStart;
+		long sent = stats.sent.get() - sentBefore;
+		long delivered = stats.chatReceived.get() + stats.signalReceived.get() - deliveredBefore;
+		Histogram chat = stats.chatLatency.getIntervalHistogram();
+		Histogram signal = stats.signalLatency.getIntervalHistogram();
+		senders.shutdownNow();
+
+		double seconds = measuredNanos / 1e9;
+		System.out.println();
+		System.out.println("=== Load test report ===");
+		System.out.println(options);
+		System.out.printf("connect+join:        %d clients in %.2f s%n", clients.size(), connectedNanos / 1e9);
+		System.out.printf("presence storm:      %.2f s until quiet, %d frames / %.1f KB to clients, %.0f batches published by server%n",
+				stormNanos / 1e9, stats.presenceFrames.get(), stats.presenceBytes.get() / 1024.0, serverPresenceFrames);
+		System.out.printf("heap per connection: %.1f KB (client and server side, after GC)%n",
+				(heapAfter - heapBefore) / 1024.0 / Math.max(1, clients.size()));
+		System.out.printf("sent:                %.0f msgs/s%n", sent / seconds);
+		System.out.printf("fan-out:             %.0f deliveries/s%n", delivered / seconds);
+		printLatency("chat latency", chat);
+		printLatency("signal latency", signal);
+		System.out.printf("server:              %.0f frames dropped, %.0f sessions evicted, %.0f room tasks shed, %.0f messages not persisted%n",
+				counter(meters, "chat.outbound.dropped.frames"),
+				counter(meters, "chat.outbound.evicted.sessions"),
+				counter(meters, "chat.rooms.shed.tasks"),
+				counter(meters, "chat.persistence.rejected"));
+		System.out.printf("client errors:       %d%n", stats.errors.get());
+
+		clients.forEach(SimulatedClient::close);
+		Thread.sleep(500);
+		clientIo.shutdownNow();
+	}
+
+	private static List<String> createUsers(ConfigurableApplicationContext context, int count) {
+		UserRepository userRepository = context.getBean(UserRepository.class);
+		JwtService jwtService = context.getBean(JwtService.class);
+		String password = new BCryptPasswordEncoder().encode("load-test");
+		List<User> users = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			users.add(User.builder().username("user" + i).password(password).build());
+		}
+		List<String> tokens = new ArrayList<>(count);
+		for (User user : userRepository.saveAll(users)) {
+			tokens.add(jwtService.generateToken(user));
+		}
+		return tokens;
+	}
+
+	private static void awaitPresenceQuiet(SimulatedClient.Stats stats, long quietMillis) throws InterruptedException {
+		long quietNanos = TimeUnit.MILLISECONDS.toNanos(quietMillis);
+		while (System.nanoTime() - stats.lastPresenceNanos.get() < quietNanos) {
+			Thread.sleep(100);
+		}
+	}
+
+	private static long usedHeapAfterGc(MemoryMXBean memory) throws InterruptedException {
+		System.gc();
+		Thread.sleep(200);
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+
+	private static double counter(MeterRegistry meters, String name) {
+		Counter counter = meters.find(name).counter();
+		return counter != null ? counter.count() : 0;
+	}
+
+	private static void printLatency(String label, Histogram histogram) {
+		if (histogram.getTotalCount() == 0) {
+			System.out.printf("%-20s no samples%n", label + ":");
+			return;
+		}
+		System.out.printf("%-20s p50 %.2f ms, p99 %.2f ms, p999 %.2f ms, max %.2f ms (%d samples)%n", label + ":",
+				histogram.getValueAtPercentile(50) / 1e6,
+				histogram.getValueAtPercentile(99) / 1e6,
+				histogram.getValueAtPercentile(99.9) / 1e6,
+				histogram.getMaxValue() / 1e6,
+				histogram.getTotalCount());
+	}
+}
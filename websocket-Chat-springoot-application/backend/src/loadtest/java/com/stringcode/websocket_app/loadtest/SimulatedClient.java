@@ -0,0 +1,134 @@
+package com.stringcode.websocket_app.loadtest;
+
+import org.HdrHistogram.Recorder;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One browser-like client: authenticates with its token, joins a room and sends CHAT
+ * and ICE_CANDIDATE frames carrying their send time, so every receiver can record the
+ * send-to-receive latency.
+ */
+final class SimulatedClient implements WebSocket.Listener {
+
+	private static final String MARKER = "lt|";
+
+	/**
+	 * Counters and histograms shared by all clients.
+	 */
+	static final class Stats {
+		final Recorder chatLatency = new Recorder(3);
+		final Recorder signalLatency = new Recorder(3);
+		final AtomicLong sent = new AtomicLong();
+		final AtomicLong chatReceived = new AtomicLong();
+		final AtomicLong signalReceived = new AtomicLong();
+		final AtomicLong presenceFrames = new AtomicLong();
+		final AtomicLong presenceBytes = new AtomicLong();
+		final AtomicLong lastPresenceNanos = new AtomicLong();
+		final AtomicLong errors = new AtomicLong();
+	}
+
+	private final String username;
+	private final String roomId;
+	private final Stats stats;
+	private final StringBuilder partial = new StringBuilder();
+	private WebSocket socket;
+	private CompletableFuture<WebSocket> lastSend;
+
+	SimulatedClient(String username, String roomId, Stats stats) {
+		this.username = username;
+		this.roomId = roomId;
+		this.stats = stats;
+	}
+
+	CompletableFuture<SimulatedClient> connect(HttpClient http, URI uri) {
+		return http.newWebSocketBuilder()
+				.buildAsync(uri, this)
+				.thenApply(ws -> {
+					synchronized (this) {
+						socket = ws;
+						lastSend = CompletableFuture.completedFuture(ws);
+					}
+					send("{\"type\":\"LOGIN\",\"payload\":{\"username\":\"" + username + "\"}}");
+					send("{\"type\":\"JOIN\",\"payload\":{\"roomId\":\"" + roomId + "\",\"username\":\"" + username + "\"}}");
+					return this;
+				});
+	}
+
+	void sendChat() {
+		stats.sent.incrementAndGet();
+		send("{\"type\":\"CHAT\",\"payload\":{\"content\":\"" + MARKER + System.nanoTime()
+				+ "|load test message from " + username + "\",\"roomId\":\"" + roomId + "\"}}");
+	}
+
+	void sendSignal() {
+		stats.sent.incrementAndGet();
+		send("{\"type\":\"ICE_CANDIDATE\",\"payload\":{\"candidate\":\"" + MARKER + System.nanoTime()
+				+ "|candidate:842163049 1 udp 1677729535 203.0.113.7 46154 typ srflx\",\"sdpMid\":\"0\",\"sdpMLineIndex\":0}}");
+	}
+
+	void close() {
+		WebSocket ws;
+		synchronized (this) {
+			ws = socket;
+		}
+		if (ws != null) {
+			ws.sendClose(WebSocket.NORMAL_CLOSURE, "done");
+		}
+	}
+
+	// The JDK client allows one outstanding send per socket, so sends are chained.
+	private synchronized void send(String text) {
+		lastSend = lastSend.thenCompose(ws -> ws.sendText(text, true))
+				.exceptionally(e -> {
+					stats.errors.incrementAndGet();
+					return socket;
+				});
+	}
+
+	@Override
+	public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+		partial.append(data);
+		if (last) {
+			handle(partial);
+			partial.setLength(0);
+		}
+		webSocket.request(1);
+		return null;
+	}
+
+	@Override
+	public void onError(WebSocket webSocket, Throwable error) {
+		stats.errors.incrementAndGet();
+	}
+
+	private void handle(CharSequence frame) {
+		String text = frame.toString();
+		if (text.startsWith("{\"type\":\"PRESENCE_BATCH\"") || text.startsWith("{\"type\":\"ROOM_PRESENCE\"")
+				|| text.startsWith("{\"type\":\"ONLINE_USERS\"")) {
+			stats.presenceFrames.incrementAndGet();
+			stats.presenceBytes.addAndGet(text.length());
+			stats.lastPresenceNanos.set(System.nanoTime());
+			return;
+		}
+		int marker = text.indexOf(MARKER);
+		if (marker < 0) {
+			return;
+		}
+		int start = marker + MARKER.length();
+		long sentNanos = Long.parseLong(text, start, text.indexOf('|', start), 10);
+		long latency = Math.max(0, System.nanoTime() - sentNanos);
+		if (text.startsWith("{\"type\":\"ICE_CANDIDATE\"")) {
+			stats.signalReceived.incrementAndGet();
+			stats.signalLatency.recordValue(latency);
+		} else {
+			stats.chatReceived.incrementAndGet();
+			stats.chatLatency.recordValue(latency);
+		}
+	}
+}
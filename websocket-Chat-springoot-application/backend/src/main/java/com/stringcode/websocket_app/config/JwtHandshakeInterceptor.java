@@ -0,0 +1,84 @@
+package com.stringcode.websocket_app.config;
+
+import com.stringcode.websocket_app.service.JwtService;
+import com.stringcode.websocket_app.service.UserPrincipalCache;
+import io.jsonwebtoken.JwtException;
+import lombok.RequiredArgsConstructor;
+import org.jspecify.annotations.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.Map;
+
+/**
+ * Authenticates the WebSocket upgrade request. Browsers cannot set headers on a
+ * WebSocket handshake, so the token is read from the {@code token} query parameter,
+ * falling back to a Bearer Authorization header. The verified username is stored in
+ * the session attributes under {@link #USERNAME_ATTRIBUTE}.
+ */
+@Component
+@RequiredArgsConstructor
+public class JwtHandshakeInterceptor implements HandshakeInterceptor {
+
+    public static final String USERNAME_ATTRIBUTE = "username";
+
+    private static final Logger logger = LoggerFactory.getLogger(JwtHandshakeInterceptor.class);
+
+    private final JwtService jwtService;
+    private final UserPrincipalCache userPrincipalCache;
+
+    @Override
+    public boolean beforeHandshake(
+            @NonNull ServerHttpRequest request,
+            @NonNull ServerHttpResponse response,
+            @NonNull WebSocketHandler wsHandler,
+            @NonNull Map<String, Object> attributes
+    ) {
+        String jwt = resolveToken(request);
+        if (jwt != null) {
+            try {
+                String username = jwtService.extractUsername(jwt);
+                UserDetails userDetails = userPrincipalCache.load(username);
+                if (jwtService.isTokenValid(jwt, userDetails)) {
+                    attributes.put(USERNAME_ATTRIBUTE, userDetails.getUsername());
+                    return true;
+                }
+            } catch (JwtException | AuthenticationException e) {
+                logger.debug("Rejected WebSocket handshake: {}", e.getMessage());
+            }
+        }
+        response.setStatusCode(HttpStatus.UNAUTHORIZED);
+        return false;
+    }
+
+    @Override
+    public void afterHandshake(
+            @NonNull ServerHttpRequest request,
+            @NonNull ServerHttpResponse response,
+            @NonNull WebSocketHandler wsHandler,
+            Exception exception
+    ) {
+    }
+
+    private static String resolveToken(ServerHttpRequest request) {
+        String token = UriComponentsBuilder.fromUri(request.getURI()).build().getQueryParams().getFirst("token");
+        if (token != null && !token.isEmpty()) {
+            return token;
+        }
+        String authHeader = request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        if (authHeader != null && authHeader.startsWith("Bearer ")) {
+            return authHeader.substring(7);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,16 @@
+package com.stringcode.websocket_app.config;
+
+import com.stringcode.websocket_app.service.ChatMessagePartitionManager;
+import org.springframework.boot.jpa.autoconfigure.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class PartitioningConfig {
+
+    // The partitioned table has to exist before Hibernate's schema update would create a plain one.
+    @Bean
+    public static EntityManagerFactoryDependsOnPostProcessor entityManagerFactoryDependsOnPartitioning() {
+        return new EntityManagerFactoryDependsOnPostProcessor(ChatMessagePartitionManager.class);
+    }
+}
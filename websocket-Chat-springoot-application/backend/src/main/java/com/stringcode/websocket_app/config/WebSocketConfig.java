@@ -2,10 +2,13 @@ package com.stringcode.websocket_app.config;
 
 import com.stringcode.websocket_app.controller.ChatWebSocketHandler;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
 
 @Configuration
 @EnableWebSocket
@@ -13,10 +16,39 @@ import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry
 public class WebSocketConfig implements WebSocketConfigurer {
 
     private final ChatWebSocketHandler chatWebSocketHandler;
+    private final JwtHandshakeInterceptor jwtHandshakeInterceptor;
+
+    @Value("${chat.websocket.max-text-message-buffer-size:8192}")
+    private int maxTextMessageBufferSize;
+
+    @Value("${chat.websocket.max-binary-message-buffer-size:8192}")
+    private int maxBinaryMessageBufferSize;
+
+    @Value("${chat.websocket.async-send-timeout-ms:0}")
+    private long asyncSendTimeoutMs;
+
+    @Value("${chat.websocket.max-session-idle-timeout-ms:0}")
+    private long maxSessionIdleTimeoutMs;
 
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
         registry.addHandler(chatWebSocketHandler, "/ws")
+                .addInterceptors(jwtHandshakeInterceptor)
                 .setAllowedOriginPatterns("*");
     }
+
+    // Applied to the servlet container's WebSocket server; a timeout of 0 keeps the container default.
+    @Bean
+    public ServletServerContainerFactoryBean createWebSocketContainer() {
+        ServletServerContainerFactoryBean container = new ServletServerContainerFactoryBean();
+        container.setMaxTextMessageBufferSize(maxTextMessageBufferSize);
+        container.setMaxBinaryMessageBufferSize(maxBinaryMessageBufferSize);
+        if (asyncSendTimeoutMs > 0) {
+            container.setAsyncSendTimeout(asyncSendTimeoutMs);
+        }
+        if (maxSessionIdleTimeoutMs > 0) {
+            container.setMaxSessionIdleTimeout(maxSessionIdleTimeoutMs);
+        }
+        return container;
+    }
 }
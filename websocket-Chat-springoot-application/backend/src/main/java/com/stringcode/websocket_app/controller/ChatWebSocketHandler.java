@@ -1,51 +1,147 @@
 package com.stringcode.websocket_app.controller;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stringcode.websocket_app.config.JwtHandshakeInterceptor;
 import com.stringcode.websocket_app.dto.WebSocketMessageDto;
 import com.stringcode.websocket_app.enums.MessageType;
+import com.stringcode.websocket_app.enums.WireProtocol;
 import com.stringcode.websocket_app.service.ChatService;
-import lombok.RequiredArgsConstructor;
+import com.stringcode.websocket_app.service.InboundRateLimiter;
+import com.stringcode.websocket_app.service.OutboundQueueManager;
+import com.stringcode.websocket_app.service.QueuedWebSocketSession;
+import com.stringcode.websocket_app.service.SessionHeartbeat;
+import com.stringcode.websocket_app.service.WireCodec;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.*;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @Component
-@RequiredArgsConstructor
-public class ChatWebSocketHandler extends TextWebSocketHandler {
+public class ChatWebSocketHandler extends AbstractWebSocketHandler implements SubProtocolCapable {
+
+    private static final List<String> SUB_PROTOCOLS =
+            Arrays.stream(WireProtocol.values()).map(WireProtocol::getSubprotocol).toList();
+    private static final CloseStatus RATE_LIMITED = CloseStatus.POLICY_VIOLATION.withReason("Rate limit exceeded");
 
     private final ChatService chatService;
-    private final ObjectMapper objectMapper;
+    private final WireCodec wireCodec;
+    private final OutboundQueueManager outboundQueueManager;
+    private final SessionHeartbeat sessionHeartbeat;
+    private final InboundRateLimiter inboundRateLimiter;
+
+    // Registered up front so counting a frame is a map lookup and an increment.
+    private final Map<MessageType, Counter> inboundFrames = new EnumMap<>(MessageType.class);
+    private final Map<WireProtocol, Timer> decodeTimers = new EnumMap<>(WireProtocol.class);
+
+    public ChatWebSocketHandler(
+            ChatService chatService,
+            WireCodec wireCodec,
+            OutboundQueueManager outboundQueueManager,
+            SessionHeartbeat sessionHeartbeat,
+            InboundRateLimiter inboundRateLimiter,
+            MeterRegistry meterRegistry
+    ) {
+        this.chatService = chatService;
+        this.wireCodec = wireCodec;
+        this.outboundQueueManager = outboundQueueManager;
+        this.sessionHeartbeat = sessionHeartbeat;
+        this.inboundRateLimiter = inboundRateLimiter;
+        for (MessageType type : MessageType.values()) {
+            inboundFrames.put(type, Counter.builder("chat.inbound.frames")
+                    .description("Frames received from clients")
+                    .tag("type", type.name())
+                    .register(meterRegistry));
+        }
+        for (WireProtocol protocol : WireProtocol.values()) {
+            decodeTimers.put(protocol, Timer.builder("chat.inbound.decode")
+                    .description("Time to decode an inbound frame")
+                    .tag("protocol", protocol.name().toLowerCase())
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofNanos(500))
+                    .maximumExpectedValue(Duration.ofMillis(100))
+                    .register(meterRegistry));
+        }
+    }
 
     @Override
-    public void afterConnectionEstablished(WebSocketSession session) {
-    
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        String username = (String) session.getAttributes().get(JwtHandshakeInterceptor.USERNAME_ATTRIBUTE);
+        if (username == null) {
+            session.close(CloseStatus.POLICY_VIOLATION);
+            return;
+        }
+        QueuedWebSocketSession queued = outboundQueueManager.open(session);
+        sessionHeartbeat.track(queued);
+        inboundRateLimiter.open(session, username);
+        chatService.register(queued, username);
     }
 
     @Override
-    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
-        WebSocketMessageDto wsMessage =
-                objectMapper.readValue(message.getPayload(), WebSocketMessageDto.class);
-
-        if (wsMessage.getType() == MessageType.JOIN || wsMessage.getType() == MessageType.LOGIN) {
-            String username = null;
-            if (wsMessage.getPayload() instanceof Map) {
-                Map<String, Object> payload = (Map<String, Object>) wsMessage.getPayload();
-                username = (String) payload.get("username");
-            }
-            if (username == null) {
-                username = wsMessage.getSenderName();
-            }
-            if (username != null) {
-                chatService.register(session, username);
-            }
-        }
-        
-        chatService.handleMessage(session, wsMessage);
+    public List<String> getSubProtocols() {
+        return SUB_PROTOCOLS;
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession rawSession, TextMessage message) throws Exception {
+        if (throttled(rawSession, inboundRateLimiter.admitFrame(rawSession))) {
+            return;
+        }
+        long start = System.nanoTime();
+        WebSocketMessageDto decoded = wireCodec.decode(message);
+        dispatch(rawSession, decoded, WireProtocol.JSON, start);
+    }
+
+    @Override
+    protected void handleBinaryMessage(WebSocketSession rawSession, BinaryMessage message) throws Exception {
+        if (throttled(rawSession, inboundRateLimiter.admitFrame(rawSession))) {
+            return;
+        }
+        long start = System.nanoTime();
+        WebSocketMessageDto decoded = wireCodec.decode(message);
+        dispatch(rawSession, decoded, WireProtocol.CBOR, start);
+    }
+
+    @Override
+    protected void handlePongMessage(WebSocketSession rawSession, PongMessage message) {
+        sessionHeartbeat.markActive(outboundQueueManager.get(rawSession));
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
         chatService.unregister(session);
+        outboundQueueManager.close(session);
+        inboundRateLimiter.close(session);
+    }
+
+    private void dispatch(WebSocketSession rawSession, WebSocketMessageDto message, WireProtocol protocol, long decodeStart) {
+        decodeTimers.get(protocol).record(System.nanoTime() - decodeStart, TimeUnit.NANOSECONDS);
+        if (message.getType() != null) {
+            inboundFrames.get(message.getType()).increment();
+        }
+        if (throttled(rawSession, inboundRateLimiter.admit(rawSession, message.getType()))) {
+            return;
+        }
+        WebSocketSession session = outboundQueueManager.get(rawSession);
+        sessionHeartbeat.markActive(session);
+        chatService.handleMessage(session, message);
+    }
+
+    // The frame is dropped either way; a CLOSE verdict also closes the session.
+    private boolean throttled(WebSocketSession rawSession, InboundRateLimiter.Verdict verdict) {
+        if (verdict == InboundRateLimiter.Verdict.ALLOW) {
+            return false;
+        }
+        if (verdict == InboundRateLimiter.Verdict.CLOSE) {
+            outboundQueueManager.closeWithStatus(rawSession, RATE_LIMITED);
+        }
+        return true;
     }
 }
@@ -1,13 +1,11 @@
 package com.stringcode.websocket_app.controller;
 
-import com.stringcode.websocket_app.model.ChatMessage;
-import com.stringcode.websocket_app.repository.ChatMessageRepository;
+import com.stringcode.websocket_app.dto.ChatMessageDto;
+import com.stringcode.websocket_app.service.ChatHistoryService;
+import com.stringcode.websocket_app.service.MessageSearchIndex;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
-import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.PathVariable;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
 
@@ -16,10 +14,34 @@ import java.util.List;
 @RequiredArgsConstructor
 public class MessageController {
 
-    private final ChatMessageRepository chatMessageRepository;
+    private final ChatHistoryService chatHistoryService;
+    private final MessageSearchIndex messageSearchIndex;
+
+    @GetMapping("/search")
+    public ResponseEntity<List<ChatMessageDto>> searchAllRooms(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size
+    ) {
+        return ResponseEntity.ok(messageSearchIndex.search(null, q, page, size));
+    }
+
+    @GetMapping("/{roomId}/search")
+    public ResponseEntity<List<ChatMessageDto>> searchRoom(
+            @PathVariable String roomId,
+            @RequestParam String q,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size
+    ) {
+        return ResponseEntity.ok(messageSearchIndex.search(roomId, q, page, size));
+    }
 
     @GetMapping("/{roomId}")
-    public ResponseEntity<List<ChatMessage>> getChatHistory(@PathVariable String roomId) {
-        return ResponseEntity.ok(chatMessageRepository.findByRoomIdOrderByTimestampAsc(roomId));
+    public ResponseEntity<List<ChatMessageDto>> getChatHistory(
+            @PathVariable String roomId,
+            @RequestParam(required = false) Long before,
+            @RequestParam(defaultValue = "50") int limit
+    ) {
+        return ResponseEntity.ok(chatHistoryService.getHistory(roomId, before, limit));
     }
 }
@@ -1,12 +1,19 @@
 package com.stringcode.websocket_app.controller;
 
+import com.stringcode.websocket_app.dto.RoomDto;
 import com.stringcode.websocket_app.model.Room;
 import com.stringcode.websocket_app.model.User;
 import com.stringcode.websocket_app.repository.RoomRepository;
+import com.stringcode.websocket_app.service.RoomListCache;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -18,26 +25,77 @@ import java.util.UUID;
 public class RoomController {
 
     private final RoomRepository roomRepository;
+    private final RoomListCache roomListCache;
 
+    @Value("${chat.rooms.max-page-size:500}")
+    private int maxPageSize;
+
+    /**
+     * Newest rooms first; the whole list unless {@code limit} or {@code before} is given.
+     * Paged like the message history: {@code limit} rooms older than the room {@code before},
+     * with a {@code Link: rel="next"} header while more remain. The ETag covers the whole
+     * list, so an unchanged list answers {@code If-None-Match} with 304 for every page.
+     */
     @GetMapping
-    public ResponseEntity<List<Room>> getAllRooms() {
-        return ResponseEntity.ok(roomRepository.findAll());
+    public ResponseEntity<List<RoomDto>> getAllRooms(
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) Integer limit,
+            WebRequest request
+    ) {
+        RoomListCache.Snapshot snapshot = roomListCache.get();
+        if (request.checkNotModified(snapshot.etag())) {
+            return null;
+        }
+        List<RoomDto> rooms = snapshot.rooms();
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .eTag(snapshot.etag())
+                .header("X-Total-Count", String.valueOf(rooms.size()));
+        if (before == null && limit == null) {
+            return response.body(rooms);
+        }
+
+        int pageSize = Math.max(1, Math.min(limit != null ? limit : maxPageSize, maxPageSize));
+        int from = before == null ? 0 : indexOf(rooms, before) + 1;
+        if (from == 0 && before != null) {
+            return response.body(List.of());
+        }
+        int to = Math.min(from + pageSize, rooms.size());
+        if (to < rooms.size()) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("before", rooms.get(to - 1).getRoomId())
+                    .replaceQueryParam("limit", pageSize)
+                    .toUriString();
+            response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return response.body(rooms.subList(from, to));
+    }
+
+    private static int indexOf(List<RoomDto> rooms, String roomId) {
+        for (int i = 0; i < rooms.size(); i++) {
+            if (roomId.equals(rooms.get(i).getRoomId())) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     @PostMapping
-    public ResponseEntity<Room> createRoom(
+    public ResponseEntity<RoomDto> createRoom(
             @AuthenticationPrincipal User user,
             @RequestBody Room room
     ) {
         room.setRoomId(UUID.randomUUID().toString());
         room.setCreatedBy(user);
         room.setCreatedAt(LocalDateTime.now());
-        return ResponseEntity.ok(roomRepository.save(room));
+        Room saved = roomRepository.save(room);
+        roomListCache.invalidate();
+        return ResponseEntity.ok(RoomDto.from(saved));
     }
 
     @GetMapping("/{roomId}")
-    public ResponseEntity<Room> getRoom(@PathVariable String roomId) {
-        return roomRepository.findByRoomId(roomId)
+    public ResponseEntity<RoomDto> getRoom(@PathVariable String roomId) {
+        return roomRepository.findSummary(roomId)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
@@ -3,6 +3,7 @@ package com.stringcode.websocket_app.controller;
 import com.stringcode.websocket_app.dto.UserUpdateDto;
 import com.stringcode.websocket_app.model.User;
 import com.stringcode.websocket_app.repository.UserRepository;
+import com.stringcode.websocket_app.service.UserPrincipalCache;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
@@ -14,6 +15,7 @@ import org.springframework.web.bind.annotation.*;
 public class UserController {
 
     private final UserRepository userRepository;
+    private final UserPrincipalCache userPrincipalCache;
 
     @GetMapping("/me")
     public ResponseEntity<User> getCurrentUser(@AuthenticationPrincipal User user) {
@@ -32,6 +34,8 @@ public class UserController {
         if (updateDto.getPhoneNumber() != null) {
             user.setPhoneNumber(updateDto.getPhoneNumber());
         }
-        return ResponseEntity.ok(userRepository.save(user));
+        User saved = userRepository.save(user);
+        userPrincipalCache.invalidate(saved.getUsername());
+        return ResponseEntity.ok(saved);
     }
 }
@@ -0,0 +1,23 @@
+package com.stringcode.websocket_app.dto;
+
+import com.stringcode.websocket_app.enums.MessageType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ChatMessageDto {
+    private Long id;
+    private MessageType type;
+    private String content;
+    private String senderName;
+    private String roomId;
+    private LocalDateTime timestamp;
+    private Long seq;
+}
@@ -0,0 +1,31 @@
+package com.stringcode.websocket_app.dto;
+
+import com.stringcode.websocket_app.model.Room;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class RoomDto {
+    private String roomId;
+    private String name;
+    private String description;
+    private String createdBy;
+    private LocalDateTime createdAt;
+
+    public static RoomDto from(Room room) {
+        return new RoomDto(
+                room.getRoomId(),
+                room.getName(),
+                room.getDescription(),
+                room.getCreatedBy() != null ? room.getCreatedBy().getUsername() : null,
+                room.getCreatedAt()
+        );
+    }
+}
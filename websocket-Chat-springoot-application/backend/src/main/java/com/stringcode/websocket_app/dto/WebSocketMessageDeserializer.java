@@ -0,0 +1,108 @@
+package com.stringcode.websocket_app.dto;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.deser.ResolvableDeserializer;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.stringcode.websocket_app.dto.payload.*;
+import com.stringcode.websocket_app.enums.MessageType;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Streams a {@link WebSocketMessageDto} and binds its payload straight to the record
+ * for its {@code type}. A payload that arrives before the type is buffered once.
+ * Payloads of types that carry no client data are skipped without being read.
+ * Delegate deserializers are resolved once, not per frame.
+ */
+public class WebSocketMessageDeserializer extends StdDeserializer<WebSocketMessageDto> implements ResolvableDeserializer {
+
+    private static final Map<MessageType, Class<? extends MessagePayload>> PAYLOAD_TYPES = Map.of(
+            MessageType.JOIN, JoinPayload.class,
+            MessageType.LEAVE, LeavePayload.class,
+            MessageType.ROOM_PRESENCE, RoomPresencePayload.class,
+            MessageType.CHAT, ChatPayload.class,
+            MessageType.RESUME, ResumePayload.class,
+            MessageType.CALL_REQUEST, CallRequestPayload.class,
+            MessageType.CALL_RESPONSE, CallResponsePayload.class
+    );
+
+    private JsonDeserializer<Object> typeDeserializer;
+    private JsonDeserializer<Object> timestampDeserializer;
+    private final Map<MessageType, JsonDeserializer<Object>> payloadDeserializers = new EnumMap<>(MessageType.class);
+
+    public WebSocketMessageDeserializer() {
+        super(WebSocketMessageDto.class);
+    }
+
+    @Override
+    public void resolve(DeserializationContext ctxt) throws JsonMappingException {
+        typeDeserializer = ctxt.findRootValueDeserializer(ctxt.constructType(MessageType.class));
+        timestampDeserializer = ctxt.findRootValueDeserializer(ctxt.constructType(LocalDateTime.class));
+        for (Map.Entry<MessageType, Class<? extends MessagePayload>> entry : PAYLOAD_TYPES.entrySet()) {
+            payloadDeserializers.put(entry.getKey(), ctxt.findRootValueDeserializer(ctxt.constructType(entry.getValue())));
+        }
+    }
+
+    @Override
+    public WebSocketMessageDto deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (!p.isExpectedStartObjectToken()) {
+            return (WebSocketMessageDto) ctxt.handleUnexpectedToken(WebSocketMessageDto.class, p);
+        }
+        WebSocketMessageDto message = new WebSocketMessageDto();
+        TokenBuffer pendingPayload = null;
+        for (String field = p.nextFieldName(); field != null; field = p.nextFieldName()) {
+            JsonToken token = p.nextToken();
+            switch (field) {
+                case "type" -> message.setType(token == JsonToken.VALUE_NULL ? null
+                        : (MessageType) typeDeserializer.deserialize(p, ctxt));
+                case "payload" -> {
+                    if (message.getType() != null) {
+                        message.setPayload(readPayload(p, ctxt, message.getType()));
+                    } else {
+                        pendingPayload = ctxt.bufferAsCopyOfValue(p);
+                    }
+                }
+                case "timestamp" -> message.setTimestamp(token == JsonToken.VALUE_NULL ? null
+                        : (LocalDateTime) timestampDeserializer.deserialize(p, ctxt));
+                case "senderId" -> message.setSenderId(p.getValueAsString());
+                case "senderName" -> message.setSenderName(p.getValueAsString());
+                case "seq" -> message.setSeq(token == JsonToken.VALUE_NULL ? null : p.getValueAsLong());
+                default -> p.skipChildren();
+            }
+        }
+        if (message.getType() == null) {
+            return ctxt.reportInputMismatch(this, "Message has no type");
+        }
+        if (pendingPayload != null) {
+            try (JsonParser buffered = pendingPayload.asParserOnFirstToken()) {
+                message.setPayload(readPayload(buffered, ctxt, message.getType()));
+            }
+        }
+        return message;
+    }
+
+    private MessagePayload readPayload(JsonParser p, DeserializationContext ctxt, MessageType type) throws IOException {
+        if (p.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        switch (type) {
+            case OFFER, ANSWER, ICE_CANDIDATE, CALL_HANGUP:
+                return new SignalPayload(ctxt.bufferAsCopyOfValue(p));
+            default:
+                JsonDeserializer<Object> deserializer = payloadDeserializers.get(type);
+                if (deserializer == null) {
+                    p.skipChildren();
+                    return null;
+                }
+                return (MessagePayload) deserializer.deserialize(p, ctxt);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.stringcode.websocket_app.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.stringcode.websocket_app.enums.MessageType;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -7,6 +9,7 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Data
+@JsonDeserialize(using = WebSocketMessageDeserializer.class)
 @NoArgsConstructor
 @AllArgsConstructor
 public class WebSocketMessageDto {
@@ -15,4 +18,12 @@ public class WebSocketMessageDto {
     private LocalDateTime timestamp;
     private String senderId;
     private String senderName;
-}
\ No newline at end of file
+    // Position in its room's stream: a CHAT frame's own seq, the newest message's for HISTORY
+    // and relayed signaling. Clients send the highest one they saw back in RESUME.
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long seq;
+
+    public WebSocketMessageDto(MessageType type, Object payload, LocalDateTime timestamp, String senderId, String senderName) {
+        this(type, payload, timestamp, senderId, senderName, null);
+    }
+}
@@ -0,0 +1,7 @@
+package com.stringcode.websocket_app.dto.payload;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record CallRequestPayload(String to, String from, String type) implements MessagePayload {
+}
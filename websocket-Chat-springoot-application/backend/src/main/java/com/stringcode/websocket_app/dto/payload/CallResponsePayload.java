@@ -0,0 +1,7 @@
+package com.stringcode.websocket_app.dto.payload;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record CallResponsePayload(String to, boolean accepted) implements MessagePayload {
+}
@@ -0,0 +1,7 @@
+package com.stringcode.websocket_app.dto.payload;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record LeavePayload(String roomId) implements MessagePayload {
+}
@@ -0,0 +1,10 @@
+package com.stringcode.websocket_app.dto.payload;
+
+/**
+ * Typed payload of an inbound {@link com.stringcode.websocket_app.dto.WebSocketMessageDto},
+ * chosen by its {@code type}. Outbound system messages may still carry plain maps.
+ */
+public sealed interface MessagePayload
+        permits JoinPayload, LeavePayload, RoomPresencePayload, ChatPayload, ResumePayload,
+        CallRequestPayload, CallResponsePayload, SignalPayload {
+}
@@ -0,0 +1,12 @@
+package com.stringcode.websocket_app.dto.payload;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+/**
+ * WebRTC signaling data (SDP offers and answers, ICE candidates) relayed untouched.
+ * The tokens are buffered as read and replayed on encode, in either wire format,
+ * without ever being bound to objects.
+ */
+public record SignalPayload(@JsonValue TokenBuffer tokens) implements MessagePayload {
+}
@@ -14,5 +14,11 @@ public enum MessageType {
     ICE_CANDIDATE,
     CALL_REQUEST,
     CALL_RESPONSE,
-    CALL_HANGUP
+    CALL_HANGUP,
+    HISTORY,
+    USER_ONLINE,
+    USER_OFFLINE,
+    USER_MOVED,
+    PRESENCE_BATCH,
+    RESUME
 }
\ No newline at end of file
@@ -0,0 +1,26 @@
+package com.stringcode.websocket_app.enums;
+
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * Encodings a client can select through {@code Sec-WebSocket-Protocol}.
+ * Clients that request no subprotocol get JSON text frames.
+ */
+public enum WireProtocol {
+    CBOR("chat.cbor.v1"),
+    JSON("chat.json.v1");
+
+    private final String subprotocol;
+
+    WireProtocol(String subprotocol) {
+        this.subprotocol = subprotocol;
+    }
+
+    public String getSubprotocol() {
+        return subprotocol;
+    }
+
+    public static WireProtocol of(WebSocketSession session) {
+        return CBOR.subprotocol.equals(session.getAcceptedProtocol()) ? CBOR : JSON;
+    }
+}
@@ -7,6 +7,8 @@ import lombok.*;
 import java.time.LocalDateTime;
 
 @Entity
+// The (room_id, timestamp, id) history index is created by ChatMessagePartitionManager:
+// Hibernate cannot see indexes on a partitioned table and would try to recreate it on every start.
 @Table(name = "chat_messages")
 @Getter
 @Setter
@@ -15,8 +17,10 @@ import java.time.LocalDateTime;
 @Builder
 public class ChatMessage {
 
+    // Sequence ids (allocated 50 at a time) let Hibernate batch inserts; IDENTITY forces one round-trip per row.
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "chat_messages_seq")
+    @SequenceGenerator(name = "chat_messages_seq", sequenceName = "chat_messages_seq", allocationSize = 50)
     private Long id;
 
     @Enumerated(EnumType.STRING)
@@ -27,5 +31,11 @@ public class ChatMessage {
 
     private String senderName;
     private String roomId;
+
+    // Position in the room's stream, see ChatServiceImpl; null on rows written before it existed.
+    private Long seq;
+
+    // Partition key of chat_messages on PostgreSQL, see ChatMessagePartitionManager.
+    @Column(nullable = false)
     private LocalDateTime timestamp;
 }
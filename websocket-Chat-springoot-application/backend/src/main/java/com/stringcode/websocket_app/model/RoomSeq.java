@@ -0,0 +1,21 @@
+package com.stringcode.websocket_app.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+// Highest stream seq handed out for a room, across every node; see RoomSeqCounter, which
+// reserves blocks of it with plain SQL. Mapped so Hibernate creates the table.
+@Entity
+@Table(name = "chat_room_seq")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class RoomSeq {
+
+    @Id
+    private String roomId;
+
+    @Column(nullable = false)
+    private long seq;
+}
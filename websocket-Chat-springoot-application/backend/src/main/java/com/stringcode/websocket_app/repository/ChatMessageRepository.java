@@ -1,12 +1,44 @@
 package com.stringcode.websocket_app.repository;
 
+import com.stringcode.websocket_app.dto.ChatMessageDto;
 import com.stringcode.websocket_app.model.ChatMessage;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long> {
-    List<ChatMessage> findByRoomIdOrderByTimestampAsc(String roomId);
+
+    // Keyset queries over the (roomId, timestamp, id) index; newest first. On PostgreSQL the
+    // plain timestamp bound lets the planner skip monthly partitions newer than the cursor,
+    // and the latest page reads partitions newest first and stops at the limit.
+    @Query("select new com.stringcode.websocket_app.dto.ChatMessageDto(m.id, m.type, m.content, m.senderName, m.roomId, m.timestamp, m.seq) " +
+            "from ChatMessage m where m.roomId = :roomId " +
+            "order by m.timestamp desc, m.id desc")
+    List<ChatMessageDto> findLatest(@Param("roomId") String roomId, Limit limit);
+
+    @Query("select new com.stringcode.websocket_app.dto.ChatMessageDto(m.id, m.type, m.content, m.senderName, m.roomId, m.timestamp, m.seq) " +
+            "from ChatMessage m where m.roomId = :roomId " +
+            "and m.timestamp <= :timestamp " +
+            "and (m.timestamp < :timestamp or (m.timestamp = :timestamp and m.id < :id)) " +
+            "order by m.timestamp desc, m.id desc")
+    List<ChatMessageDto> findBefore(
+            @Param("roomId") String roomId,
+            @Param("timestamp") LocalDateTime timestamp,
+            @Param("id") Long id,
+            Limit limit
+    );
+
+    // Primary-key keyset scan, oldest first; feeds the search index.
+    @Query("select m from ChatMessage m where m.id > :id order by m.id")
+    List<ChatMessage> findAfterId(@Param("id") Long id, Limit limit);
+
+    @Query("select m.timestamp from ChatMessage m where m.id = :id and m.roomId = :roomId")
+    Optional<LocalDateTime> findTimestamp(@Param("roomId") String roomId, @Param("id") Long id);
 }
@@ -1,12 +1,27 @@
 package com.stringcode.websocket_app.repository;
 
+import com.stringcode.websocket_app.dto.RoomDto;
 import com.stringcode.websocket_app.model.Room;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface RoomRepository extends JpaRepository<Room, Long> {
     Optional<Room> findByRoomId(String roomId);
+
+    // Creator name joined in the same query, instead of one user select per room.
+    @Query("select new com.stringcode.websocket_app.dto.RoomDto(r.roomId, r.name, r.description, u.username, r.createdAt) " +
+            "from Room r left join r.createdBy u " +
+            "order by r.createdAt desc, r.id desc")
+    List<RoomDto> findAllSummaries();
+
+    @Query("select new com.stringcode.websocket_app.dto.RoomDto(r.roomId, r.name, r.description, u.username, r.createdAt) " +
+            "from Room r left join r.createdBy u " +
+            "where r.roomId = :roomId")
+    Optional<RoomDto> findSummary(@Param("roomId") String roomId);
 }
@@ -0,0 +1,47 @@
+package com.stringcode.websocket_app.service;
+
+import com.stringcode.websocket_app.dto.ChatMessageDto;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+@Service
+@RequiredArgsConstructor
+public class ChatHistoryService {
+
+    private final MessageStore messageStore;
+    private final RecentMessageCache recentMessageCache;
+
+    @Value("${chat.history.max-page-size:200}")
+    private int maxPageSize;
+
+    /**
+     * Returns up to {@code limit} messages older than {@code beforeId} (or the latest ones
+     * when {@code beforeId} is null), oldest first. Clients page backwards by passing the id
+     * of the first message they hold.
+     */
+    public List<ChatMessageDto> getHistory(String roomId, Long beforeId, int limit) {
+        int size = Math.max(1, Math.min(limit, maxPageSize));
+        if (size <= recentMessageCache.getCapacity() && recentMessageCache.warm(roomId)) {
+            if (beforeId == null) {
+                return recentMessageCache.latest(roomId, size);
+            }
+            Optional<List<ChatMessageDto>> cached = recentMessageCache.before(roomId, beforeId, size);
+            if (cached.isPresent()) {
+                return cached.get();
+            }
+        }
+
+        List<ChatMessageDto> newestFirst = beforeId == null
+                ? messageStore.findLatest(roomId, size)
+                : messageStore.findBefore(roomId, beforeId, size);
+        List<ChatMessageDto> page = new ArrayList<>(newestFirst);
+        Collections.reverse(page);
+        return page;
+    }
+}
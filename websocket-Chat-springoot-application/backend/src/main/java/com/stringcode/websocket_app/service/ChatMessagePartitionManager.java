@@ -0,0 +1,333 @@
+package com.stringcode.websocket_app.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps {@code chat_messages} range-partitioned by month on PostgreSQL.
+ * <p>
+ * At startup, before Hibernate validates the schema, the table is created as a
+ * partitioned table; an existing plain table is renamed and attached as the partition
+ * holding everything up to its newest month. Maintenance then creates the partitions
+ * for the coming months ahead of time, and detaches partitions that fall out of the
+ * retention window into an archive schema (or drops them). A default partition catches
+ * rows outside every range so inserts never fail.
+ * <p>
+ * Also at startup, partitioned or not, {@code chat_messages_seq} is moved past the ids
+ * already stored: Hibernate creates it starting at 1 on a database whose rows got
+ * their ids from an identity column.
+ * <p>
+ * Other databases (H2 in tests) keep the plain table Hibernate creates.
+ */
+@Component
+public class ChatMessagePartitionManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatMessagePartitionManager.class);
+
+    static final String TABLE = "chat_messages";
+    private static final String LEGACY = "chat_messages_legacy";
+    private static final String DEFAULT_PARTITION = "chat_messages_default";
+    // The sequence and allocationSize of ChatMessage's id.
+    private static final String ID_SEQUENCE = "chat_messages_seq";
+    private static final int ID_ALLOCATION = 50;
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("'y'yyyy'm'MM");
+    private static final DateTimeFormatter BOUND = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final Pattern RANGE = Pattern.compile("FROM \\((MINVALUE|'([^']+)')\\) TO \\((MAXVALUE|'([^']+)')\\)");
+    // Serializes maintenance across nodes sharing the database.
+    private static final long LOCK_KEY = 0x63686174_70617274L;
+
+    private final DataSource dataSource;
+    private final Clock clock;
+
+    @Value("${chat.partitioning.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.partitioning.months-ahead:3}")
+    private int monthsAhead;
+
+    @Value("${chat.partitioning.retention-months:0}")
+    private int retentionMonths;
+
+    @Value("${chat.partitioning.retention-action:detach}")
+    private String retentionAction;
+
+    @Value("${chat.partitioning.archive-schema:chat_archive}")
+    private String archiveSchema;
+
+    private volatile boolean active;
+
+    @Autowired
+    public ChatMessagePartitionManager(DataSource dataSource) {
+        this(dataSource, Clock.systemDefaultZone());
+    }
+
+    ChatMessagePartitionManager(DataSource dataSource, Clock clock) {
+        this.dataSource = dataSource;
+        this.clock = clock;
+    }
+
+    /**
+     * A partition and its bounds; {@code null} stands for MINVALUE / MAXVALUE.
+     */
+    record Partition(String name, LocalDateTime from, LocalDateTime to) {
+
+        boolean overlaps(LocalDateTime start, LocalDateTime end) {
+            return (from == null || from.isBefore(end)) && (to == null || to.isAfter(start));
+        }
+    }
+
+    @PostConstruct
+    public void bootstrap() throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            String product = connection.getMetaData().getDatabaseProductName();
+            if (!"PostgreSQL".equals(product)) {
+                if (enabled) {
+                    logger.info("chat_messages partitioning needs PostgreSQL, keeping a plain table on {}", product);
+                }
+                return;
+            }
+            inTransaction(connection, () -> {
+                lock(connection);
+                if (enabled) {
+                    createPartitionedTable(connection);
+                    maintain(connection);
+                }
+                alignIdSequence(connection);
+            });
+            active = enabled;
+        }
+    }
+
+    @Scheduled(initialDelayString = "${chat.partitioning.check-ms:3600000}", fixedDelayString = "${chat.partitioning.check-ms:3600000}")
+    public void maintain() {
+        if (!active) {
+            return;
+        }
+        try (Connection connection = dataSource.getConnection()) {
+            inTransaction(connection, () -> {
+                lock(connection);
+                maintain(connection);
+            });
+        } catch (SQLException e) {
+            logger.error("chat_messages partition maintenance failed", e);
+        }
+    }
+
+    private void maintain(Connection connection) throws SQLException {
+        YearMonth current = YearMonth.now(clock);
+        List<Partition> partitions = partitions(connection);
+
+        for (YearMonth month : missingMonths(partitions, current, monthsAhead)) {
+            String name = partitionName(month);
+            execute(connection, "create table " + name + " partition of " + TABLE +
+                    " for values from ('" + month.atDay(1).atStartOfDay().format(BOUND) + "')" +
+                    " to ('" + month.plusMonths(1).atDay(1).atStartOfDay().format(BOUND) + "')");
+            logger.info("Created partition {}", name);
+        }
+        if (partitions.stream().noneMatch(p -> p.name().equals(DEFAULT_PARTITION))) {
+            execute(connection, "create table " + DEFAULT_PARTITION + " partition of " + TABLE + " default");
+        }
+
+        if (retentionMonths > 0) {
+            for (Partition expired : expired(partitions, current, retentionMonths)) {
+                retire(connection, expired.name());
+            }
+        }
+    }
+
+    // Months from the current one up to monthsAhead that no partition covers yet.
+    static List<YearMonth> missingMonths(List<Partition> partitions, YearMonth current, int monthsAhead) {
+        List<YearMonth> missing = new ArrayList<>();
+        for (YearMonth month = current; !month.isAfter(current.plusMonths(monthsAhead)); month = month.plusMonths(1)) {
+            LocalDateTime start = month.atDay(1).atStartOfDay();
+            LocalDateTime end = month.plusMonths(1).atDay(1).atStartOfDay();
+            boolean covered = partitions.stream()
+                    .filter(p -> !p.name().equals(DEFAULT_PARTITION))
+                    .anyMatch(p -> p.overlaps(start, end));
+            if (!covered) {
+                missing.add(month);
+            }
+        }
+        return missing;
+    }
+
+    // Partitions whose whole range ends before the oldest month kept.
+    static List<Partition> expired(List<Partition> partitions, YearMonth current, int retentionMonths) {
+        LocalDateTime cutoff = current.minusMonths(retentionMonths).atDay(1).atStartOfDay();
+        return partitions.stream()
+                .filter(p -> !p.name().equals(DEFAULT_PARTITION))
+                .filter(p -> p.to() != null && !p.to().isAfter(cutoff))
+                .toList();
+    }
+
+    static String partitionName(YearMonth month) {
+        return TABLE + "_" + month.format(PARTITION_SUFFIX);
+    }
+
+    static Partition parse(String name, String bound) {
+        Matcher matcher = RANGE.matcher(bound);
+        if (!matcher.find()) {
+            return new Partition(name, null, null);
+        }
+        return new Partition(name, boundValue(matcher.group(2)), boundValue(matcher.group(4)));
+    }
+
+    private void retire(Connection connection, String partition) throws SQLException {
+        execute(connection, "alter table " + TABLE + " detach partition " + partition);
+        if ("drop".equals(retentionAction)) {
+            execute(connection, "drop table " + partition);
+            logger.info("Dropped expired partition {}", partition);
+        } else {
+            execute(connection, "create schema if not exists " + archiveSchema);
+            execute(connection, "alter table " + partition + " set schema " + archiveSchema);
+            logger.info("Detached expired partition {} into schema {}", partition, archiveSchema);
+        }
+    }
+
+    private void createPartitionedTable(Connection connection) throws SQLException {
+        String kind = relationKind(connection, TABLE);
+        if ("p".equals(kind)) {
+            addMissingColumns(connection, TABLE);
+            return;
+        }
+        if (kind != null) {
+            convertLegacyTable(connection);
+            return;
+        }
+        createParent(connection);
+    }
+
+    private void createParent(Connection connection) throws SQLException {
+        execute(connection, "create table " + TABLE + " (" +
+                "id bigint not null, " +
+                "content text, " +
+                "room_id varchar(255), " +
+                "sender_name varchar(255), " +
+                "seq bigint, " +
+                "\"timestamp\" timestamp(6) not null, " +
+                "type varchar(255), " +
+                "constraint chat_messages_pk primary key (id, \"timestamp\")" +
+                ") partition by range (\"timestamp\")");
+        execute(connection, "create index idx_chat_messages_room_ts on " + TABLE + " (room_id, \"timestamp\", id)");
+    }
+
+    // Hibernate's pooled optimizer hands out the allocationSize ids up to each value it reads, and
+    // starts a fresh sequence at 1, so a stored id at or above the sequence did not come from it.
+    // The sequence is only ever moved forward.
+    private static void alignIdSequence(Connection connection) throws SQLException {
+        execute(connection, "create sequence if not exists " + ID_SEQUENCE + " start with 1 increment by " + ID_ALLOCATION);
+        if (relationKind(connection, TABLE) == null) {
+            return;
+        }
+        String moved = queryString(connection, "select setval('" + ID_SEQUENCE + "', m.id + " + ID_ALLOCATION + ") " +
+                "from (select max(id) as id from " + TABLE + ") m " +
+                "where m.id >= (select last_value from " + ID_SEQUENCE + ")");
+        if (moved != null) {
+            logger.info("Moved {} to {}, past the stored message ids", ID_SEQUENCE, moved);
+        }
+    }
+
+    // Hibernate does not see partitioned tables, so columns added to ChatMessage after the table was created are added here.
+    private static void addMissingColumns(Connection connection, String table) throws SQLException {
+        execute(connection, "alter table " + table + " add column if not exists seq bigint");
+    }
+
+    // The old table becomes the partition for everything up to the end of its newest month.
+    private void convertLegacyTable(Connection connection) throws SQLException {
+        logger.info("Converting {} into a partitioned table", TABLE);
+        execute(connection, "alter table " + TABLE + " rename to " + LEGACY);
+        String primaryKey = queryString(connection,
+                "select conname from pg_constraint where conrelid = '" + LEGACY + "'::regclass and contype = 'p'");
+        // Attaching builds the parent's (id, timestamp) key on the partition; ids stay unique through the sequence.
+        if (primaryKey != null) {
+            execute(connection, "alter table " + LEGACY + " drop constraint " + primaryKey);
+        }
+        execute(connection, "alter index if exists idx_chat_messages_room_ts rename to idx_chat_messages_legacy_room_ts");
+        execute(connection, "update " + LEGACY + " set \"timestamp\" = timestamp '1970-01-01' where \"timestamp\" is null");
+        execute(connection, "alter table " + LEGACY + " alter column \"timestamp\" set not null");
+        addMissingColumns(connection, LEGACY);
+        createParent(connection);
+
+        String newest = queryString(connection, "select max(\"timestamp\") from " + LEGACY);
+        YearMonth last = newest != null
+                ? YearMonth.from(Timestamp.valueOf(newest).toLocalDateTime())
+                : YearMonth.now(clock).minusMonths(1);
+        LocalDateTime upper = last.plusMonths(1).atDay(1).atStartOfDay();
+        execute(connection, "alter table " + TABLE + " attach partition " + LEGACY +
+                " for values from (minvalue) to ('" + upper.format(BOUND) + "')");
+    }
+
+    private List<Partition> partitions(Connection connection) throws SQLException {
+        List<Partition> partitions = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(
+                     "select c.relname, pg_get_expr(c.relpartbound, c.oid) from pg_inherits i " +
+                             "join pg_class c on c.oid = i.inhrelid " +
+                             "where i.inhparent = '" + TABLE + "'::regclass")) {
+            while (rs.next()) {
+                partitions.add(parse(rs.getString(1), rs.getString(2)));
+            }
+        }
+        return partitions;
+    }
+
+    private static String relationKind(Connection connection, String table) throws SQLException {
+        return queryString(connection,
+                "select c.relkind from pg_class c join pg_namespace n on n.oid = c.relnamespace " +
+                        "where c.relname = '" + table + "' and n.nspname = current_schema()");
+    }
+
+    private static LocalDateTime boundValue(String value) {
+        return value != null ? Timestamp.valueOf(value).toLocalDateTime() : null;
+    }
+
+    private static void lock(Connection connection) throws SQLException {
+        execute(connection, "select pg_advisory_xact_lock(" + LOCK_KEY + ")");
+    }
+
+    private static String queryString(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery(sql)) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private interface SqlWork {
+        void run() throws SQLException;
+    }
+
+    private static void inTransaction(Connection connection, SqlWork work) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            work.run();
+            connection.commit();
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.stringcode.websocket_app.service;
+
+import com.stringcode.websocket_app.model.ChatMessage;
+import com.stringcode.websocket_app.repository.ChatMessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Write-behind stage for chat messages. Messages are queued by the CHAT path and
+ * inserted in batches by a single flusher thread, once a batch is full or the
+ * flush interval elapses. A full queue rejects new messages at once: producers run
+ * on the room stripes and must not wait for the database, so a database that falls
+ * behind sheds messages instead of stalling every room or growing the heap.
+ * <p>
+ * A batch that fails is retried with backoff up to {@code max-batch-retries} times, then
+ * saved row by row: a row the database rejects as invalid goes to the dead-letter log
+ * ({@code chat.dead-letter} logger and counter) instead of holding up every room. Rows
+ * that fail for any other reason, such as the database being down, are kept and retried.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.store.type", havingValue = "jpa", matchIfMissing = true)
+public class ChatMessageWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatMessageWriter.class);
+    private static final Logger deadLetterLogger = LoggerFactory.getLogger("chat.dead-letter");
+    private static final long MAX_RETRY_BACKOFF_MS = 5000;
+
+    private final ChatMessageRepository chatMessageRepository;
+    private final BlockingQueue<ChatMessage> queue;
+    private final Counter flushedMessages;
+    private final Counter rejectedMessages;
+    private final Counter deadLetters;
+    private final Timer batchSaves;
+
+    @Value("${chat.persistence.batch-size:100}")
+    private int batchSize;
+
+    @Value("${chat.persistence.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    @Value("${chat.persistence.shutdown-timeout-ms:30000}")
+    private long shutdownTimeoutMs;
+
+    @Value("${chat.persistence.max-batch-retries:3}")
+    private int maxBatchRetries;
+
+    private volatile boolean running;
+    private final List<Consumer<List<ChatMessage>>> listeners = new CopyOnWriteArrayList<>();
+    private Thread flusher;
+
+    public ChatMessageWriter(
+            ChatMessageRepository chatMessageRepository,
+            MeterRegistry meterRegistry,
+            @Value("${chat.persistence.queue-capacity:10000}") int queueCapacity
+    ) {
+        this.chatMessageRepository = chatMessageRepository;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.flushedMessages = Counter.builder("chat.persistence.flushed.messages")
+                .description("Chat messages written by the write-behind flusher")
+                .register(meterRegistry);
+        this.rejectedMessages = Counter.builder("chat.persistence.rejected")
+                .description("Chat messages refused because the write-behind queue was full")
+                .register(meterRegistry);
+        this.deadLetters = Counter.builder("chat.persistence.dead.letters")
+                .description("Chat messages the database rejected, written to the dead-letter log instead")
+                .register(meterRegistry);
+        this.batchSaves = saveTimer("batch", meterRegistry);
+        Gauge.builder("chat.persistence.queue.size", queue, BlockingQueue::size)
+                .description("Chat messages waiting to be written")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        flusher = new Thread(this::run, "chat-message-writer");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Adds a receiver of every batch once it is inserted, called on the thread that inserted it.
+     */
+    public void addListener(Consumer<List<ChatMessage>> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @return {@code false} if the queue is full or the writer stopped; the message is not stored
+     */
+    public boolean enqueue(ChatMessage message) {
+        if (running && queue.offer(message)) {
+            return true;
+        }
+        rejectedMessages.increment();
+        return false;
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        flusher.join(shutdownTimeoutMs);
+        if (!queue.isEmpty()) {
+            logger.error("Shutdown timed out with {} chat messages unflushed", queue.size());
+        }
+    }
+
+    private void run() {
+        List<ChatMessage> batch = new ArrayList<>(batchSize);
+        int failures = 0;
+        while (running || !queue.isEmpty() || !batch.isEmpty()) {
+            try {
+                if (batch.isEmpty()) {
+                    fill(batch);
+                }
+                if (batch.isEmpty()) {
+                    continue;
+                }
+                if (failures < maxBatchRetries) {
+                    long start = System.nanoTime();
+                    chatMessageRepository.saveAll(batch);
+                    batchSaves.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    flushedMessages.increment(batch.size());
+                    notifyListeners(batch);
+                    batch.clear();
+                } else if (saveEach(batch) == 0) {
+                    // Not a bad row: nothing went through, so the database itself is failing.
+                    sleep(backoffMs(++failures));
+                    continue;
+                }
+                failures = 0;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                // Ids handed out by the rolled-back transaction are discarded so the retry inserts again.
+                batch.forEach(message -> message.setId(null));
+                failures++;
+                if (failures >= maxBatchRetries) {
+                    logger.error("Failed to flush {} chat messages {} times, saving them one by one",
+                            batch.size(), failures, e);
+                    continue;
+                }
+                long backoffMs = backoffMs(failures);
+                logger.error("Failed to flush {} chat messages, retrying in {} ms", batch.size(), backoffMs, e);
+                sleep(backoffMs);
+            }
+        }
+    }
+
+    /**
+     * Saves each row in its own transaction. Rows the database rejects are dead-lettered,
+     * rows that fail otherwise stay in {@code batch} for the next attempt.
+     *
+     * @return the number of rows taken out of the batch, saved or dead-lettered
+     */
+    private int saveEach(List<ChatMessage> batch) {
+        List<ChatMessage> saved = new ArrayList<>(batch.size());
+        List<ChatMessage> failed = new ArrayList<>();
+        for (ChatMessage message : batch) {
+            try {
+                chatMessageRepository.save(message);
+                saved.add(message);
+            } catch (DataIntegrityViolationException e) {
+                message.setId(null);
+                deadLetter(message, e);
+            } catch (Exception e) {
+                message.setId(null);
+                failed.add(message);
+                logger.debug("Failed to save chat message of room {}", message.getRoomId(), e);
+            }
+        }
+        int done = batch.size() - failed.size();
+        batch.clear();
+        batch.addAll(failed);
+        if (!saved.isEmpty()) {
+            flushedMessages.increment(saved.size());
+            notifyListeners(saved);
+        }
+        return done;
+    }
+
+    private void deadLetter(ChatMessage message, DataIntegrityViolationException e) {
+        deadLetters.increment();
+        deadLetterLogger.error("room={} sender={} timestamp={} seq={} content={} error={}",
+                message.getRoomId(), message.getSenderName(), message.getTimestamp(), message.getSeq(),
+                message.getContent(), e.getMostSpecificCause().getMessage());
+    }
+
+    // A failing listener must not make an inserted batch look failed and get it inserted twice.
+    private void notifyListeners(List<ChatMessage> saved) {
+        for (Consumer<List<ChatMessage>> listener : listeners) {
+            try {
+                listener.accept(saved);
+            } catch (Exception e) {
+                logger.error("Chat message listener failed for {} messages", saved.size(), e);
+            }
+        }
+    }
+
+    // Blocks for the first message, then collects until the batch is full or the flush interval elapses.
+    private void fill(List<ChatMessage> batch) throws InterruptedException {
+        ChatMessage first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        while (batch.size() < batchSize) {
+            if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                continue;
+            }
+            long remaining = deadline - System.nanoTime();
+            ChatMessage next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private long backoffMs(int failures) {
+        return Math.min(flushIntervalMs << Math.min(failures - 1, 16), MAX_RETRY_BACKOFF_MS);
+    }
+
+    private static Timer saveTimer(String mode, MeterRegistry meterRegistry) {
+        return Timer.builder("chat.persistence.save")
+                .description("Time to insert a batch of chat messages")
+                .tag("mode", mode)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(meterRegistry);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.stringcode.websocket_app.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.stringcode.websocket_app.enums.MessageType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Token-bucket limits on inbound frames, so one client cannot turn a flood into room-wide
+ * fan-out and inserts. Every frame is first charged to its session's frame budget, before
+ * it is decoded; once its type is known it is charged to the buckets of its type's policy
+ * ({@code chat.rate-limit.policies}), per session, per user across all their sessions,
+ * and per room. A frame over a limit is dropped, or its session closed when the policy
+ * says so; a full room only ever drops, since the sender who hits it may not be the one
+ * flooding. User and room buckets are forgotten once idle long enough to be full again.
+ */
+@Component
+public class InboundRateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(InboundRateLimiter.class);
+
+    public enum Action {
+        DROP,
+        CLOSE
+    }
+
+    public enum Verdict {
+        ALLOW,
+        DROP,
+        CLOSE
+    }
+
+    private enum Scope {
+        SESSION,
+        USER,
+        ROOM
+    }
+
+    /**
+     * A sustained rate and the burst allowed on top of it.
+     */
+    public record Limit(double perSecond, int burst) {
+    }
+
+    /**
+     * Limits of one message type; a scope left out is not limited. The action defaults to drop.
+     */
+    public record Policy(Limit session, Limit user, Limit room, Action action) {
+
+        Limit limit(Scope scope) {
+            return switch (scope) {
+                case SESSION -> session;
+                case USER -> user;
+                case ROOM -> room;
+            };
+        }
+    }
+
+    private record SessionBuckets(String username, TokenBucket frames, TokenBucket[] byType) {
+    }
+
+    private final SessionRegistry sessionRegistry;
+    private final Map<MessageType, Policy> policies;
+    private final Map<String, SessionBuckets> sessions = new ConcurrentHashMap<>();
+    private final Cache<String, TokenBucket[]> userBuckets;
+    private final Cache<String, TokenBucket[]> roomBuckets;
+    private final Map<MessageType, Map<Scope, Counter>> throttled = new EnumMap<>(MessageType.class);
+    private final Counter throttledFrames;
+
+    @Value("${chat.rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.rate-limit.frames.per-second:50}")
+    private double framesPerSecond;
+
+    @Value("${chat.rate-limit.frames.burst:100}")
+    private int framesBurst;
+
+    @Value("${chat.rate-limit.frames.action:CLOSE}")
+    private Action framesAction;
+
+    @Autowired
+    public InboundRateLimiter(SessionRegistry sessionRegistry, MeterRegistry meterRegistry, Environment environment) {
+        this(sessionRegistry, meterRegistry, Binder.get(environment)
+                .bind("chat.rate-limit.policies", Bindable.mapOf(MessageType.class, Policy.class))
+                .orElse(Map.of()));
+    }
+
+    InboundRateLimiter(SessionRegistry sessionRegistry, MeterRegistry meterRegistry, Map<MessageType, Policy> policies) {
+        this.sessionRegistry = sessionRegistry;
+        this.policies = policies.isEmpty() ? new EnumMap<>(MessageType.class) : new EnumMap<>(policies);
+        Duration idle = Duration.ofSeconds(1);
+        for (Map.Entry<MessageType, Policy> entry : this.policies.entrySet()) {
+            Map<Scope, Counter> counters = new EnumMap<>(Scope.class);
+            for (Scope scope : Scope.values()) {
+                Limit limit = entry.getValue().limit(scope);
+                if (limit == null) {
+                    continue;
+                }
+                counters.put(scope, throttledCounter(meterRegistry, entry.getKey().name(), scope.name()));
+                Duration refill = Duration.ofNanos(Math.round(limit.burst() / limit.perSecond() * 1_000_000_000));
+                if (refill.compareTo(idle) > 0) {
+                    idle = refill;
+                }
+            }
+            throttled.put(entry.getKey(), counters);
+        }
+        this.userBuckets = Caffeine.newBuilder().expireAfterAccess(idle).build();
+        this.roomBuckets = Caffeine.newBuilder().expireAfterAccess(idle).build();
+        this.throttledFrames = throttledCounter(meterRegistry, "ANY", "FRAMES");
+    }
+
+    public void open(WebSocketSession session, String username) {
+        sessions.put(session.getId(), new SessionBuckets(username, new TokenBucket(framesPerSecond, framesBurst), buckets(Scope.SESSION)));
+    }
+
+    public void close(WebSocketSession session) {
+        sessions.remove(session.getId());
+    }
+
+    /**
+     * Charges a frame to its session's frame budget; called before the frame is decoded.
+     */
+    public Verdict admitFrame(WebSocketSession session) {
+        SessionBuckets own = enabled ? sessions.get(session.getId()) : null;
+        if (own == null || own.frames().tryAcquire()) {
+            return Verdict.ALLOW;
+        }
+        throttledFrames.increment();
+        return verdict(framesAction, session, "frame");
+    }
+
+    /**
+     * Charges a decoded frame to the session, user and room buckets of its type.
+     */
+    public Verdict admit(WebSocketSession session, MessageType type) {
+        Policy policy = enabled && type != null ? policies.get(type) : null;
+        SessionBuckets own = policy != null ? sessions.get(session.getId()) : null;
+        if (own == null) {
+            return Verdict.ALLOW;
+        }
+        int slot = type.ordinal();
+        if (policy.session() != null && !own.byType()[slot].tryAcquire()) {
+            return throttle(type, Scope.SESSION, policy.action(), session);
+        }
+        if (policy.user() != null
+                && !userBuckets.get(own.username(), k -> buckets(Scope.USER))[slot].tryAcquire()) {
+            return throttle(type, Scope.USER, policy.action(), session);
+        }
+        if (policy.room() != null) {
+            String roomId = sessionRegistry.getRoom(own.username());
+            if (roomId != null && !roomBuckets.get(roomId, k -> buckets(Scope.ROOM))[slot].tryAcquire()) {
+                return throttle(type, Scope.ROOM, Action.DROP, session);
+            }
+        }
+        return Verdict.ALLOW;
+    }
+
+    private Verdict throttle(MessageType type, Scope scope, Action action, WebSocketSession session) {
+        throttled.get(type).get(scope).increment();
+        return verdict(action, session, type + " " + scope.name().toLowerCase());
+    }
+
+    private static Verdict verdict(Action action, WebSocketSession session, String limit) {
+        if (action == Action.CLOSE) {
+            logger.warn("Closing session {}: {} rate limit exceeded", session.getId(), limit);
+            return Verdict.CLOSE;
+        }
+        return Verdict.DROP;
+    }
+
+    // One bucket per message type limited in the scope, indexed by ordinal.
+    private TokenBucket[] buckets(Scope scope) {
+        TokenBucket[] buckets = new TokenBucket[MessageType.values().length];
+        for (Map.Entry<MessageType, Policy> entry : policies.entrySet()) {
+            Limit limit = entry.getValue().limit(scope);
+            if (limit != null) {
+                buckets[entry.getKey().ordinal()] = new TokenBucket(limit.perSecond(), limit.burst());
+            }
+        }
+        return buckets;
+    }
+
+    private static Counter throttledCounter(MeterRegistry meterRegistry, String type, String scope) {
+        return Counter.builder("chat.inbound.throttled")
+                .description("Inbound frames over a rate limit")
+                .tag("type", type)
+                .tag("scope", scope.toLowerCase())
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,74 @@
+package com.stringcode.websocket_app.service;
+
+import com.stringcode.websocket_app.dto.ChatMessageDto;
+import com.stringcode.websocket_app.model.ChatMessage;
+import com.stringcode.websocket_app.repository.ChatMessageRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Stores messages in the {@code chat_messages} table through the write-behind
+ * {@link ChatMessageWriter}; ids are assigned when a batch is inserted. Seqs come
+ * from the {@link RoomSeqCounter}.
+ */
+@Component("messageStore")
+@ConditionalOnProperty(name = "chat.store.type", havingValue = "jpa", matchIfMissing = true)
+@RequiredArgsConstructor
+public class JpaMessageStore implements MessageStore {
+
+    private final ChatMessageWriter chatMessageWriter;
+    private final ChatMessageRepository chatMessageRepository;
+    private final RoomSeqCounter roomSeqCounter;
+
+    @Override
+    public void reserveSeqs(String roomId) {
+        try {
+            roomSeqCounter.reserve(roomId);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not reserve seqs of room " + roomId, e);
+        }
+    }
+
+    @Override
+    public long nextSeq(String roomId) {
+        return roomSeqCounter.next(roomId);
+    }
+
+    @Override
+    public void seqSeen(String roomId, long seq) {
+        roomSeqCounter.seen(roomId, seq);
+    }
+
+    @Override
+    public boolean append(ChatMessage message) {
+        return chatMessageWriter.enqueue(message);
+    }
+
+    @Override
+    public List<ChatMessageDto> findLatest(String roomId, int limit) {
+        return chatMessageRepository.findLatest(roomId, Limit.of(limit));
+    }
+
+    @Override
+    public List<ChatMessageDto> findBefore(String roomId, long beforeId, int limit) {
+        return chatMessageRepository.findTimestamp(roomId, beforeId)
+                .map(ts -> chatMessageRepository.findBefore(roomId, ts, beforeId, Limit.of(limit)))
+                .orElse(List.of());
+    }
+
+    @Override
+    public List<ChatMessage> findAfter(long afterId, int limit) {
+        return chatMessageRepository.findAfterId(afterId, Limit.of(limit));
+    }
+
+    @Override
+    public void addListener(Consumer<List<ChatMessage>> listener) {
+        chatMessageWriter.addListener(listener);
+    }
+}
@@ -0,0 +1,166 @@
+package com.stringcode.websocket_app.service;
+
+import com.stringcode.websocket_app.dto.WebSocketMessageDto;
+import com.stringcode.websocket_app.enums.MessageType;
+import com.stringcode.websocket_app.enums.WireProtocol;
+import com.stringcode.websocket_app.service.cluster.ClusterBus;
+import com.stringcode.websocket_app.service.cluster.ClusterEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes outbound messages and fans them out to local sessions. Each message is
+ * serialized at most once per wire protocol in use among its recipients; the
+ * resulting frames are immutable and shared by every recipient.
+ * <p>
+ * Room broadcasts also go out on the {@link ClusterBus} to the other nodes with
+ * members in the room. Everything else is delivered locally only.
+ */
+@Component
+public class MessageBroadcaster {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageBroadcaster.class);
+
+    private final WireCodec wireCodec;
+    private final SessionRegistry sessionRegistry;
+    private final ClusterBus clusterBus;
+
+    private final Timer roomFanOut;
+    private final Timer allFanOut;
+    private final DistributionSummary recipients;
+    private final Counter sendFailures;
+
+    public MessageBroadcaster(WireCodec wireCodec, SessionRegistry sessionRegistry, ClusterBus clusterBus, MeterRegistry meterRegistry) {
+        this.wireCodec = wireCodec;
+        this.sessionRegistry = sessionRegistry;
+        this.clusterBus = clusterBus;
+        this.roomFanOut = fanOutTimer("room", meterRegistry);
+        this.allFanOut = fanOutTimer("all", meterRegistry);
+        this.recipients = DistributionSummary.builder("chat.broadcast.recipients")
+                .description("Local sessions a broadcast was handed to")
+                .baseUnit("sessions")
+                .publishPercentileHistogram()
+                .maximumExpectedValue(10_000.0)
+                .register(meterRegistry);
+        this.sendFailures = Counter.builder("chat.outbound.send.failures")
+                .description("Frames that could not be handed to a session")
+                .register(meterRegistry);
+    }
+
+    public static WebSocketMessageDto systemMessage(MessageType type, Object payload) {
+        return new WebSocketMessageDto(type, payload, LocalDateTime.now(), "SYSTEM", "SYSTEM");
+    }
+
+    public void broadcastToRoom(String roomId, WebSocketMessageDto message) {
+        if (message.getTimestamp() == null) {
+            message.setTimestamp(LocalDateTime.now());
+        }
+        deliverToRoom(roomId, message);
+        clusterBus.publish(ClusterBus.roomTopic(roomId), new ClusterEvent.RoomFrame(roomId, message));
+    }
+
+    /**
+     * Sends to the room's sessions on this node only.
+     */
+    public void deliverToRoom(String roomId, WebSocketMessageDto message) {
+        Collection<WebSocketSession> sessions = sessionRegistry.getRoomSessions(roomId);
+        if (sessions.isEmpty()) return;
+        long start = System.nanoTime();
+        Frames frames = new Frames(message);
+
+        for (WebSocketSession session : sessions) {
+            if (session.isOpen()) {
+                frames.sendTo(session);
+            }
+        }
+        frames.record(roomFanOut, start);
+    }
+
+    public void broadcastToAll(WebSocketMessageDto message) {
+        if (sessionRegistry.getSessionCount() == 0) return;
+        long start = System.nanoTime();
+        Frames frames = new Frames(message);
+
+        for (SessionRegistry.Member member : sessionRegistry.getMembers()) {
+            if (member.session().isOpen()) {
+                frames.sendTo(member.session());
+            }
+        }
+        frames.record(allFanOut, start);
+    }
+
+    public void send(WebSocketSession session, WebSocketMessageDto message) {
+        new Frames(message).sendTo(session);
+    }
+
+    public WebSocketMessage<?> encode(WebSocketMessageDto message, WireProtocol protocol) {
+        if (message.getTimestamp() == null) {
+            message.setTimestamp(LocalDateTime.now());
+        }
+        try {
+            return wireCodec.encode(message, protocol);
+        } catch (Exception e) {
+            logger.error("Failed to encode message of type: {}", message.getType(), e);
+            return null;
+        }
+    }
+
+    public void sendToSession(WebSocketSession session, WebSocketMessage<?> frame) {
+        try {
+            session.sendMessage(frame);
+        } catch (Exception e) {
+            sendFailures.increment();
+            logger.error("Failed to send message to session: {}", session.getId(), e);
+        }
+    }
+
+    private static Timer fanOutTimer(String scope, MeterRegistry meterRegistry) {
+        return Timer.builder("chat.broadcast.fanout")
+                .description("Time to encode a broadcast and hand it to every local recipient")
+                .tag("scope", scope)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(1_000))
+                .maximumExpectedValue(Duration.ofSeconds(1))
+                .register(meterRegistry);
+    }
+
+    // Encodes lazily, once per protocol, the first time a recipient needs it.
+    private final class Frames {
+
+        private final WebSocketMessageDto message;
+        private final Map<WireProtocol, WebSocketMessage<?>> encoded = new EnumMap<>(WireProtocol.class);
+        private int sent;
+
+        Frames(WebSocketMessageDto message) {
+            this.message = message;
+        }
+
+        void sendTo(WebSocketSession session) {
+            WireProtocol protocol = WireProtocol.of(session);
+            WebSocketMessage<?> frame = encoded.computeIfAbsent(protocol, p -> encode(message, p));
+            if (frame != null) {
+                sendToSession(session, frame);
+                sent++;
+            }
+        }
+
+        void record(Timer fanOut, long startNanos) {
+            fanOut.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            recipients.record(sent);
+        }
+    }
+}
@@ -0,0 +1,454 @@
+package com.stringcode.websocket_app.service;
+
+import com.stringcode.websocket_app.dto.ChatMessageDto;
+import com.stringcode.websocket_app.enums.MessageType;
+import com.stringcode.websocket_app.model.ChatMessage;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.*;
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.*;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Full-text index of chat messages, kept in Lucene segments on local disk.
+ * <p>
+ * Messages are added as soon as the {@link MessageStore} has stored them and become
+ * searchable at the next refresh. The index records, with each commit, the id up to
+ * which it has caught up with the store; on startup, and periodically, it
+ * reads persisted messages past that point (minus an overlap for ids written out of
+ * order by other nodes) and adds whatever is missing. An unreadable index is
+ * discarded and rebuilt the same way.
+ * <p>
+ * Refreshes, commits and catch-ups run on the index's own two threads, so a long
+ * catch-up never holds up the application's shared scheduler.
+ * <p>
+ * Queries match every term, rank by BM25 and break ties newest first.
+ */
+@Component
+public class MessageSearchIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageSearchIndex.class);
+    private static final String CURSOR_KEY = "caughtUpToId";
+    // Documents of an index committed under another layout are dropped and read back from the store.
+    private static final String LAYOUT_KEY = "layout";
+    private static final String LAYOUT = "2";
+
+    private static final String ID = "id";
+    // Sort key breaking score ties newest first: the message id, which increases across rooms.
+    private static final String ID_ORDER = "idOrder";
+    private static final String SEQ = "roomSeq";
+    private static final String ROOM = "roomId";
+    private static final String SENDER = "senderName";
+    private static final String CONTENT = "content";
+    private static final String TIMESTAMP = "timestamp";
+
+    private static final Sort RANKING = new Sort(SortField.FIELD_SCORE, new SortField(ID_ORDER, SortField.Type.LONG, true));
+
+    private final MessageStore messageStore;
+    private final Analyzer analyzer = new StandardAnalyzer();
+    private final Path indexDir;
+    private final Timer searchTimer;
+
+    @Value("${chat.search.max-page-size:100}")
+    private int maxPageSize;
+
+    // Deepest result a page may reach; ranking cost grows with it.
+    @Value("${chat.search.max-depth:1000}")
+    private int maxDepth;
+
+    @Value("${chat.search.catch-up-batch-size:1000}")
+    private int catchUpBatchSize;
+
+    @Value("${chat.search.catch-up-overlap:1000}")
+    private long catchUpOverlap;
+
+    @Value("${chat.search.refresh-ms:1000}")
+    private long refreshMs;
+
+    @Value("${chat.search.commit-ms:10000}")
+    private long commitMs;
+
+    @Value("${chat.search.catch-up-ms:60000}")
+    private long catchUpMs;
+
+    private Directory directory;
+    private IndexWriter writer;
+    private SearcherManager searcherManager;
+    // Every message with an id up to here has been indexed; written into each commit.
+    private volatile long caughtUpToId;
+    // Held while one catch-up batch is read and indexed, by a commit, and by close(), which
+    // thereby waits for a running catch-up to finish its batch.
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Held for a whole catch-up, so two never run at once; nothing else waits for it.
+    private final Object catchUpRunning = new Object();
+    private volatile boolean closed;
+    private ScheduledExecutorService maintenance;
+
+    public MessageSearchIndex(
+            MessageStore messageStore,
+            MeterRegistry meterRegistry,
+            @Value("${chat.search.index-dir:data/search-index}") String indexDir
+    ) {
+        this.messageStore = messageStore;
+        this.indexDir = Path.of(indexDir);
+        this.searchTimer = Timer.builder("chat.search.query")
+                .description("Time to run a message search")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(10_000))
+                .maximumExpectedValue(Duration.ofSeconds(1))
+                .register(meterRegistry);
+        Gauge.builder("chat.search.indexed.messages", this, MessageSearchIndex::indexedMessages)
+                .description("Messages in the search index")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        Files.createDirectories(indexDir);
+        directory = FSDirectory.open(indexDir);
+        try {
+            openWriter();
+        } catch (CorruptIndexException | IndexFormatTooOldException | IndexFormatTooNewException e) {
+            logger.warn("Search index in {} is unreadable, rebuilding it from the message store", indexDir, e);
+            writer = new IndexWriter(directory, new IndexWriterConfig(analyzer).setOpenMode(IndexWriterConfig.OpenMode.CREATE));
+            caughtUpToId = 0;
+        }
+        searcherManager = new SearcherManager(writer, null);
+        messageStore.addListener(this::index);
+
+        // Two threads: a catch-up, which may take minutes, leaves the other to refresh and commit.
+        maintenance = Executors.newScheduledThreadPool(2, r -> {
+            Thread thread = new Thread(r, "message-search");
+            thread.setDaemon(true);
+            return thread;
+        });
+        schedule("catch up", 0, catchUpMs, this::catchUp);
+        schedule("refresh", refreshMs, refreshMs, this::refresh);
+        schedule("commit", commitMs, commitMs, this::commit);
+    }
+
+    // A running catch-up stops after its current batch; the index is closed only once it has.
+    @PreDestroy
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        // Not interrupted: Lucene closes a file channel whose thread is interrupted.
+        maintenance.shutdown();
+        writeLock.lock();
+        try {
+            searcherManager.close();
+            writer.setLiveCommitData(commitData());
+            writer.commit();
+            writer.close();
+            directory.close();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Adds persisted messages. Messages already in the index are replaced, so
+     * re-indexing after a catch-up is harmless.
+     */
+    public void index(List<ChatMessage> messages) {
+        // The store outlives the index on shutdown; catch-up picks up its last messages on the next start.
+        if (closed || !writer.isOpen()) {
+            return;
+        }
+        try {
+            long maxId = 0;
+            for (ChatMessage message : messages) {
+                if (message.getId() != null && message.getType() == MessageType.CHAT) {
+                    writer.updateDocument(new Term(ID, message.getId().toString()), document(message));
+                    maxId = Math.max(maxId, message.getId());
+                }
+            }
+            // One node's writer hands out increasing ids, so its own batches extend the caught-up range.
+            if (maxId > caughtUpToId) {
+                caughtUpToId = maxId;
+            }
+        } catch (AlreadyClosedException e) {
+            // Closed while indexing; see above.
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to index {} chat messages", messages.size(), e);
+        }
+    }
+
+    /**
+     * @param roomId restricts the search to one room, or {@code null} for all rooms
+     * @return the {@code page}-th page of matches, best first
+     */
+    public List<ChatMessageDto> search(String roomId, String text, int page, int size) {
+        List<String> terms = terms(text);
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+        BooleanQuery.Builder query = new BooleanQuery.Builder();
+        for (String term : terms) {
+            query.add(new TermQuery(new Term(CONTENT, term)), BooleanClause.Occur.MUST);
+        }
+        if (roomId != null) {
+            query.add(new TermQuery(new Term(ROOM, roomId)), BooleanClause.Occur.FILTER);
+        }
+
+        int pageSize = Math.max(1, Math.min(size, maxPageSize));
+        int from = Math.max(0, page) * pageSize;
+        if (from + pageSize > maxDepth) {
+            return List.of();
+        }
+        long start = System.nanoTime();
+        IndexSearcher searcher = null;
+        try {
+            searcher = searcherManager.acquire();
+            TopDocs top = searcher.search(query.build(), from + pageSize, RANKING, true);
+            StoredFields stored = searcher.storedFields();
+            List<ChatMessageDto> results = new ArrayList<>(Math.max(0, top.scoreDocs.length - from));
+            for (int i = from; i < top.scoreDocs.length; i++) {
+                results.add(toDto(stored.document(top.scoreDocs[i].doc)));
+            }
+            return results;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            release(searcher);
+            searchTimer.record(Duration.ofNanos(System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * Drops the index and reads every message back from the message store.
+     */
+    public void rebuild() throws IOException {
+        synchronized (catchUpRunning) {
+            writeLock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                writer.deleteAll();
+                caughtUpToId = 0;
+            } finally {
+                writeLock.unlock();
+            }
+            catchUp();
+        }
+    }
+
+    // Makes documents added since the last refresh visible to searches.
+    public void refresh() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            searcherManager.maybeRefresh();
+        } catch (AlreadyClosedException e) {
+            if (!closed) {
+                throw e;
+            }
+        }
+    }
+
+    // Skipped while a catch-up batch holds the writer; the next period commits instead.
+    public void commit() throws IOException {
+        if (!writeLock.tryLock()) {
+            return;
+        }
+        try {
+            if (!closed) {
+                writer.setLiveCommitData(commitData());
+                writer.commit();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Picks up messages persisted by other nodes, or while this node was down. The writer is
+    // locked one batch at a time, so commits and close() get in between batches.
+    public void catchUp() {
+        synchronized (catchUpRunning) {
+            try {
+                long cursor = Math.max(0, caughtUpToId - catchUpOverlap);
+                int added = 0;
+                boolean more = true;
+                while (more) {
+                    writeLock.lock();
+                    try {
+                        if (closed) {
+                            return;
+                        }
+                        List<ChatMessage> batch = messageStore.findAfter(cursor, catchUpBatchSize);
+                        List<ChatMessage> missing = new ArrayList<>();
+                        IndexSearcher searcher = searcherManager.acquire();
+                        try {
+                            for (ChatMessage message : batch) {
+                                if (searcher.count(new TermQuery(new Term(ID, message.getId().toString()))) == 0) {
+                                    missing.add(message);
+                                }
+                                cursor = message.getId();
+                            }
+                        } finally {
+                            release(searcher);
+                        }
+                        index(missing);
+                        added += missing.size();
+                        if (cursor > caughtUpToId) {
+                            caughtUpToId = cursor;
+                        }
+                        more = batch.size() == catchUpBatchSize;
+                    } finally {
+                        writeLock.unlock();
+                    }
+                }
+                if (added > 0 && !closed) {
+                    logger.info("Search index caught up with {} messages from the message store", added);
+                    searcherManager.maybeRefresh();
+                }
+            } catch (Exception e) {
+                if (!closed) {
+                    logger.error("Failed to catch the search index up with the message store", e);
+                }
+            }
+        }
+    }
+
+    private interface MaintenanceTask {
+        void run() throws Exception;
+    }
+
+    private void schedule(String name, long initialDelayMs, long delayMs, MaintenanceTask task) {
+        maintenance.scheduleWithFixedDelay(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                logger.error("Search index {} failed", name, e);
+            }
+        }, initialDelayMs, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void openWriter() throws IOException {
+        writer = new IndexWriter(directory, new IndexWriterConfig(analyzer).setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND));
+        caughtUpToId = 0;
+        String layout = null;
+        Iterable<Map.Entry<String, String>> commitData = writer.getLiveCommitData();
+        if (commitData != null) {
+            for (Map.Entry<String, String> entry : commitData) {
+                if (CURSOR_KEY.equals(entry.getKey())) {
+                    caughtUpToId = Long.parseLong(entry.getValue());
+                } else if (LAYOUT_KEY.equals(entry.getKey())) {
+                    layout = entry.getValue();
+                }
+            }
+        }
+        if (!LAYOUT.equals(layout) && writer.getDocStats().numDocs > 0) {
+            logger.info("Search index in {} has an older document layout, rebuilding it from the message store", indexDir);
+            writer.deleteAll();
+            caughtUpToId = 0;
+        }
+    }
+
+    private Iterable<Map.Entry<String, String>> commitData() {
+        return Map.of(CURSOR_KEY, Long.toString(caughtUpToId), LAYOUT_KEY, LAYOUT).entrySet();
+    }
+
+    private List<String> terms(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (text == null) {
+            return List.of();
+        }
+        try (TokenStream tokens = analyzer.tokenStream(CONTENT, text)) {
+            CharTermAttribute term = tokens.addAttribute(CharTermAttribute.class);
+            tokens.reset();
+            while (tokens.incrementToken()) {
+                terms.add(term.toString());
+            }
+            tokens.end();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return List.copyOf(terms);
+    }
+
+    private static Document document(ChatMessage message) {
+        Document doc = new Document();
+        doc.add(new StringField(ID, message.getId().toString(), Field.Store.YES));
+        doc.add(new NumericDocValuesField(ID_ORDER, message.getId()));
+        if (message.getSeq() != null) {
+            doc.add(new StoredField(SEQ, message.getSeq()));
+        }
+        doc.add(new StringField(ROOM, message.getRoomId(), Field.Store.YES));
+        if (message.getSenderName() != null) {
+            doc.add(new StoredField(SENDER, message.getSenderName()));
+        }
+        doc.add(new TextField(CONTENT, message.getContent() != null ? message.getContent() : "", Field.Store.YES));
+        if (message.getTimestamp() != null) {
+            doc.add(new StoredField(TIMESTAMP, message.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli()));
+        }
+        return doc;
+    }
+
+    private static ChatMessageDto toDto(Document doc) {
+        IndexableField timestamp = doc.getField(TIMESTAMP);
+        IndexableField seq = doc.getField(SEQ);
+        return new ChatMessageDto(
+                Long.parseLong(doc.get(ID)),
+                MessageType.CHAT,
+                doc.get(CONTENT),
+                doc.get(SENDER),
+                doc.get(ROOM),
+                timestamp != null
+                        ? LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp.numericValue().longValue()), ZoneOffset.UTC)
+                        : null,
+                seq != null ? seq.numericValue().longValue() : null
+        );
+    }
+
+    private void release(IndexSearcher searcher) {
+        if (searcher == null) {
+            return;
+        }
+        try {
+            searcherManager.release(searcher);
+        } catch (IOException e) {
+            logger.warn("Failed to release index searcher", e);
+        }
+    }
+
+    private double indexedMessages() {
+        return writer != null && writer.isOpen() ? writer.getDocStats().numDocs : 0;
+    }
+}
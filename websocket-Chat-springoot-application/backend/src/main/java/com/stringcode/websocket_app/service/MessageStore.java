@@ -0,0 +1,70 @@
+package com.stringcode.websocket_app.service;
+
+import com.stringcode.websocket_app.dto.ChatMessageDto;
+import com.stringcode.websocket_app.model.ChatMessage;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Durable storage of CHAT messages, selected with {@code chat.store.type}: {@code jpa}
+ * (the database, see {@link JpaMessageStore}) or {@code log} (append-only segment files
+ * on local disk, see {@link com.stringcode.websocket_app.service.log.SegmentLogMessageStore}).
+ * Both implementations are registered under the bean name {@code messageStore}.
+ */
+public interface MessageStore {
+
+    /**
+     * Makes sure the room has seqs ready for {@link #nextSeq}. Called off the room's
+     * stripe before a message is handed to it, so it may wait for the store.
+     *
+     * @throws RuntimeException if the store cannot reserve any now
+     */
+    default void reserveSeqs(String roomId) {
+    }
+
+    /**
+     * Takes the room's next stream seq. Called on the room's stripe just before the
+     * message is appended, and must not wait for the store; seqs keep increasing for as
+     * long as the store keeps its data, across restarts, and a seq taken for a message
+     * that is then not stored is skipped.
+     *
+     * @throws RuntimeException if the store has none ready
+     */
+    long nextSeq(String roomId);
+
+    /**
+     * Tells the store another node handed out {@code seq}, so the room's next seq here follows it.
+     */
+    default void seqSeen(String roomId, long seq) {
+    }
+
+    /**
+     * Stores a message. Called on the room's stripe, so a room's messages arrive in the
+     * order they were published, and must not wait for a slow store. The id is set on
+     * {@code message} once it is assigned, which may be after this returns.
+     *
+     * @return {@code false} if the store cannot take the message now; it is not stored
+     */
+    boolean append(ChatMessage message);
+
+    /**
+     * @return up to {@code limit} of the room's latest messages, newest first
+     */
+    List<ChatMessageDto> findLatest(String roomId, int limit);
+
+    /**
+     * @return up to {@code limit} of the room's messages older than {@code beforeId}, newest first
+     */
+    List<ChatMessageDto> findBefore(String roomId, long beforeId, int limit);
+
+    /**
+     * @return up to {@code limit} messages of every room with an id above {@code afterId}, in id order
+     */
+    List<ChatMessage> findAfter(long afterId, int limit);
+
+    /**
+     * Adds a receiver of every batch of appended messages, called once they are stored and have their ids.
+     */
+    void addListener(Consumer<List<ChatMessage>> listener);
+}
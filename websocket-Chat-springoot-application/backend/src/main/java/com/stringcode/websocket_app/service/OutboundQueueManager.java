@@ -0,0 +1,240 @@
+package com.stringcode.websocket_app.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Owns the per-session outbound queues. Sessions whose buffer grows past the
+ * byte limit, or whose in-flight write exceeds the time limit, are closed and
+ * unregistered from the chat service.
+ * <p>
+ * Queues are drained on a small fixed pool of writer threads, which hand chat frames
+ * to the container's asynchronous send instead of waiting for them, so slow consumers
+ * do not hold the pool; at most one drain task per session is ever pending. Only a
+ * ping or pong to a stalled peer blocks a writer, until the send time limit evicts
+ * it. Closing runs on a separate pool, so evicting a stalled session is not stuck
+ * behind the writes it stalls.
+ */
+@Component
+public class OutboundQueueManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboundQueueManager.class);
+
+    private final Map<String, QueuedWebSocketSession> sessions = new ConcurrentHashMap<>();
+    private final ChatService chatService;
+    private final ExecutorService executor;
+    private final ExecutorService closer;
+    private final Counter droppedFrames;
+    private final Counter evictedSessions;
+
+    @Value("${chat.outbound.buffer-size-limit:524288}")
+    private int bufferSizeLimit;
+
+    @Value("${chat.outbound.send-time-limit-ms:10000}")
+    private long sendTimeLimitMs;
+
+    public OutboundQueueManager(
+            ChatService chatService,
+            MeterRegistry meterRegistry,
+            @Value("${chat.outbound.writer-threads:8}") int writerThreads
+    ) {
+        this.chatService = chatService;
+        this.executor = new ThreadPoolExecutor(writerThreads, writerThreads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), daemonThreads("ws-outbound-"));
+        this.closer = Executors.newFixedThreadPool(2, daemonThreads("ws-close-"));
+        this.droppedFrames = Counter.builder("chat.outbound.dropped.frames")
+                .description("Frames discarded because the session was closed or evicted")
+                .register(meterRegistry);
+        this.evictedSessions = Counter.builder("chat.outbound.evicted.sessions")
+                .description("Sessions closed for exceeding the outbound buffer or send time limit")
+                .register(meterRegistry);
+        Gauge.builder("chat.outbound.queued.frames", this, m -> m.sum(false))
+                .description("Frames waiting in all outbound queues")
+                .register(meterRegistry);
+        Gauge.builder("chat.outbound.queued.bytes", this, m -> m.sum(true))
+                .description("Bytes waiting in all outbound queues")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("chat.outbound.queue.max.bytes", this, OutboundQueueManager::maxQueuedBytes)
+                .description("Largest single outbound queue")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    public QueuedWebSocketSession open(WebSocketSession session) {
+        return sessions.computeIfAbsent(session.getId(),
+                id -> new QueuedWebSocketSession(session, executor, this, bufferSizeLimit));
+    }
+
+    /**
+     * @return the queued decorator for the session, or the session itself if it was never opened
+     */
+    public WebSocketSession get(WebSocketSession session) {
+        QueuedWebSocketSession queued = sessions.get(session.getId());
+        return queued != null ? queued : session;
+    }
+
+    public void close(WebSocketSession session) {
+        QueuedWebSocketSession queued = sessions.remove(session.getId());
+        if (queued != null) {
+            queued.markEvicted();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${chat.outbound.check-interval-ms:1000}")
+    public void evictStalledSessions() {
+        long now = System.nanoTime();
+        long limit = TimeUnit.MILLISECONDS.toNanos(sendTimeLimitMs);
+        for (QueuedWebSocketSession session : sessions.values()) {
+            long start = session.getSendStartNanos();
+            if (start != 0 && now - start > limit) {
+                evict(session, "send time limit exceeded");
+            }
+        }
+    }
+
+    void evict(QueuedWebSocketSession session, String reason) {
+        int dropped = session.markEvicted();
+        if (dropped < 0) {
+            return;
+        }
+        sessions.remove(session.getId(), session);
+        evictedSessions.increment();
+        droppedFrames.increment(dropped);
+        logger.warn("Evicting slow session {}: {}", session.getId(), reason);
+        runClose(() -> {
+            chatService.unregister(session);
+            try {
+                session.getDelegate().close(CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (Exception e) {
+                logger.debug("Failed to close evicted session: {}", session.getId(), e);
+            }
+        });
+    }
+
+    /**
+     * Closes sessions the {@link SessionHeartbeat} found dead in one task: all of them are
+     * unregistered first, so presence changes go out together, then their sockets are closed.
+     *
+     * @return the number of sessions closed, leaving out those already evicted
+     */
+    int closeUnresponsive(List<QueuedWebSocketSession> unresponsive) {
+        List<QueuedWebSocketSession> closing = new ArrayList<>(unresponsive.size());
+        for (QueuedWebSocketSession session : unresponsive) {
+            int dropped = session.markEvicted();
+            if (dropped < 0) {
+                continue;
+            }
+            sessions.remove(session.getId(), session);
+            droppedFrames.increment(dropped);
+            closing.add(session);
+        }
+        if (closing.isEmpty()) {
+            return 0;
+        }
+        logger.info("Closing {} unresponsive sessions", closing.size());
+        runClose(() -> {
+            for (QueuedWebSocketSession session : closing) {
+                chatService.unregister(session);
+            }
+            for (QueuedWebSocketSession session : closing) {
+                try {
+                    session.getDelegate().close(CloseStatus.SESSION_NOT_RELIABLE);
+                } catch (Exception e) {
+                    logger.debug("Failed to close unresponsive session: {}", session.getId(), e);
+                }
+            }
+        });
+        return closing.size();
+    }
+
+    /**
+     * Closes a session with the given status, e.g. one the {@link InboundRateLimiter} gave up
+     * on; anything still queued for it is discarded.
+     */
+    public void closeWithStatus(WebSocketSession session, CloseStatus status) {
+        QueuedWebSocketSession queued = sessions.remove(session.getId());
+        if (queued == null) {
+            return;
+        }
+        int dropped = queued.markEvicted();
+        if (dropped < 0) {
+            return;
+        }
+        droppedFrames.increment(dropped);
+        runClose(() -> {
+            chatService.unregister(queued);
+            try {
+                queued.getDelegate().close(status);
+            } catch (Exception e) {
+                logger.debug("Failed to close session: {}", queued.getId(), e);
+            }
+        });
+    }
+
+    void onDropped(QueuedWebSocketSession session, int frames) {
+        droppedFrames.increment(frames);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        closer.shutdownNow();
+    }
+
+    // Off the caller's thread, or inline once the pool is shut down, e.g. while the context closes.
+    private void runClose(Runnable close) {
+        try {
+            closer.execute(close);
+        } catch (RejectedExecutionException e) {
+            close.run();
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private double sum(boolean bytes) {
+        long total = 0;
+        for (QueuedWebSocketSession session : sessions.values()) {
+            total += bytes ? session.getQueuedBytes() : session.getQueuedFrames();
+        }
+        return total;
+    }
+
+    private double maxQueuedBytes() {
+        int max = 0;
+        for (QueuedWebSocketSession session : sessions.values()) {
+            max = Math.max(max, session.getQueuedBytes());
+        }
+        return max;
+    }
+}
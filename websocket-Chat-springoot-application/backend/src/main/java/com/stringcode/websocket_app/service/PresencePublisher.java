@@ -0,0 +1,238 @@
+package com.stringcode.websocket_app.service;
+
+import com.stringcode.websocket_app.enums.MessageType;
+import com.stringcode.websocket_app.service.cluster.ClusterPresence;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.*;
+
+import static com.stringcode.websocket_app.service.MessageBroadcaster.systemMessage;
+
+/**
+ * Coalesces presence changes into at most one PRESENCE_BATCH frame per scope per tick.
+ * Callers only mark a user or room dirty; each tick diffs the registry against the
+ * state last published and emits the net change, so a burst of joins and leaves
+ * costs one frame per room and one for the online list.
+ * <p>
+ * Every batch carries the next version of its scope. Snapshots report the published
+ * state and version, so a client applies later batches on top and resyncs on a gap.
+ * <p>
+ * State is read from {@link ClusterPresence}, so users on other nodes are included.
+ * Local changes are announced to the cluster once per tick; every node then publishes
+ * its own batches to its own sessions, so versions are per node.
+ */
+@Component
+public class PresencePublisher {
+
+    private final ClusterPresence clusterPresence;
+    private final MessageBroadcaster broadcaster;
+
+    private final Counter changes;
+    private final Counter coalescedChanges;
+    private final Counter publishedFrames;
+    private final Counter skippedTicks;
+
+    private final Object dirtyLock = new Object();
+    private Set<String> dirtyUsers = new HashSet<>();
+    private Set<String> dirtyRooms = new HashSet<>();
+    // Users whose local state changed and must be announced to the other nodes.
+    private Set<String> localUsers = new HashSet<>();
+    private long pendingChanges;
+
+    // Published state, guarded by publishLock. A user's value is their room, or null when in no room.
+    private final Object publishLock = new Object();
+    private final Map<String, String> publishedUsers = new HashMap<>();
+    private final Map<String, Set<String>> publishedRooms = new HashMap<>();
+    private final Map<String, Long> roomVersions = new HashMap<>();
+    private long onlineVersion;
+
+    public PresencePublisher(ClusterPresence clusterPresence, MessageBroadcaster broadcaster, MeterRegistry meterRegistry) {
+        this.clusterPresence = clusterPresence;
+        this.broadcaster = broadcaster;
+        this.changes = Counter.builder("chat.presence.changes")
+                .description("Presence changes marked for publishing")
+                .register(meterRegistry);
+        this.coalescedChanges = Counter.builder("chat.presence.changes.coalesced")
+                .description("Presence changes merged into another event or cancelled out within a tick")
+                .register(meterRegistry);
+        this.publishedFrames = Counter.builder("chat.presence.frames")
+                .description("PRESENCE_BATCH frames broadcast")
+                .register(meterRegistry);
+        this.skippedTicks = Counter.builder("chat.presence.ticks.skipped")
+                .description("Ticks with nothing to publish")
+                .register(meterRegistry);
+        clusterPresence.setListener(this::remoteChanged);
+    }
+
+    public void userChanged(String username) {
+        synchronized (dirtyLock) {
+            dirtyUsers.add(username);
+            localUsers.add(username);
+            pendingChanges++;
+        }
+        changes.increment();
+    }
+
+    private void remoteChanged(String username, Set<String> rooms) {
+        synchronized (dirtyLock) {
+            dirtyUsers.add(username);
+            dirtyRooms.addAll(rooms);
+            pendingChanges++;
+        }
+        changes.increment();
+    }
+
+    public void roomChanged(String roomId) {
+        synchronized (dirtyLock) {
+            dirtyRooms.add(roomId);
+            pendingChanges++;
+        }
+        changes.increment();
+    }
+
+    public void sendOnlineUsers(WebSocketSession session) {
+        synchronized (publishLock) {
+            List<Map<String, String>> users = new ArrayList<>(publishedUsers.size());
+            publishedUsers.forEach((username, roomId) -> users.add(userEntry(username, roomId)));
+            broadcaster.send(session, systemMessage(MessageType.ONLINE_USERS, Map.of(
+                    "users", users,
+                    "version", onlineVersion
+            )));
+        }
+    }
+
+    public void sendRoomPresence(WebSocketSession session, String roomId) {
+        synchronized (publishLock) {
+            List<Map<String, String>> users = publishedRooms.getOrDefault(roomId, Collections.emptySet()).stream()
+                    .map(u -> Map.of("username", u, "status", "online"))
+                    .toList();
+            broadcaster.send(session, systemMessage(MessageType.ROOM_PRESENCE, Map.of(
+                    "roomId", roomId,
+                    "users", users,
+                    "version", roomVersions.getOrDefault(roomId, 0L)
+            )));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${chat.presence.tick-ms:150}")
+    public void publish() {
+        Set<String> users;
+        Set<String> rooms;
+        Set<String> announced;
+        long marked;
+        synchronized (dirtyLock) {
+            if (dirtyUsers.isEmpty() && dirtyRooms.isEmpty()) {
+                skippedTicks.increment();
+                return;
+            }
+            users = dirtyUsers;
+            rooms = dirtyRooms;
+            announced = localUsers;
+            marked = pendingChanges;
+            dirtyUsers = new HashSet<>();
+            dirtyRooms = new HashSet<>();
+            localUsers = new HashSet<>();
+            pendingChanges = 0;
+        }
+        clusterPresence.announce(announced);
+
+        int events = 0;
+        synchronized (publishLock) {
+            events += publishOnline(users);
+            for (String roomId : rooms) {
+                events += publishRoom(roomId);
+            }
+        }
+        coalescedChanges.increment(Math.max(0, marked - events));
+    }
+
+    private int publishOnline(Set<String> users) {
+        List<Map<String, String>> events = new ArrayList<>();
+        for (String username : users) {
+            boolean wasOnline = publishedUsers.containsKey(username);
+            String oldRoom = publishedUsers.get(username);
+            boolean isOnline = clusterPresence.isOnline(username);
+            String room = isOnline ? clusterPresence.getRoom(username) : null;
+
+            if (isOnline && !wasOnline) {
+                events.add(event(MessageType.USER_ONLINE, username, room));
+            } else if (!isOnline && wasOnline) {
+                events.add(event(MessageType.USER_OFFLINE, username, null));
+            } else if (isOnline && !Objects.equals(oldRoom, room)) {
+                events.add(event(MessageType.USER_MOVED, username, room));
+            }
+            if (isOnline) {
+                publishedUsers.put(username, room);
+            } else {
+                publishedUsers.remove(username);
+            }
+        }
+        if (!events.isEmpty()) {
+            broadcaster.broadcastToAll(systemMessage(MessageType.PRESENCE_BATCH, Map.of(
+                    "scope", "online",
+                    "version", ++onlineVersion,
+                    "events", events
+            )));
+            publishedFrames.increment();
+        }
+        return events.size();
+    }
+
+    private int publishRoom(String roomId) {
+        Set<String> current = new HashSet<>(clusterPresence.getRoomUsers(roomId));
+        Set<String> published = publishedRooms.getOrDefault(roomId, Collections.emptySet());
+
+        List<Map<String, String>> events = new ArrayList<>();
+        for (String username : published) {
+            if (!current.contains(username)) {
+                events.add(event(MessageType.LEAVE, username, roomId));
+            }
+        }
+        for (String username : current) {
+            if (!published.contains(username)) {
+                events.add(event(MessageType.JOIN, username, roomId));
+            }
+        }
+
+        if (current.isEmpty()) {
+            publishedRooms.remove(roomId);
+            roomVersions.remove(roomId);
+            return events.size();
+        }
+        publishedRooms.put(roomId, current);
+        if (!events.isEmpty()) {
+            broadcaster.deliverToRoom(roomId, systemMessage(MessageType.PRESENCE_BATCH, Map.of(
+                    "scope", "room",
+                    "roomId", roomId,
+                    "version", roomVersions.merge(roomId, 1L, Long::sum),
+                    "events", events
+            )));
+            publishedFrames.increment();
+        }
+        return events.size();
+    }
+
+    private static Map<String, String> userEntry(String username, String roomId) {
+        Map<String, String> user = new HashMap<>();
+        user.put("username", username);
+        user.put("status", "online");
+        if (roomId != null) {
+            user.put("currentRoom", roomId);
+        }
+        return user;
+    }
+
+    private static Map<String, String> event(MessageType type, String username, String roomId) {
+        Map<String, String> event = new HashMap<>();
+        event.put("type", type.name());
+        event.put("username", username);
+        if (roomId != null) {
+            event.put("roomId", roomId);
+        }
+        return event;
+    }
+}
@@ -0,0 +1,213 @@
+package com.stringcode.websocket_app.service;
+
+import jakarta.websocket.RemoteEndpoint;
+import jakarta.websocket.SendHandler;
+import jakarta.websocket.Session;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Session decorator whose {@link #sendMessage} never blocks: frames are queued
+ * and written to the underlying session by a single drain task at a time, so
+ * concurrent broadcasts never touch the raw container session in parallel.
+ * <p>
+ * Text and binary frames go to the container's asynchronous send, and the drain
+ * continues from its completion callback, so no thread waits on a slow peer. Pings
+ * and pongs, which the container only sends blocking, and sessions without a
+ * container session behind them are written by the drain task itself.
+ */
+public class QueuedWebSocketSession extends WebSocketSessionDecorator {
+
+    private final Queue<WebSocketMessage<?>> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedFrames = new AtomicInteger();
+    private final AtomicInteger queuedBytes = new AtomicInteger();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean evicted = new AtomicBoolean();
+
+    private final Executor executor;
+    private final OutboundQueueManager manager;
+    private final int bufferSizeLimit;
+    // Null when the delegate is not backed by a container session.
+    private final RemoteEndpoint.Async asyncRemote;
+
+    // System.nanoTime() when the frame currently being written was handed to the container, 0 when idle
+    private volatile long sendStartNanos;
+    // System.nanoTime() of the last frame received from the client, pongs included
+    private volatile long lastActiveNanos = System.nanoTime();
+
+    QueuedWebSocketSession(WebSocketSession delegate, Executor executor, OutboundQueueManager manager, int bufferSizeLimit) {
+        super(delegate);
+        this.executor = executor;
+        this.manager = manager;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.asyncRemote = asyncRemote(delegate);
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) {
+        if (evicted.get()) {
+            manager.onDropped(this, 1);
+            return;
+        }
+        queuedFrames.incrementAndGet();
+        int bytes = queuedBytes.addAndGet(message.getPayloadLength());
+        queue.add(message);
+        // Evicted between the check and the add: markEvicted may already have emptied the queue.
+        if (evicted.get()) {
+            manager.onDropped(this, discardQueued());
+            return;
+        }
+        if (bytes > bufferSizeLimit) {
+            manager.evict(this, "buffer size limit exceeded");
+            return;
+        }
+        scheduleDrain();
+    }
+
+    public int getQueuedFrames() {
+        return queuedFrames.get();
+    }
+
+    public int getQueuedBytes() {
+        return queuedBytes.get();
+    }
+
+    /**
+     * @return the number of queued frames discarded, or -1 if already evicted
+     */
+    int markEvicted() {
+        if (!evicted.compareAndSet(false, true)) {
+            return -1;
+        }
+        return discardQueued();
+    }
+
+    private int discardQueued() {
+        int dropped = 0;
+        WebSocketMessage<?> message;
+        while ((message = queue.poll()) != null) {
+            queuedFrames.decrementAndGet();
+            queuedBytes.addAndGet(-message.getPayloadLength());
+            dropped++;
+        }
+        return dropped;
+    }
+
+    long getSendStartNanos() {
+        return sendStartNanos;
+    }
+
+    void markActive() {
+        lastActiveNanos = System.nanoTime();
+    }
+
+    long getLastActiveNanos() {
+        return lastActiveNanos;
+    }
+
+    boolean isEvicted() {
+        return evicted.get();
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            runDrain();
+        }
+    }
+
+    // Called by the owner of the draining flag.
+    private void runDrain() {
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            // Shutting down; nothing will write to the socket any more.
+            draining.set(false);
+            manager.onDropped(this, discardQueued());
+        }
+    }
+
+    private void drain() {
+        boolean handedOff = false;
+        try {
+            WebSocketMessage<?> message;
+            while (!evicted.get() && (message = queue.poll()) != null) {
+                queuedFrames.decrementAndGet();
+                queuedBytes.addAndGet(-message.getPayloadLength());
+                if (!isOpen()) {
+                    manager.onDropped(this, 1);
+                    continue;
+                }
+                sendStartNanos = System.nanoTime();
+                if (asyncRemote != null && message.isLast()
+                        && (message instanceof TextMessage || message instanceof BinaryMessage)) {
+                    if (sendAsync(message)) {
+                        // The completion callback drains the rest and releases the flag.
+                        handedOff = true;
+                        return;
+                    }
+                    continue;
+                }
+                try {
+                    getDelegate().sendMessage(message);
+                } catch (Exception e) {
+                    manager.evict(this, "send failed: " + e.getMessage());
+                } finally {
+                    sendStartNanos = 0;
+                }
+            }
+        } finally {
+            if (!handedOff) {
+                draining.set(false);
+            }
+        }
+        // A frame may have been queued after the last poll but before the flag was released.
+        if (!queue.isEmpty() && !evicted.get()) {
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * @return whether the container took the frame; if not, the session has been evicted
+     */
+    private boolean sendAsync(WebSocketMessage<?> message) {
+        SendHandler done = result -> {
+            sendStartNanos = 0;
+            if (!result.isOK()) {
+                manager.evict(this, "send failed: " + result.getException().getMessage());
+            }
+            // On the pool rather than the container's thread, which may still be inside sendText.
+            runDrain();
+        };
+        try {
+            if (message instanceof TextMessage text) {
+                asyncRemote.sendText(text.getPayload(), done);
+            } else {
+                asyncRemote.sendBinary(((BinaryMessage) message).getPayload(), done);
+            }
+            return true;
+        } catch (RuntimeException e) {
+            sendStartNanos = 0;
+            manager.evict(this, "send failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static RemoteEndpoint.Async asyncRemote(WebSocketSession delegate) {
+        if (WebSocketSessionDecorator.unwrap(delegate) instanceof NativeWebSocketSession nativeSession) {
+            Session session = nativeSession.getNativeSession(Session.class);
+            return session != null ? session.getAsyncRemote() : null;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,324 @@
+package com.stringcode.websocket_app.service;
+
+import com.stringcode.websocket_app.dto.ChatMessageDto;
+import com.stringcode.websocket_app.model.ChatMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded ring buffer of the most recent messages of each active room, filled by
+ * the CHAT path and warmed from the {@link MessageStore} by {@link #warm}. Reads never
+ * query the store, so they are safe on the room stripes; callers warm a room off the
+ * stripes first. Appends are serialized per room; reads never take the room lock. It
+ * also tracks the highest stream seq of each room, which RESUME replays after.
+ * <p>
+ * The buffer keeps its own copy of each message and never changes a copy once placed, so
+ * readers on other threads always see a whole message. A message appended without an id
+ * gets it when the store reports it: its slot gets a new copy carrying the id, or, if the
+ * store was first, the id is kept until the message is appended.
+ */
+@Component
+public class RecentMessageCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(RecentMessageCache.class);
+
+    private final MessageStore messageStore;
+    private final int capacity;
+    private final long idleEvictionNanos;
+    private final Map<String, RoomBuffer> rooms = new ConcurrentHashMap<>();
+
+    public RecentMessageCache(
+            MessageStore messageStore,
+            @Value("${chat.history.recent-size:200}") int capacity,
+            @Value("${chat.history.idle-eviction-ms:600000}") long idleEvictionMs
+    ) {
+        this.messageStore = messageStore;
+        this.capacity = capacity;
+        this.idleEvictionNanos = TimeUnit.MILLISECONDS.toNanos(idleEvictionMs);
+        messageStore.addListener(this::onStored);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void append(ChatMessage message) {
+        rooms.computeIfAbsent(message.getRoomId(), k -> new RoomBuffer(capacity)).append(copyOf(message, message.getId()));
+    }
+
+    /**
+     * @return up to {@code limit} of the latest messages, oldest first
+     */
+    public List<ChatMessageDto> latest(String roomId, int limit) {
+        List<ChatMessage> snapshot = buffer(roomId).snapshot();
+        return toDtos(snapshot, Math.max(0, snapshot.size() - limit), snapshot.size());
+    }
+
+    /**
+     * @return up to {@code limit} messages older than {@code beforeId}, oldest first, or
+     * empty if the buffer cannot answer without a database query
+     */
+    public Optional<List<ChatMessageDto>> before(String roomId, long beforeId, int limit) {
+        RoomBuffer buffer = buffer(roomId);
+        List<ChatMessage> snapshot = buffer.snapshot();
+        for (int i = snapshot.size() - 1; i >= 0; i--) {
+            if (Objects.equals(snapshot.get(i).getId(), beforeId)) {
+                if (i < limit && !buffer.complete) {
+                    return Optional.empty();
+                }
+                return Optional.of(toDtos(snapshot, Math.max(0, i - limit), i));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return the highest stream seq of the room, or 0 if it has none yet
+     */
+    public long lastSeq(String roomId) {
+        return buffer(roomId).lastSeq;
+    }
+
+    /**
+     * @return the messages with a stream seq above {@code afterSeq}, oldest first, or
+     * empty if the buffer no longer reaches back that far
+     */
+    public Optional<List<ChatMessageDto>> after(String roomId, long afterSeq) {
+        RoomBuffer buffer = buffer(roomId);
+        List<ChatMessage> snapshot = buffer.snapshot();
+        int from = snapshot.size();
+        while (from > 0 && seqOf(snapshot.get(from - 1)) > afterSeq) {
+            from--;
+        }
+        // Covered when a buffered message at or before afterSeq bounds the run, or nothing was missed.
+        if (from == 0 && !buffer.complete && !snapshot.isEmpty() && seqOf(snapshot.get(0)) > afterSeq + 1) {
+            return Optional.empty();
+        }
+        return Optional.of(toDtos(snapshot, from, snapshot.size()));
+    }
+
+    // Messages are matched by seq, which is unique within a room; older rows without one keep no id here.
+    private void onStored(List<ChatMessage> stored) {
+        for (ChatMessage message : stored) {
+            RoomBuffer buffer = message.getSeq() != null ? rooms.get(message.getRoomId()) : null;
+            // A room without a buffer gets its ids from the store when it is warmed.
+            if (buffer != null) {
+                buffer.setId(message.getSeq(), message.getId());
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${chat.history.eviction-check-ms:60000}")
+    public void evictIdleRooms() {
+        long now = System.nanoTime();
+        rooms.entrySet().removeIf(e -> now - e.getValue().lastAccessNanos > idleEvictionNanos);
+    }
+
+    /**
+     * Loads the room's latest messages from the store unless it already has. Queries the
+     * store, so never call it on a room stripe.
+     *
+     * @return {@code false} if the store could not be read; the room stays cold and is tried again next time
+     */
+    public boolean warm(String roomId) {
+        RoomBuffer buffer = buffer(roomId);
+        if (buffer.warmed) {
+            return true;
+        }
+        try {
+            List<ChatMessage> newestFirst = messageStore.findLatest(roomId, capacity).stream()
+                    .map(RecentMessageCache::toEntity)
+                    .toList();
+            buffer.warm(newestFirst, newestFirst.size() < capacity);
+            return true;
+        } catch (Exception e) {
+            logger.warn("Failed to warm recent messages for room {}", roomId, e);
+            return false;
+        }
+    }
+
+    public boolean isWarm(String roomId) {
+        RoomBuffer buffer = rooms.get(roomId);
+        return buffer != null && buffer.warmed;
+    }
+
+    private RoomBuffer buffer(String roomId) {
+        RoomBuffer buffer = rooms.computeIfAbsent(roomId, k -> new RoomBuffer(capacity));
+        buffer.lastAccessNanos = System.nanoTime();
+        return buffer;
+    }
+
+    private static List<ChatMessageDto> toDtos(List<ChatMessage> messages, int from, int to) {
+        List<ChatMessageDto> dtos = new ArrayList<>(to - from);
+        for (ChatMessage m : messages.subList(from, to)) {
+            dtos.add(new ChatMessageDto(m.getId(), m.getType(), m.getContent(), m.getSenderName(), m.getRoomId(), m.getTimestamp(), m.getSeq()));
+        }
+        return dtos;
+    }
+
+    private static ChatMessage copyOf(ChatMessage m, Long id) {
+        return ChatMessage.builder()
+                .id(id)
+                .type(m.getType())
+                .content(m.getContent())
+                .senderName(m.getSenderName())
+                .roomId(m.getRoomId())
+                .timestamp(m.getTimestamp())
+                .seq(m.getSeq())
+                .build();
+    }
+
+    private static ChatMessage toEntity(ChatMessageDto dto) {
+        return ChatMessage.builder()
+                .id(dto.getId())
+                .type(dto.getType())
+                .content(dto.getContent())
+                .senderName(dto.getSenderName())
+                .roomId(dto.getRoomId())
+                .timestamp(dto.getTimestamp())
+                .seq(dto.getSeq())
+                .build();
+    }
+
+    private static long seqOf(ChatMessage message) {
+        return message.getSeq() != null ? message.getSeq() : 0;
+    }
+
+    private record Entry(long position, ChatMessage message) {
+    }
+
+    private static final class RoomBuffer {
+
+        private final AtomicReferenceArray<Entry> slots;
+        private final int capacity;
+
+        // Position of the next append; readers use it to locate the newest slot.
+        private volatile long written;
+        // Position of the oldest message placed by the last warm-up.
+        private long firstPosition;
+        // Highest stream seq appended or warmed; the room's next message takes the one after.
+        private volatile long lastSeq;
+        private volatile boolean warmed;
+        // True while the buffer holds the room's entire history.
+        private volatile boolean complete;
+        private volatile long lastAccessNanos = System.nanoTime();
+        // seq -> id reported by the store before the message reached this buffer, guarded by this.
+        private final Map<Long, Long> pendingIds = new HashMap<>();
+
+        RoomBuffer(int capacity) {
+            this.capacity = capacity;
+            this.slots = new AtomicReferenceArray<>(capacity);
+        }
+
+        synchronized void append(ChatMessage message) {
+            if (message.getId() == null && !pendingIds.isEmpty()) {
+                Long id = pendingIds.remove(seqOf(message));
+                if (id != null) {
+                    message = copyOf(message, id);
+                }
+            }
+            long position = written;
+            slots.set((int) (position % capacity), new Entry(position, message));
+            written = position + 1;
+            if (position + 1 - firstPosition > capacity) {
+                complete = false;
+            }
+            lastSeq = Math.max(lastSeq, seqOf(message));
+            lastAccessNanos = System.nanoTime();
+        }
+
+        // Places persisted history in front of anything appended live before the first read.
+        synchronized void warm(List<ChatMessage> persistedNewestFirst, boolean wholeHistory) {
+            if (warmed) {
+                return;
+            }
+            List<ChatMessage> live = snapshot();
+            // A live message may be stored already, with or without its id filled in here yet.
+            Set<Long> liveIds = new HashSet<>();
+            Set<Long> liveSeqs = new HashSet<>();
+            for (ChatMessage m : live) {
+                if (m.getId() != null) {
+                    liveIds.add(m.getId());
+                }
+                if (m.getSeq() != null) {
+                    liveSeqs.add(m.getSeq());
+                }
+            }
+
+            List<ChatMessage> merged = new ArrayList<>(persistedNewestFirst.size() + live.size());
+            for (int i = persistedNewestFirst.size() - 1; i >= 0; i--) {
+                ChatMessage m = persistedNewestFirst.get(i);
+                if (!liveIds.contains(m.getId()) && (m.getSeq() == null || !liveSeqs.contains(m.getSeq()))) {
+                    merged.add(m);
+                }
+            }
+            merged.addAll(live);
+
+            // Continue past every position a concurrent reader could still hold, so no stale slot matches.
+            int from = Math.max(0, merged.size() - capacity);
+            firstPosition = written + capacity;
+            long position = firstPosition;
+            for (ChatMessage m : merged.subList(from, merged.size())) {
+                slots.set((int) (position % capacity), new Entry(position, m));
+                position++;
+            }
+            written = position;
+            for (ChatMessage m : merged) {
+                lastSeq = Math.max(lastSeq, seqOf(m));
+            }
+            complete = wholeHistory && from == 0;
+            warmed = true;
+        }
+
+        // Newest first, as stored messages are usually among the latest; stops once seqs fall below.
+        // A seq not buffered yet is about to be appended by its stripe, which holds on to it.
+        synchronized void setId(long seq, Long id) {
+            long end = written;
+            for (long position = end - 1; position >= Math.max(0, end - capacity); position--) {
+                int slot = (int) (position % capacity);
+                Entry entry = slots.get(slot);
+                if (entry == null || entry.position() != position) {
+                    continue;
+                }
+                long entrySeq = seqOf(entry.message());
+                if (entrySeq == seq) {
+                    if (entry.message().getId() == null) {
+                        slots.set(slot, new Entry(position, copyOf(entry.message(), id)));
+                    }
+                    return;
+                }
+                if (entrySeq != 0 && entrySeq < seq) {
+                    break;
+                }
+            }
+            if (seq > lastSeq) {
+                if (pendingIds.size() >= capacity) {
+                    pendingIds.clear();
+                }
+                pendingIds.put(seq, id);
+            }
+        }
+
+        List<ChatMessage> snapshot() {
+            long end = written;
+            long start = Math.max(0, end - capacity);
+            List<ChatMessage> result = new ArrayList<>((int) (end - start));
+            for (long position = start; position < end; position++) {
+                Entry entry = slots.get((int) (position % capacity));
+                // Skip slots a concurrent append has already overwritten.
+                if (entry != null && entry.position() == position) {
+                    result.add(entry.message());
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.stringcode.websocket_app.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.*;
+
+/**
+ * Runs room work on a fixed set of single-threaded stripes, picked by room id. All
+ * tasks of a room run one at a time in submission order, so every recipient, the
+ * recent-message cache and the database see a room's messages in the same order,
+ * while different rooms spread over all stripes. A task for a full stripe is shed
+ * rather than waited for, so a slow room never blocks the socket threads that submit
+ * to it; the caller decides what a shed task means.
+ */
+@Component
+// Shut down before the message store, so messages still queued here are persisted.
+@DependsOn("messageStore")
+public class RoomExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(RoomExecutor.class);
+
+    private final ThreadPoolExecutor[] stripes;
+    private final Counter shedTasks;
+
+    public RoomExecutor(
+            MeterRegistry meterRegistry,
+            @Value("${chat.rooms.stripes:0}") int stripeCount,
+            @Value("${chat.rooms.stripe-queue-capacity:10000}") int queueCapacity
+    ) {
+        int count = stripeCount > 0 ? stripeCount : Runtime.getRuntime().availableProcessors();
+        this.stripes = new ThreadPoolExecutor[count];
+        for (int i = 0; i < count; i++) {
+            String name = "room-stripe-" + i;
+            stripes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(queueCapacity),
+                    r -> {
+                        Thread thread = new Thread(r, name);
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    new ThreadPoolExecutor.AbortPolicy());
+        }
+        this.shedTasks = Counter.builder("chat.rooms.shed.tasks")
+                .description("Room tasks refused because their stripe was full")
+                .register(meterRegistry);
+        Gauge.builder("chat.rooms.queued.tasks", this, RoomExecutor::queuedTasks)
+                .description("Room tasks waiting for their stripe")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return {@code false} if the room's stripe is full or shut down; the task will not run
+     */
+    public boolean execute(String roomId, Runnable task) {
+        try {
+            stripes[Math.floorMod(roomId.hashCode(), stripes.length)].execute(() -> {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    logger.error("Room task failed for room {}", roomId, e);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            shedTasks.increment();
+            logger.debug("Shed a task for room {}", roomId);
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        for (ThreadPoolExecutor stripe : stripes) {
+            stripe.shutdown();
+        }
+        for (ThreadPoolExecutor stripe : stripes) {
+            if (!stripe.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warn("Room stripe did not drain within 10s, {} tasks dropped", stripe.getQueue().size());
+            }
+        }
+    }
+
+    private long queuedTasks() {
+        long queued = 0;
+        for (ThreadPoolExecutor stripe : stripes) {
+            queued += stripe.getQueue().size();
+        }
+        return queued;
+    }
+}
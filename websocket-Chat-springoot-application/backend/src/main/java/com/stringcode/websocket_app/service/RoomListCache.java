@@ -0,0 +1,67 @@
+package com.stringcode.websocket_app.service;
+
+import com.stringcode.websocket_app.dto.RoomDto;
+import com.stringcode.websocket_app.repository.RoomRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory copy of the room list, newest first, with an ETag derived from its
+ * content. Rooms created on this node invalidate it immediately; rooms created on
+ * another node show up once the entry expires.
+ */
+@Component
+public class RoomListCache {
+
+    private final RoomRepository roomRepository;
+    private final long ttlNanos;
+
+    // Bumped on every invalidation, so a load that raced with one is not kept.
+    private final AtomicLong generation = new AtomicLong();
+    private volatile Snapshot snapshot;
+
+    public RoomListCache(
+            RoomRepository roomRepository,
+            @Value("${chat.rooms.list-cache-ttl-ms:5000}") long ttlMs
+    ) {
+        this.roomRepository = roomRepository;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+    }
+
+    public record Snapshot(List<RoomDto> rooms, String etag, long loadedAtNanos) {
+    }
+
+    public Snapshot get() {
+        Snapshot current = snapshot;
+        if (current != null && System.nanoTime() - current.loadedAtNanos() < ttlNanos) {
+            return current;
+        }
+        long loadedGeneration = generation.get();
+        List<RoomDto> rooms = List.copyOf(roomRepository.findAllSummaries());
+        Snapshot loaded = new Snapshot(rooms, etag(rooms), System.nanoTime());
+        synchronized (this) {
+            if (generation.get() == loadedGeneration) {
+                snapshot = loaded;
+            }
+        }
+        return loaded;
+    }
+
+    public synchronized void invalidate() {
+        generation.incrementAndGet();
+        snapshot = null;
+    }
+
+    // Content-derived, so every node serving the same rooms hands out the same tag.
+    private static String etag(List<RoomDto> rooms) {
+        long hash = 1125899906842597L;
+        for (RoomDto room : rooms) {
+            hash = 31 * hash + room.hashCode();
+        }
+        return "\"" + Long.toHexString(hash) + "-" + rooms.size() + "\"";
+    }
+}
@@ -0,0 +1,172 @@
+package com.stringcode.websocket_app.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands out each room's stream seq from blocks reserved in {@code chat_room_seq}, so it
+ * keeps increasing across restarts and across nodes sharing the database.
+ * <p>
+ * {@link #reserve} takes a new block from the database once less than half of the
+ * current one is left, and runs off the room's stripe; {@link #next} only reads memory.
+ * A room without a row starts after the highest seq stored in {@code chat_messages}.
+ * Seqs of a block that is not used up, because the node stops or another node went
+ * past them, are skipped.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.store.type", havingValue = "jpa", matchIfMissing = true)
+public class RoomSeqCounter {
+
+    /**
+     * Takes {@code size} seqs of a room for this node.
+     */
+    @FunctionalInterface
+    interface BlockSource {
+
+        /**
+         * @return the highest seq of the block
+         */
+        long reserve(String roomId, int size) throws SQLException;
+    }
+
+    private final BlockSource blocks;
+    private final int blockSize;
+    private final Map<String, Blocks> rooms = new ConcurrentHashMap<>();
+
+    @Autowired
+    public RoomSeqCounter(DataSource dataSource, @Value("${chat.store.seq-block-size:100}") int blockSize) {
+        this(new DatabaseBlocks(dataSource), blockSize);
+    }
+
+    RoomSeqCounter(BlockSource blocks, int blockSize) {
+        this.blocks = blocks;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Makes sure the room has seqs for {@link #next}, reading the database if it runs low.
+     * Called before a message is handed to the room's stripe, never on it.
+     */
+    public void reserve(String roomId) throws SQLException {
+        Blocks room = rooms.computeIfAbsent(roomId, id -> new Blocks());
+        // One reservation per room at a time; next keeps taking seqs meanwhile.
+        synchronized (room.reserving) {
+            if (room.runningLow(blockSize)) {
+                long last = blocks.reserve(roomId, blockSize);
+                room.add(last - blockSize + 1, last);
+            }
+        }
+    }
+
+    /**
+     * @throws IllegalStateException if no seq of the room is reserved
+     */
+    public long next(String roomId) {
+        Blocks room = rooms.get(roomId);
+        if (room == null) {
+            throw new IllegalStateException("No seqs reserved for room " + roomId);
+        }
+        return room.next(roomId);
+    }
+
+    /**
+     * Skips the reserved seqs up to one another node handed out, so this node's next one follows it.
+     */
+    public void seen(String roomId, long seq) {
+        Blocks room = rooms.get(roomId);
+        if (room != null) {
+            room.skipTo(seq + 1);
+        }
+    }
+
+    // The block seqs are taken from, then the one reserved to follow it; a block is empty once next passes end.
+    private static final class Blocks {
+
+        final Object reserving = new Object();
+        private long next = 1;
+        private long end;
+        private long spareNext = 1;
+        private long spareEnd;
+
+        synchronized boolean runningLow(int blockSize) {
+            return spareNext > spareEnd && end - next + 1 < blockSize / 2 + 1;
+        }
+
+        synchronized void add(long from, long to) {
+            if (next > end) {
+                next = Math.max(next, from);
+                end = to;
+            } else {
+                spareNext = Math.max(spareNext, from);
+                spareEnd = to;
+            }
+        }
+
+        synchronized long next(String roomId) {
+            if (next > end) {
+                next = spareNext;
+                end = spareEnd;
+                spareEnd = spareNext - 1;
+            }
+            if (next > end) {
+                throw new IllegalStateException("No seqs reserved for room " + roomId);
+            }
+            return next++;
+        }
+
+        synchronized void skipTo(long seq) {
+            next = Math.max(next, seq);
+            spareNext = Math.max(spareNext, seq);
+        }
+    }
+
+    private record DatabaseBlocks(DataSource dataSource) implements BlockSource {
+
+        @Override
+        public long reserve(String roomId, int size) throws SQLException {
+            try (Connection connection = dataSource.getConnection()) {
+                Long last = increment(connection, roomId, size);
+                if (last == null) {
+                    seed(connection, roomId);
+                    last = increment(connection, roomId, size);
+                }
+                if (last == null) {
+                    throw new SQLException("No chat_room_seq row for room " + roomId);
+                }
+                return last;
+            }
+        }
+
+        private static Long increment(Connection connection, String roomId, int size) throws SQLException {
+            try (PreparedStatement update = connection.prepareStatement(
+                    "update chat_room_seq set seq = seq + ? where room_id = ? returning seq")) {
+                update.setInt(1, size);
+                update.setString(2, roomId);
+                try (ResultSet rs = update.executeQuery()) {
+                    return rs.next() ? rs.getLong(1) : null;
+                }
+            }
+        }
+
+        // Another node seeding the same room first leaves its row in place.
+        private static void seed(Connection connection, String roomId) throws SQLException {
+            try (PreparedStatement insert = connection.prepareStatement("insert into chat_room_seq (room_id, seq) " +
+                    "select ?, coalesce(max(seq), 0) from " + ChatMessagePartitionManager.TABLE + " where room_id = ? " +
+                    "on conflict (room_id) do nothing")) {
+                insert.setString(1, roomId);
+                insert.setString(2, roomId);
+                insert.executeUpdate();
+            }
+        }
+    }
+}
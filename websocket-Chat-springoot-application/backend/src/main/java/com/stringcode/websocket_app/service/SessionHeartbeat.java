@@ -0,0 +1,140 @@
+package com.stringcode.websocket_app.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds half-open connections. A session that has sent nothing for {@code interval-ms}
+ * gets a WebSocket ping, which browsers answer with a pong on their own; if nothing
+ * arrives within {@code timeout-ms} after that, it is closed and unregistered.
+ * <p>
+ * Sessions sit in a hashed timer wheel with one slot per tick, in the slot of the tick
+ * at which they next need a look. Receiving a frame only stamps the session; a tick
+ * visits just the sessions due in its slot and puts the ones that were active back at
+ * their new deadline, so the cost per tick follows the number of sessions due, not the
+ * number connected. Sessions closed in the meantime are dropped when their slot comes up.
+ */
+@Component
+public class SessionHeartbeat {
+
+    private final OutboundQueueManager outboundQueueManager;
+    private final long intervalNanos;
+    private final long timeoutNanos;
+    private final long tickNanos;
+    private final Queue<Tracked>[] wheel;
+    // Advanced by the scheduler thread only.
+    private volatile long currentTick;
+    private final AtomicInteger trackedSessions = new AtomicInteger();
+    private final Counter pings;
+    private final Counter reapedSessions;
+
+    private static final class Tracked {
+
+        final QueuedWebSocketSession session;
+        // System.nanoTime() of the unanswered ping, 0 if none is outstanding.
+        long pingSentNanos;
+
+        Tracked(QueuedWebSocketSession session) {
+            this.session = session;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public SessionHeartbeat(
+            OutboundQueueManager outboundQueueManager,
+            MeterRegistry meterRegistry,
+            @Value("${chat.heartbeat.interval-ms:25000}") long intervalMs,
+            @Value("${chat.heartbeat.timeout-ms:10000}") long timeoutMs,
+            @Value("${chat.heartbeat.tick-ms:1000}") long tickMs
+    ) {
+        this.outboundQueueManager = outboundQueueManager;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMs);
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+        // Long enough that no deadline wraps around onto a slot before its tick.
+        int slots = (int) ((Math.max(intervalNanos, timeoutNanos) + tickNanos - 1) / tickNanos) + 2;
+        this.wheel = new Queue[slots];
+        for (int i = 0; i < slots; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.pings = Counter.builder("chat.heartbeat.pings")
+                .description("Pings sent to sessions that went quiet")
+                .register(meterRegistry);
+        this.reapedSessions = Counter.builder("chat.heartbeat.reaped.sessions")
+                .description("Sessions closed for not answering a ping")
+                .register(meterRegistry);
+        Gauge.builder("chat.heartbeat.tracked.sessions", trackedSessions, AtomicInteger::get)
+                .description("Sessions in the heartbeat timer wheel")
+                .register(meterRegistry);
+    }
+
+    public void track(QueuedWebSocketSession session) {
+        trackedSessions.incrementAndGet();
+        schedule(new Tracked(session), intervalNanos);
+    }
+
+    /**
+     * Records that a frame arrived on the session; call with the queued decorator.
+     */
+    public void markActive(WebSocketSession session) {
+        if (session instanceof QueuedWebSocketSession queued) {
+            queued.markActive();
+        }
+    }
+
+    @Scheduled(fixedRateString = "${chat.heartbeat.tick-ms:1000}")
+    public void tick() {
+        long tick = currentTick + 1;
+        currentTick = tick;
+        Queue<Tracked> slot = wheel[(int) (tick % wheel.length)];
+        long now = System.nanoTime();
+        List<QueuedWebSocketSession> unresponsive = new ArrayList<>();
+        for (Tracked tracked = slot.poll(); tracked != null; tracked = slot.poll()) {
+            QueuedWebSocketSession session = tracked.session;
+            if (session.isEvicted() || !session.isOpen()) {
+                trackedSessions.decrementAndGet();
+                continue;
+            }
+            long lastActive = session.getLastActiveNanos();
+            if (tracked.pingSentNanos != 0 && lastActive - tracked.pingSentNanos >= 0) {
+                tracked.pingSentNanos = 0;
+            }
+            long idle = now - lastActive;
+            if (idle < intervalNanos) {
+                schedule(tracked, intervalNanos - idle);
+            } else if (tracked.pingSentNanos == 0) {
+                tracked.pingSentNanos = now;
+                session.sendMessage(new PingMessage());
+                pings.increment();
+                schedule(tracked, timeoutNanos);
+            } else if (now - tracked.pingSentNanos < timeoutNanos) {
+                schedule(tracked, timeoutNanos - (now - tracked.pingSentNanos));
+            } else {
+                trackedSessions.decrementAndGet();
+                unresponsive.add(session);
+            }
+        }
+        if (!unresponsive.isEmpty()) {
+            reapedSessions.increment(outboundQueueManager.closeUnresponsive(unresponsive));
+        }
+    }
+
+    // Into the slot of the first tick at or after the delay, at least the next one.
+    private void schedule(Tracked tracked, long delayNanos) {
+        long ticks = Math.min(Math.max(1, (delayNanos + tickNanos - 1) / tickNanos), wheel.length - 1);
+        wheel[(int) ((currentTick + ticks) % wheel.length)].add(tracked);
+    }
+}
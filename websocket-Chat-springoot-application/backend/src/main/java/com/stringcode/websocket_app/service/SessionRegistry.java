@@ -0,0 +1,246 @@
+package com.stringcode.websocket_app.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Live index of connected sessions, keyed by session id, username and room.
+ * Mutations are serialized on a single lock so the indexes never disagree;
+ * reads used on the broadcast path are lock-free views over concurrent sets.
+ * <p>
+ * Rooms are also counted per size bucket as members come and go, so the room-size
+ * distribution is exported as gauges without walking the rooms on each scrape.
+ */
+@Component
+public class SessionRegistry implements MeterBinder {
+
+    // Upper bound (inclusive) of each room-size bucket; the last bucket is open-ended.
+    private static final int[] ROOM_SIZE_BOUNDS = {1, 5, 20, 100, 500};
+
+    private final Object lock = new Object();
+
+    // sessionId -> member
+    private final Map<String, Member> sessions = new ConcurrentHashMap<>();
+
+    // username -> live sessions of that user
+    private final Map<String, Set<WebSocketSession>> userSessions = new ConcurrentHashMap<>();
+
+    // username -> room
+    private final Map<String, String> userToRoom = new ConcurrentHashMap<>();
+
+    // roomId -> usernames / sessions currently in the room
+    private final Map<String, Set<String>> roomToUsers = new ConcurrentHashMap<>();
+    private final Map<String, Set<WebSocketSession>> roomToSessions = new ConcurrentHashMap<>();
+
+    private final AtomicLongArray roomsBySize = new AtomicLongArray(ROOM_SIZE_BOUNDS.length + 1);
+
+    public record Member(WebSocketSession session, String username) {
+    }
+
+    /**
+     * Result of removing a session. {@code roomId} is only set when the user's
+     * last session closed and the user therefore left that room.
+     */
+    public record Removal(String username, String roomId, boolean lastSession) {
+    }
+
+    /**
+     * @return how many sessions the user has after registering this one, or 0 if the
+     * session was already registered under the same username
+     */
+    public int register(WebSocketSession session, String username) {
+        synchronized (lock) {
+            Member previous = sessions.get(session.getId());
+            if (previous != null) {
+                if (previous.username().equals(username)) {
+                    return 0;
+                }
+                detach(previous);
+            }
+            sessions.put(session.getId(), new Member(session, username));
+            Set<WebSocketSession> ownSessions = userSessions.computeIfAbsent(username, k -> ConcurrentHashMap.newKeySet());
+            ownSessions.add(session);
+            String roomId = userToRoom.get(username);
+            if (roomId != null) {
+                roomToSessions.computeIfAbsent(roomId, k -> ConcurrentHashMap.newKeySet()).add(session);
+            }
+            return ownSessions.size();
+        }
+    }
+
+    public Removal unregister(WebSocketSession session) {
+        synchronized (lock) {
+            Member member = sessions.get(session.getId());
+            return member != null ? detach(member) : null;
+        }
+    }
+
+    /**
+     * Moves every session of {@code username} into {@code roomId}.
+     *
+     * @return the room the user was in before, or {@code null}
+     */
+    public String join(String username, String roomId) {
+        synchronized (lock) {
+            String oldRoom = userToRoom.put(username, roomId);
+            if (oldRoom != null && !oldRoom.equals(roomId)) {
+                removeFromRoom(username, oldRoom);
+            }
+            Set<String> users = roomToUsers.computeIfAbsent(roomId, k -> ConcurrentHashMap.newKeySet());
+            if (users.add(username)) {
+                roomResized(users.size() - 1, users.size());
+            }
+            Set<WebSocketSession> roomSessions = roomToSessions.computeIfAbsent(roomId, k -> ConcurrentHashMap.newKeySet());
+            roomSessions.addAll(userSessions.getOrDefault(username, Collections.emptySet()));
+            return oldRoom;
+        }
+    }
+
+    /**
+     * @return {@code true} if the user was in {@code roomId}
+     */
+    public boolean leave(String username, String roomId) {
+        synchronized (lock) {
+            if (!userToRoom.remove(username, roomId)) {
+                return false;
+            }
+            removeFromRoom(username, roomId);
+            return true;
+        }
+    }
+
+    public String getUsername(WebSocketSession session) {
+        Member member = sessions.get(session.getId());
+        return member != null ? member.username() : null;
+    }
+
+    public String getRoom(String username) {
+        return userToRoom.get(username);
+    }
+
+    public Collection<WebSocketSession> getRoomSessions(String roomId) {
+        return roomToSessions.getOrDefault(roomId, Collections.emptySet());
+    }
+
+    public Set<String> getRoomUsers(String roomId) {
+        return Collections.unmodifiableSet(roomToUsers.getOrDefault(roomId, Collections.emptySet()));
+    }
+
+    public Collection<Member> getMembers() {
+        return Collections.unmodifiableCollection(sessions.values());
+    }
+
+    public Set<String> getOnlineUsernames() {
+        return Collections.unmodifiableSet(userSessions.keySet());
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    public int getRoomCount() {
+        return roomToSessions.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("chat.sessions.active", sessions, Map::size)
+                .description("Open WebSocket sessions on this node")
+                .register(registry);
+        Gauge.builder("chat.users.online", userSessions, Map::size)
+                .description("Users with at least one open session on this node")
+                .register(registry);
+        Gauge.builder("chat.rooms.active", roomToUsers, Map::size)
+                .description("Rooms with at least one member on this node")
+                .register(registry);
+        for (int i = 0; i <= ROOM_SIZE_BOUNDS.length; i++) {
+            int bucket = i;
+            Gauge.builder("chat.rooms.by.size", roomsBySize, counts -> counts.get(bucket))
+                    .description("Active rooms by member count")
+                    .tag("size", sizeLabel(bucket))
+                    .register(registry);
+        }
+    }
+
+    private Removal detach(Member member) {
+        WebSocketSession session = member.session();
+        String username = member.username();
+        sessions.remove(session.getId());
+
+        String roomId = userToRoom.get(username);
+        if (roomId != null) {
+            removeSession(roomToSessions, roomId, session);
+        }
+
+        boolean lastSession = removeSession(userSessions, username, session);
+        if (lastSession && roomId != null) {
+            userToRoom.remove(username);
+            removeFromRoom(username, roomId);
+            return new Removal(username, roomId, true);
+        }
+        return new Removal(username, null, lastSession);
+    }
+
+    private void removeFromRoom(String username, String roomId) {
+        Set<String> users = roomToUsers.get(roomId);
+        if (users != null) {
+            if (users.remove(username)) {
+                roomResized(users.size() + 1, users.size());
+            }
+            if (users.isEmpty()) {
+                roomToUsers.remove(roomId);
+            }
+        }
+        for (WebSocketSession session : userSessions.getOrDefault(username, Collections.emptySet())) {
+            removeSession(roomToSessions, roomId, session);
+        }
+    }
+
+    private void roomResized(int before, int after) {
+        if (before > 0) {
+            roomsBySize.decrementAndGet(sizeBucket(before));
+        }
+        if (after > 0) {
+            roomsBySize.incrementAndGet(sizeBucket(after));
+        }
+    }
+
+    private static int sizeBucket(int size) {
+        for (int i = 0; i < ROOM_SIZE_BOUNDS.length; i++) {
+            if (size <= ROOM_SIZE_BOUNDS[i]) {
+                return i;
+            }
+        }
+        return ROOM_SIZE_BOUNDS.length;
+    }
+
+    private static String sizeLabel(int bucket) {
+        if (bucket == ROOM_SIZE_BOUNDS.length) {
+            return (ROOM_SIZE_BOUNDS[bucket - 1] + 1) + "+";
+        }
+        int from = bucket == 0 ? 1 : ROOM_SIZE_BOUNDS[bucket - 1] + 1;
+        int to = ROOM_SIZE_BOUNDS[bucket];
+        return from == to ? String.valueOf(from) : from + "-" + to;
+    }
+
+    // Removes the session from the keyed set and drops the key once empty.
+    private static boolean removeSession(Map<String, Set<WebSocketSession>> index, String key, WebSocketSession session) {
+        Set<WebSocketSession> set = index.get(key);
+        if (set == null) {
+            return false;
+        }
+        set.remove(session);
+        if (set.isEmpty()) {
+            index.remove(key);
+            return true;
+        }
+        return false;
+    }
+}
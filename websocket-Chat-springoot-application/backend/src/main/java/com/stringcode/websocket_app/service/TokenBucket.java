@@ -0,0 +1,42 @@
+package com.stringcode.websocket_app.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket. Instead of a token count it keeps the time at which the bucket
+ * will be full again (the generic cell rate algorithm), so taking a token is one
+ * compare-and-set and refilling needs no timer.
+ */
+final class TokenBucket {
+
+    private final long nanosPerToken;
+    // How far ahead of now the full-again time may run: the burst minus the token being taken.
+    private final long toleranceNanos;
+    private final AtomicLong fullAt;
+
+    TokenBucket(double perSecond, int burst) {
+        if (perSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate must be positive and burst at least 1");
+        }
+        this.nanosPerToken = Math.max(1, Math.round(1_000_000_000 / perSecond));
+        this.toleranceNanos = nanosPerToken * (burst - 1);
+        this.fullAt = new AtomicLong(System.nanoTime());
+    }
+
+    boolean tryAcquire() {
+        return tryAcquire(System.nanoTime());
+    }
+
+    boolean tryAcquire(long nowNanos) {
+        while (true) {
+            long current = fullAt.get();
+            long base = current - nowNanos > 0 ? current : nowNanos;
+            if (base - nowNanos > toleranceNanos) {
+                return false;
+            }
+            if (fullAt.compareAndSet(current, base + nanosPerToken)) {
+                return true;
+            }
+        }
+    }
+}
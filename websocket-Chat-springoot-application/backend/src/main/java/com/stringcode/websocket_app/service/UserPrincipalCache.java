@@ -0,0 +1,49 @@
+package com.stringcode.websocket_app.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.stringcode.websocket_app.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Short-lived cache of user principals for token-authenticated requests, so a
+ * polling client does not cost a user query per request. Password logins keep
+ * going through the repository. Unknown users are not cached.
+ */
+@Component
+public class UserPrincipalCache {
+
+    private final UserRepository userRepository;
+    private final Cache<String, UserDetails> principals;
+
+    public UserPrincipalCache(
+            UserRepository userRepository,
+            MeterRegistry meterRegistry,
+            @Value("${auth.user-cache.max-size:10000}") long maxSize,
+            @Value("${auth.user-cache.ttl-ms:60000}") long ttlMs
+    ) {
+        this.userRepository = userRepository;
+        this.principals = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, principals, "user.principals");
+    }
+
+    public UserDetails load(String username) {
+        return principals.get(username, name -> userRepository.findByUsername(name)
+                .orElseThrow(() -> new UsernameNotFoundException("User not found")));
+    }
+
+    public void invalidate(String username) {
+        principals.invalidate(username);
+    }
+}
@@ -0,0 +1,54 @@
+package com.stringcode.websocket_app.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.stringcode.websocket_app.dto.WebSocketMessageDto;
+import com.stringcode.websocket_app.enums.WireProtocol;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Converts {@link WebSocketMessageDto} to and from frames of each {@link WireProtocol}.
+ * CBOR frames are binary and carry timestamps as numeric arrays instead of ISO strings.
+ */
+@Component
+public class WireCodec {
+
+    private final ObjectMapper jsonMapper;
+    private final ObjectMapper cborMapper;
+
+    public WireCodec(ObjectMapper objectMapper) {
+        this.jsonMapper = objectMapper;
+        this.cborMapper = CBORMapper.builder()
+                .addModule(new JavaTimeModule())
+                .build();
+    }
+
+    public WebSocketMessage<?> encode(WebSocketMessageDto message, WireProtocol protocol) throws IOException {
+        return switch (protocol) {
+            case JSON -> new TextMessage(jsonMapper.writeValueAsBytes(message));
+            case CBOR -> new BinaryMessage(cborMapper.writeValueAsBytes(message));
+        };
+    }
+
+    public WebSocketMessageDto decode(TextMessage frame) throws IOException {
+        return jsonMapper.readValue(frame.getPayload(), WebSocketMessageDto.class);
+    }
+
+    public WebSocketMessageDto decode(BinaryMessage frame) throws IOException {
+        ByteBuffer payload = frame.getPayload();
+        if (payload.hasArray()) {
+            return cborMapper.readValue(payload.array(), payload.arrayOffset() + payload.position(),
+                    payload.remaining(), WebSocketMessageDto.class);
+        }
+        byte[] bytes = new byte[payload.remaining()];
+        payload.duplicate().get(bytes);
+        return cborMapper.readValue(bytes, WebSocketMessageDto.class);
+    }
+}
@@ -0,0 +1,25 @@
+package com.stringcode.websocket_app.service.cluster;
+
+import java.util.function.Consumer;
+
+/**
+ * Publish/subscribe channel between application nodes. Events published by a node
+ * are delivered to every other node subscribed to the topic, never back to the
+ * publisher, and in publish order per publishing node.
+ */
+public interface ClusterBus {
+
+    String PRESENCE_TOPIC = "presence";
+
+    static String roomTopic(String roomId) {
+        return "room:" + roomId;
+    }
+
+    String getNodeId();
+
+    void publish(String topic, ClusterEvent event);
+
+    void subscribe(String topic, Consumer<ClusterEvent> handler);
+
+    void unsubscribe(String topic);
+}
@@ -0,0 +1,38 @@
+package com.stringcode.websocket_app.service.cluster;
+
+import com.stringcode.websocket_app.dto.WebSocketMessageDto;
+
+import java.util.List;
+
+public sealed interface ClusterEvent {
+
+    /**
+     * A message broadcast to a room, for delivery to the room's sessions on other nodes.
+     */
+    record RoomFrame(String roomId, WebSocketMessageDto message) implements ClusterEvent {
+    }
+
+    /**
+     * The local state of some users on {@code nodeId}. An offline state removes the user from that node.
+     */
+    record PresenceStates(String nodeId, List<UserState> states) implements ClusterEvent {
+    }
+
+    /**
+     * Sent by a starting node; every other node answers with its full {@link PresenceStates}.
+     */
+    record PresenceSync(String nodeId) implements ClusterEvent {
+    }
+
+    record NodeLeft(String nodeId) implements ClusterEvent {
+    }
+
+    /**
+     * Sent periodically by every node; a node not heard from within the TTL is treated as gone.
+     */
+    record NodeHeartbeat(String nodeId) implements ClusterEvent {
+    }
+
+    record UserState(String username, boolean online, String roomId) {
+    }
+}
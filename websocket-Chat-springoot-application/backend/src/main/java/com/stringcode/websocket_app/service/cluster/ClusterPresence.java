@@ -0,0 +1,209 @@
+package com.stringcode.websocket_app.service.cluster;
+
+import com.stringcode.websocket_app.service.SessionRegistry;
+import com.stringcode.websocket_app.service.cluster.ClusterEvent.*;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Cluster-wide view of who is online and in which room: the local {@link SessionRegistry}
+ * merged with the user states other nodes announce. A user is online while any node
+ * has a session for them, and in a room while any node has them there.
+ * <p>
+ * Nodes send heartbeats; the users of a node that is not heard from within the TTL are
+ * dropped, so a node that dies without saying {@link NodeLeft} does not leave ghosts.
+ * A dropped node that is heard from again is asked to announce its state anew.
+ */
+@Component
+public class ClusterPresence {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClusterPresence.class);
+
+    private final ClusterBus clusterBus;
+    private final SessionRegistry sessionRegistry;
+
+    // Remote state, guarded by lock. username -> nodeId -> state on that node (online only)
+    private final Object lock = new Object();
+    private final Map<String, Map<String, UserState>> remoteUsers = new ConcurrentHashMap<>();
+    // roomId -> username -> number of remote nodes that have the user in the room
+    private final Map<String, Map<String, Integer>> remoteRooms = new ConcurrentHashMap<>();
+
+    // nodeId -> System.nanoTime() of the last event heard from the node
+    private final Map<String, Long> lastSeen = new ConcurrentHashMap<>();
+    // Nodes dropped for silence; one heard from again is asked to resync.
+    private final Set<String> expiredNodes = ConcurrentHashMap.newKeySet();
+
+    @Value("${chat.cluster.node-ttl-ms:15000}")
+    private long nodeTtlMs;
+
+    private volatile BiConsumer<String, Set<String>> listener = (username, rooms) -> {
+    };
+
+    public ClusterPresence(ClusterBus clusterBus, SessionRegistry sessionRegistry) {
+        this.clusterBus = clusterBus;
+        this.sessionRegistry = sessionRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        clusterBus.subscribe(ClusterBus.PRESENCE_TOPIC, this::onEvent);
+        clusterBus.publish(ClusterBus.PRESENCE_TOPIC, new PresenceSync(clusterBus.getNodeId()));
+    }
+
+    @PreDestroy
+    public void stop() {
+        clusterBus.publish(ClusterBus.PRESENCE_TOPIC, new NodeLeft(clusterBus.getNodeId()));
+        clusterBus.unsubscribe(ClusterBus.PRESENCE_TOPIC);
+    }
+
+    @Scheduled(fixedDelayString = "${chat.cluster.heartbeat-ms:5000}")
+    public void heartbeat() {
+        clusterBus.publish(ClusterBus.PRESENCE_TOPIC, new NodeHeartbeat(clusterBus.getNodeId()));
+        long now = System.nanoTime();
+        long ttlNanos = TimeUnit.MILLISECONDS.toNanos(nodeTtlMs);
+        for (Map.Entry<String, Long> entry : lastSeen.entrySet()) {
+            if (now - entry.getValue() > ttlNanos && lastSeen.remove(entry.getKey(), entry.getValue())) {
+                logger.warn("Cluster node {} not heard from in {} ms, dropping its users", entry.getKey(), nodeTtlMs);
+                expiredNodes.add(entry.getKey());
+                removeNode(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Registers the callback told about remote changes: the user and the rooms they left or entered.
+     */
+    public void setListener(BiConsumer<String, Set<String>> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Tells the other nodes the current local state of {@code usernames}.
+     */
+    public void announce(Collection<String> usernames) {
+        if (usernames.isEmpty()) return;
+        List<UserState> states = new ArrayList<>(usernames.size());
+        for (String username : usernames) {
+            states.add(localState(username));
+        }
+        clusterBus.publish(ClusterBus.PRESENCE_TOPIC, new PresenceStates(clusterBus.getNodeId(), states));
+    }
+
+    public boolean isOnline(String username) {
+        return sessionRegistry.getOnlineUsernames().contains(username) || remoteUsers.containsKey(username);
+    }
+
+    /**
+     * @return the user's local room if they are connected here, otherwise a room some other node has them in
+     */
+    public String getRoom(String username) {
+        if (sessionRegistry.getOnlineUsernames().contains(username)) {
+            return sessionRegistry.getRoom(username);
+        }
+        Map<String, UserState> byNode = remoteUsers.getOrDefault(username, Map.of());
+        for (UserState state : byNode.values()) {
+            if (state.roomId() != null) {
+                return state.roomId();
+            }
+        }
+        return null;
+    }
+
+    public Set<String> getRoomUsers(String roomId) {
+        Map<String, Integer> remote = remoteRooms.get(roomId);
+        if (remote == null || remote.isEmpty()) {
+            return sessionRegistry.getRoomUsers(roomId);
+        }
+        Set<String> users = new HashSet<>(sessionRegistry.getRoomUsers(roomId));
+        users.addAll(remote.keySet());
+        return users;
+    }
+
+    private void onEvent(ClusterEvent event) {
+        if (event instanceof NodeLeft left) {
+            lastSeen.remove(left.nodeId());
+            expiredNodes.remove(left.nodeId());
+            removeNode(left.nodeId());
+            return;
+        }
+        String nodeId = nodeIdOf(event);
+        if (nodeId != null) {
+            lastSeen.put(nodeId, System.nanoTime());
+            if (expiredNodes.remove(nodeId) && !(event instanceof PresenceSync)) {
+                clusterBus.publish(ClusterBus.PRESENCE_TOPIC, new PresenceSync(clusterBus.getNodeId()));
+            }
+        }
+        if (event instanceof PresenceStates states) {
+            states.states().forEach(state -> apply(states.nodeId(), state));
+        } else if (event instanceof PresenceSync) {
+            announce(sessionRegistry.getOnlineUsernames());
+        }
+    }
+
+    private static String nodeIdOf(ClusterEvent event) {
+        if (event instanceof PresenceStates states) return states.nodeId();
+        if (event instanceof PresenceSync sync) return sync.nodeId();
+        if (event instanceof NodeHeartbeat heartbeat) return heartbeat.nodeId();
+        return null;
+    }
+
+    private UserState localState(String username) {
+        boolean online = sessionRegistry.getOnlineUsernames().contains(username);
+        return new UserState(username, online, online ? sessionRegistry.getRoom(username) : null);
+    }
+
+    private void apply(String nodeId, UserState state) {
+        UserState previous;
+        synchronized (lock) {
+            Map<String, UserState> byNode = remoteUsers.computeIfAbsent(state.username(), k -> new ConcurrentHashMap<>());
+            previous = state.online() ? byNode.put(nodeId, state) : byNode.remove(nodeId);
+            if (byNode.isEmpty()) {
+                remoteUsers.remove(state.username());
+            }
+            if (previous != null && previous.roomId() != null) {
+                removeRemoteRoomUser(previous.roomId(), state.username());
+            }
+            if (state.online() && state.roomId() != null) {
+                remoteRooms.computeIfAbsent(state.roomId(), k -> new ConcurrentHashMap<>())
+                        .merge(state.username(), 1, Integer::sum);
+            }
+        }
+        Set<String> rooms = new HashSet<>(2);
+        if (previous != null && previous.roomId() != null) rooms.add(previous.roomId());
+        if (state.roomId() != null) rooms.add(state.roomId());
+        listener.accept(state.username(), rooms);
+    }
+
+    private void removeNode(String nodeId) {
+        List<String> usernames = new ArrayList<>();
+        synchronized (lock) {
+            remoteUsers.forEach((username, byNode) -> {
+                if (byNode.containsKey(nodeId)) {
+                    usernames.add(username);
+                }
+            });
+        }
+        for (String username : usernames) {
+            apply(nodeId, new UserState(username, false, null));
+        }
+    }
+
+    private void removeRemoteRoomUser(String roomId, String username) {
+        Map<String, Integer> users = remoteRooms.get(roomId);
+        if (users == null) return;
+        users.computeIfPresent(username, (k, count) -> count > 1 ? count - 1 : null);
+        if (users.isEmpty()) {
+            remoteRooms.remove(roomId);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.stringcode.websocket_app.service.cluster;
+
+import com.stringcode.websocket_app.dto.WebSocketMessageDto;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * In-process bus joining every node of the same cluster name in this JVM, so several
+ * application contexts can run as a cluster without external infrastructure. Events
+ * are handled on a single inbox thread per receiving node. Each receiver gets its own
+ * copy of a room frame's message, as it would from a real transport; payloads are
+ * immutable and shared.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.cluster.bus", havingValue = "loopback")
+public class LoopbackClusterBus implements ClusterBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoopbackClusterBus.class);
+    private static final Map<String, Set<LoopbackClusterBus>> CLUSTERS = new ConcurrentHashMap<>();
+
+    private final String clusterName;
+    private final String nodeId;
+    private final Map<String, Consumer<ClusterEvent>> subscriptions = new ConcurrentHashMap<>();
+    private final ExecutorService inbox;
+
+    public LoopbackClusterBus(
+            @Value("${chat.cluster.name:chat}") String clusterName,
+            @Value("${chat.cluster.node-id:}") String nodeId
+    ) {
+        this.clusterName = clusterName;
+        this.nodeId = nodeId.isBlank() ? UUID.randomUUID().toString() : nodeId;
+        this.inbox = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "cluster-inbox-" + this.nodeId);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    public void join() {
+        CLUSTERS.computeIfAbsent(clusterName, k -> ConcurrentHashMap.newKeySet()).add(this);
+    }
+
+    @PreDestroy
+    public void leave() {
+        Set<LoopbackClusterBus> nodes = CLUSTERS.get(clusterName);
+        if (nodes != null) {
+            nodes.remove(this);
+        }
+        inbox.shutdown();
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void publish(String topic, ClusterEvent event) {
+        for (LoopbackClusterBus node : CLUSTERS.getOrDefault(clusterName, Set.of())) {
+            if (node != this) {
+                node.deliver(topic, copyOf(event));
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(String topic, Consumer<ClusterEvent> handler) {
+        subscriptions.put(topic, handler);
+    }
+
+    @Override
+    public void unsubscribe(String topic) {
+        subscriptions.remove(topic);
+    }
+
+    private static ClusterEvent copyOf(ClusterEvent event) {
+        if (event instanceof ClusterEvent.RoomFrame frame) {
+            WebSocketMessageDto m = frame.message();
+            return new ClusterEvent.RoomFrame(frame.roomId(), new WebSocketMessageDto(
+                    m.getType(), m.getPayload(), m.getTimestamp(), m.getSenderId(), m.getSenderName(), m.getSeq()));
+        }
+        return event;
+    }
+
+    private void deliver(String topic, ClusterEvent event) {
+        if (!subscriptions.containsKey(topic)) {
+            return;
+        }
+        try {
+            inbox.execute(() -> {
+                Consumer<ClusterEvent> handler = subscriptions.get(topic);
+                if (handler == null) {
+                    return;
+                }
+                try {
+                    handler.accept(event);
+                } catch (Exception e) {
+                    logger.error("Failed to handle cluster event on {}", topic, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Node is shutting down.
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.stringcode.websocket_app.service.cluster;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Consumer;
+
+/**
+ * Default bus for a single instance: there are no other nodes, so nothing is sent.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.cluster.bus", havingValue = "single", matchIfMissing = true)
+public class SingleNodeClusterBus implements ClusterBus {
+
+    @Override
+    public String getNodeId() {
+        return "local";
+    }
+
+    @Override
+    public void publish(String topic, ClusterEvent event) {
+    }
+
+    @Override
+    public void subscribe(String topic, Consumer<ClusterEvent> handler) {
+    }
+
+    @Override
+    public void unsubscribe(String topic) {
+    }
+}
@@ -1,98 +1,112 @@
 package com.stringcode.websocket_app.service.impl;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stringcode.websocket_app.dto.ChatMessageDto;
 import com.stringcode.websocket_app.dto.WebSocketMessageDto;
+import com.stringcode.websocket_app.dto.payload.CallRequestPayload;
+import com.stringcode.websocket_app.dto.payload.ChatPayload;
+import com.stringcode.websocket_app.dto.payload.JoinPayload;
+import com.stringcode.websocket_app.dto.payload.LeavePayload;
+import com.stringcode.websocket_app.dto.payload.ResumePayload;
+import com.stringcode.websocket_app.dto.payload.RoomPresencePayload;
 import com.stringcode.websocket_app.enums.MessageType;
 import com.stringcode.websocket_app.model.ChatMessage;
-import com.stringcode.websocket_app.repository.ChatMessageRepository;
 import com.stringcode.websocket_app.service.ChatService;
+import com.stringcode.websocket_app.service.MessageBroadcaster;
+import com.stringcode.websocket_app.service.MessageStore;
+import com.stringcode.websocket_app.service.PresencePublisher;
+import com.stringcode.websocket_app.service.RecentMessageCache;
+import com.stringcode.websocket_app.service.RoomExecutor;
+import com.stringcode.websocket_app.service.SessionRegistry;
+import com.stringcode.websocket_app.service.cluster.ClusterBus;
+import com.stringcode.websocket_app.service.cluster.ClusterEvent;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.regex.Pattern;
+
+import static com.stringcode.websocket_app.service.MessageBroadcaster.systemMessage;
 
 @Service
 @RequiredArgsConstructor
 public class ChatServiceImpl implements ChatService {
 
     private static final Logger logger = LoggerFactory.getLogger(ChatServiceImpl.class);
-    private final ObjectMapper objectMapper;
-    private final ChatMessageRepository chatMessageRepository;
+    // Room ids come from clients: UUIDs from RoomController or short names. Checked before
+    // anything is queued, so the stored room_id column never sees one it would reject.
+    private static final Pattern ROOM_ID = Pattern.compile("[A-Za-z0-9_.:-]{1,100}");
+    private static final String NOT_SENT = "Message not sent, the server is busy. Please try again.";
+    private final MessageStore messageStore;
+    private final SessionRegistry sessionRegistry;
+    private final RecentMessageCache recentMessageCache;
+    private final MessageBroadcaster broadcaster;
+    private final PresencePublisher presencePublisher;
+    private final ClusterBus clusterBus;
+    private final RoomExecutor roomExecutor;
+
+    // Rooms whose cluster topic this node is subscribed to, guarded by itself.
+    private final Set<String> subscribedRooms = new HashSet<>();
+
+    @Value("${chat.history.send-on-join:false}")
+    private boolean sendHistoryOnJoin;
+
+    @Value("${chat.history.join-backlog-size:50}")
+    private int joinBacklogSize;
 
-    // session → username mapping
-    private final Map<WebSocketSession, String> sessions = new ConcurrentHashMap<>();
-    
-    // username -> room mapping
-    private final Map<String, String> userToRoom = new ConcurrentHashMap<>();
-    
-    // roomId -> Set of usernames
-    private final Map<String, Set<String>> roomToUsers = new ConcurrentHashMap<>();
+    @Value("${chat.history.resume-max-replay:1000}")
+    private int resumeMaxReplay;
 
     @Override
     public void register(WebSocketSession session, String username) {
-        sessions.put(session, username);
+        int userSessions = sessionRegistry.register(session, username);
+        if (userSessions == 0) return;
         logger.info("User registered: {}", username);
-        broadcastOnlineUsers();
+        presencePublisher.sendOnlineUsers(session);
+        if (userSessions == 1) {
+            presencePublisher.userChanged(username);
+        }
     }
 
     @Override
     public void unregister(WebSocketSession session) {
-        String username = sessions.remove(session);
-        if (username != null) {
-            String roomId = userToRoom.remove(username);
-            if (roomId != null) {
-                Set<String> users = roomToUsers.get(roomId);
-                if (users != null) {
-                    users.remove(username);
-                }
-                broadcastToRoom(roomId, new WebSocketMessageDto(
-                        MessageType.LEAVE,
-                        Map.of("username", username, "roomId", roomId),
-                        LocalDateTime.now(),
-                        "SYSTEM",
-                        "SYSTEM"
-                ));
-                broadcastRoomPresence(roomId);
+        SessionRegistry.Removal removal = sessionRegistry.unregister(session);
+        if (removal != null) {
+            String username = removal.username();
+            if (removal.roomId() != null) {
+                syncRoomSubscription(removal.roomId());
+                presencePublisher.roomChanged(removal.roomId());
             }
             logger.info("User unregistered: {}", username);
-            broadcastOnlineUsers();
+            if (removal.lastSession()) {
+                presencePublisher.userChanged(username);
+            }
         }
     }
 
     @Override
     public void handleMessage(WebSocketSession session, WebSocketMessageDto message) {
-        String username = sessions.get(session);
+        String username = sessionRegistry.getUsername(session);
         if (username == null) return;
 
         switch (message.getType()) {
             case LOGIN:
-                broadcastOnlineUsers();
+                presencePublisher.sendOnlineUsers(session);
                 break;
             case JOIN:
                 handleJoin(session, message);
                 break;
+            case RESUME:
+                handleResume(session, message);
+                break;
             case LEAVE:
                 handleLeave(session, message);
                 break;
             case CHAT:
-                String roomId = userToRoom.get(username);
-                if (roomId != null) {
-                    ChatMessage chatMsg = ChatMessage.builder()
-                            .type(message.getType())
-                            .content(String.valueOf(message.getPayload()))
-                            .senderName(username)
-                            .roomId(roomId)
-                            .timestamp(LocalDateTime.now())
-                            .build();
-                    chatMessageRepository.save(chatMsg);
-                    broadcastToRoom(roomId, message);
-                }
+                handleChat(session, username, message);
                 break;
             case OFFER:
             case ANSWER:
@@ -100,157 +114,273 @@ public class ChatServiceImpl implements ChatService {
             case CALL_REQUEST:
             case CALL_RESPONSE:
             case CALL_HANGUP:
-                String sRoomId = userToRoom.get(username);
+                String sRoomId = sessionRegistry.getRoom(username);
                 if (sRoomId != null) {
-                    broadcastToRoom(sRoomId, message);
+                    WebSocketMessageDto signal = fromSender(username, message);
+                    roomExecutor.execute(sRoomId, () -> {
+                        // The seq of the last message before it; a signal takes none of its own.
+                        long seq = recentMessageCache.lastSeq(sRoomId);
+                        signal.setSeq(seq > 0 ? seq : null);
+                        broadcaster.broadcastToRoom(sRoomId, signal);
+                    });
                 }
                 break;
             case ONLINE_USERS:
-                broadcastOnlineUsers(); 
+                presencePublisher.sendOnlineUsers(session);
                 break;
             case ROOM_PRESENCE:
-                if (message.getPayload() instanceof Map) {
-                    Map<String, Object> payload = (Map<String, Object>) message.getPayload();
-                    String rId = (String) payload.get("roomId");
-                    if (rId != null) broadcastRoomPresence(rId);
+                if (message.getPayload() instanceof RoomPresencePayload presence && presence.roomId() != null) {
+                    presencePublisher.sendRoomPresence(session, presence.roomId());
                 }
                 break;
             case PING:
-                
+                // Every inbound frame counts as activity for the SessionHeartbeat; nothing else to do.
                 break;
             default:
                 logger.warn("Unhandled message type: {}", message.getType());
         }
     }
 
-    private void handleJoin(WebSocketSession session, WebSocketMessageDto message) {
-        if (!(message.getPayload() instanceof Map)) return;
-        Map<String, Object> payload = (Map<String, Object>) message.getPayload();
-        String username = (String) payload.get("username");
-        String roomId = (String) payload.get("roomId");
+    // Relayed signaling names its sender by the session's user, never by what the client claims.
+    private static WebSocketMessageDto fromSender(String username, WebSocketMessageDto message) {
+        Object payload = message.getPayload() instanceof CallRequestPayload call
+                ? new CallRequestPayload(call.to(), username, call.type())
+                : message.getPayload();
+        return new WebSocketMessageDto(message.getType(), payload, LocalDateTime.now(), username, username);
+    }
+
+    // The room's history is warmed and its seqs reserved here, off its stripe, so publishing never waits for the store.
+    private void handleChat(WebSocketSession session, String username, WebSocketMessageDto message) {
+        if (!(message.getPayload() instanceof ChatPayload chat) || chat.content() == null) return;
+        String roomId = sessionRegistry.getRoom(username);
+        if (roomId == null) return;
+        if (!recentMessageCache.warm(roomId) || !reserveSeqs(roomId)
+                || !roomExecutor.execute(roomId, () -> publishChat(session, username, roomId, chat.content()))) {
+            busy(session, roomId, NOT_SENT);
+        }
+    }
 
-   
-        String oldRoom = userToRoom.get(username);
-        if (oldRoom != null && !oldRoom.equals(roomId)) {
-            Set<String> oldUsers = roomToUsers.get(oldRoom);
-            if (oldUsers != null) {
-                oldUsers.remove(username);
-                broadcastToRoom(oldRoom, new WebSocketMessageDto(
-                        MessageType.LEAVE,
-                        Map.of("username", username, "roomId", oldRoom),
-                        LocalDateTime.now(),
-                        "SYSTEM",
-                        "SYSTEM"
-                ));
-                broadcastRoomPresence(oldRoom);
+    private boolean reserveSeqs(String roomId) {
+        try {
+            messageStore.reserveSeqs(roomId);
+            return true;
+        } catch (RuntimeException e) {
+            logger.error("Failed to reserve seqs of room {}", roomId, e);
+            return false;
+        }
+    }
+
+    // Runs on the room's stripe, so broadcast, cache and persistence order agree. The seq comes
+    // from those the store reserved, which keep increasing across restarts and nodes; when none
+    // is left, or the store refuses the message, the message is dropped before anyone sees it
+    // and its sender is told.
+    private void publishChat(WebSocketSession session, String username, String roomId, String content) {
+        LocalDateTime now = LocalDateTime.now();
+        long seq;
+        try {
+            seq = messageStore.nextSeq(roomId);
+        } catch (RuntimeException e) {
+            logger.warn("No seq ready for a message of room {}: {}", roomId, e.getMessage());
+            busy(session, roomId, NOT_SENT);
+            return;
+        }
+        ChatMessage chatMsg = ChatMessage.builder()
+                .type(MessageType.CHAT)
+                .content(content)
+                .senderName(username)
+                .roomId(roomId)
+                .timestamp(now)
+                .seq(seq)
+                .build();
+        boolean stored;
+        try {
+            stored = messageStore.append(chatMsg);
+        } catch (RuntimeException e) {
+            logger.error("Failed to store a message of room {}", roomId, e);
+            stored = false;
+        }
+        if (!stored) {
+            busy(session, roomId, NOT_SENT);
+            return;
+        }
+        // The cache takes its own copy and the id from the store, even if the writer got there first.
+        recentMessageCache.append(chatMsg);
+        broadcaster.broadcastToRoom(roomId, new WebSocketMessageDto(
+                MessageType.CHAT, new ChatPayload(content, roomId), now, username, username, seq));
+    }
+
+    private void busy(WebSocketSession session, String roomId, String text) {
+        broadcaster.send(session, systemMessage(MessageType.SYSTEM, Map.of(
+                "message", text,
+                "notificationType", "error",
+                "roomId", roomId
+        )));
+    }
+
+    // Membership and the history snapshot change together on the room's stripe, like RESUME, so
+    // the history ends where the frames the session receives live begin.
+    private void handleJoin(WebSocketSession session, WebSocketMessageDto message) {
+        if (!(message.getPayload() instanceof JoinPayload join) || !isValidRoomId(join.roomId())) return;
+        String roomId = join.roomId();
+        if (sendHistoryOnJoin) {
+            recentMessageCache.warm(roomId);
+        }
+        boolean queued = roomExecutor.execute(roomId, () -> {
+            if (joinRoom(session, roomId) && sendHistoryOnJoin) {
+                sendHistory(session, roomId);
             }
+        });
+        if (!queued) {
+            busy(session, roomId, "Could not join the room, the server is busy. Please try again.");
         }
+    }
 
-        userToRoom.put(username, roomId);
-        roomToUsers.computeIfAbsent(roomId, k -> ConcurrentHashMap.newKeySet()).add(username);
+    /**
+     * @return {@code false} if the user was already in the room
+     */
+    private boolean joinRoom(WebSocketSession session, String roomId) {
+        String username = sessionRegistry.getUsername(session);
+        String oldRoom = sessionRegistry.join(username, roomId);
+        presencePublisher.sendRoomPresence(session, roomId);
+        if (roomId.equals(oldRoom)) return false;
 
-        WebSocketMessageDto response = new WebSocketMessageDto(
-                MessageType.JOIN,
-                Map.of("username", username, "roomId", roomId),
-                LocalDateTime.now(),
-                "SYSTEM",
-                "SYSTEM"
-        );
-        broadcastToRoom(roomId, response);
-        broadcastRoomPresence(roomId);
-        broadcastOnlineUsers();
+        syncRoomSubscription(roomId);
+        if (oldRoom != null) {
+            syncRoomSubscription(oldRoom);
+            presencePublisher.roomChanged(oldRoom);
+        }
+        presencePublisher.roomChanged(roomId);
+        presencePublisher.userChanged(username);
+        return true;
     }
 
-    private void handleLeave(WebSocketSession session, WebSocketMessageDto message) {
-        if (!(message.getPayload() instanceof Map)) return;
-        Map<String, Object> payload = (Map<String, Object>) message.getPayload();
-        String username = (String) payload.get("username");
-        String roomId = (String) payload.get("roomId");
+    // Joins like JOIN and replays the CHAT frames after lastSeq instead of the history. Both run
+    // on the room's stripe, so the replay ends where the frames the session receives live begin.
+    private void handleResume(WebSocketSession session, WebSocketMessageDto message) {
+        if (!(message.getPayload() instanceof ResumePayload resume) || !isValidRoomId(resume.roomId()) || resume.lastSeq() == null) return;
+        String roomId = resume.roomId();
+        long lastSeq = resume.lastSeq();
+        // The store is only read when the recent buffer does not reach back far enough, and never on the stripe.
+        recentMessageCache.warm(roomId);
+        List<ChatMessageDto> persisted = recentMessageCache.after(roomId, lastSeq).isPresent()
+                ? List.of()
+                : missedFromStore(roomId, lastSeq);
+        boolean queued = roomExecutor.execute(roomId, () -> {
+            joinRoom(session, roomId);
+            replay(session, roomId, lastSeq, persisted);
+        });
+        if (!queued) {
+            busy(session, roomId, "Could not rejoin the room, the server is busy. Please try again.");
+        }
+    }
 
-        userToRoom.remove(username);
-        Set<String> users = roomToUsers.get(roomId);
-        if (users != null) {
-            users.remove(username);
+    // Oldest first; empty when the gap is larger than a replay may be.
+    private List<ChatMessageDto> missedFromStore(String roomId, long lastSeq) {
+        long missed = recentMessageCache.lastSeq(roomId) - lastSeq;
+        if (missed <= 0 || missed > resumeMaxReplay) return List.of();
+        List<ChatMessageDto> newestFirst = messageStore.findLatest(roomId, (int) missed);
+        List<ChatMessageDto> missedMessages = new ArrayList<>(newestFirst.size());
+        for (int i = newestFirst.size() - 1; i >= 0; i--) {
+            ChatMessageDto m = newestFirst.get(i);
+            if (m.getSeq() != null && m.getSeq() > lastSeq) {
+                missedMessages.add(m);
+            }
         }
+        return missedMessages;
+    }
 
-        broadcastToRoom(roomId, new WebSocketMessageDto(
-                MessageType.LEAVE,
-                Map.of("username", username, "roomId", roomId),
-                LocalDateTime.now(),
-                "SYSTEM",
-                "SYSTEM"
-        ));
-        broadcastRoomPresence(roomId);
-        broadcastOnlineUsers();
+    private void replay(WebSocketSession session, String roomId, long lastSeq, List<ChatMessageDto> persisted) {
+        long head = recentMessageCache.lastSeq(roomId);
+        long bufferedAfter = persisted.isEmpty() ? lastSeq : persisted.get(persisted.size() - 1).getSeq();
+        Optional<List<ChatMessageDto>> buffered = recentMessageCache.after(roomId, bufferedAfter);
+        // Too far behind, or a seq this room never reached: the client starts over from the latest page.
+        if (lastSeq > head || head - lastSeq > resumeMaxReplay || buffered.isEmpty()) {
+            logger.debug("Resume of room {} from seq {} falls back to history, head is {}", roomId, lastSeq, head);
+            sendHistory(session, roomId);
+            return;
+        }
+        for (ChatMessageDto m : persisted) {
+            broadcaster.send(session, chatFrame(m));
+        }
+        for (ChatMessageDto m : buffered.get()) {
+            broadcaster.send(session, chatFrame(m));
+        }
     }
 
-    private void broadcastRoomPresence(String roomId) {
-        Set<String> usernames = roomToUsers.getOrDefault(roomId, Collections.emptySet());
-        List<Map<String, String>> users = usernames.stream()
-                .map(u -> Map.of("username", u, "status", "online"))
-                .collect(Collectors.toList());
+    private static WebSocketMessageDto chatFrame(ChatMessageDto m) {
+        return new WebSocketMessageDto(MessageType.CHAT, new ChatPayload(m.getContent(), m.getRoomId()),
+                m.getTimestamp(), m.getSenderName(), m.getSenderName(), m.getSeq());
+    }
 
-        broadcastToRoom(roomId, new WebSocketMessageDto(
-                MessageType.ROOM_PRESENCE,
-                Map.of("roomId", roomId, "users", users),
-                LocalDateTime.now(),
-                "SYSTEM",
-                "SYSTEM"
+    // Carries the seq of its newest message, so a client resumes after the history it was sent.
+    private void sendHistory(WebSocketSession session, String roomId) {
+        List<ChatMessageDto> latest = recentMessageCache.latest(roomId, joinBacklogSize);
+        WebSocketMessageDto history = systemMessage(MessageType.HISTORY, Map.of(
+                "roomId", roomId,
+                "messages", latest
         ));
+        history.setSeq(latest.stream().map(ChatMessageDto::getSeq).filter(Objects::nonNull).max(Long::compare).orElse(null));
+        broadcaster.send(session, history);
     }
 
-    private void broadcastOnlineUsers() {
-        WebSocketMessageDto message = new WebSocketMessageDto(
-                MessageType.ONLINE_USERS,
-                Map.of("users", getOnlineUsersList()),
-                LocalDateTime.now(),
-                "SYSTEM",
-                "SYSTEM"
-        );
-        
-        sessions.keySet().forEach(session -> {
-            if (session.isOpen()) {
-                sendToSession(session, message);
-            }
-        });
+    private static boolean isValidRoomId(String roomId) {
+        if (roomId != null && ROOM_ID.matcher(roomId).matches()) {
+            return true;
+        }
+        logger.debug("Ignoring invalid room id: {}", roomId);
+        return false;
     }
 
-    private List<Map<String, String>> getOnlineUsersList() {
-       
-        Map<String, Map<String, String>> uniqueUsers = new HashMap<>();
-        
-        sessions.values().forEach(u -> {
-            String room = userToRoom.get(u);
-            Map<String, String> userMap = new HashMap<>();
-            userMap.put("username", u);
-            userMap.put("status", "online");
-            if (room != null) {
-                userMap.put("currentRoom", room);
-            }
-            uniqueUsers.put(u, userMap);
+    // On the room's stripe, so the session gets every frame published before it left and none after.
+    private void handleLeave(WebSocketSession session, WebSocketMessageDto message) {
+        if (!(message.getPayload() instanceof LeavePayload leave) || leave.roomId() == null) return;
+        String username = sessionRegistry.getUsername(session);
+        String roomId = leave.roomId();
+        boolean queued = roomExecutor.execute(roomId, () -> {
+            if (!sessionRegistry.leave(username, roomId)) return;
+            syncRoomSubscription(roomId);
+
+            presencePublisher.roomChanged(roomId);
+            presencePublisher.userChanged(username);
         });
-        
-        return new ArrayList<>(uniqueUsers.values());
+        if (!queued) {
+            busy(session, roomId, "Could not leave the room, the server is busy. Please try again.");
+        }
     }
 
-    private void broadcastToRoom(String roomId, WebSocketMessageDto message) {
-        Set<String> roomUsernames = roomToUsers.getOrDefault(roomId, Collections.emptySet());
-        sessions.forEach((session, username) -> {
-            if (roomUsernames.contains(username) && session.isOpen()) {
-                sendToSession(session, message);
+    // Listens to a room's messages from other nodes only while it has local sessions.
+    private void syncRoomSubscription(String roomId) {
+        synchronized (subscribedRooms) {
+            boolean hasLocalSessions = !sessionRegistry.getRoomSessions(roomId).isEmpty();
+            if (hasLocalSessions && subscribedRooms.add(roomId)) {
+                clusterBus.subscribe(ClusterBus.roomTopic(roomId), this::onRoomEvent);
+            } else if (!hasLocalSessions && subscribedRooms.remove(roomId)) {
+                clusterBus.unsubscribe(ClusterBus.roomTopic(roomId));
             }
-        });
+        }
     }
 
-    private void sendToSession(WebSocketSession session, WebSocketMessageDto message) {
-        if (message.getTimestamp() == null) {
-            message.setTimestamp(LocalDateTime.now());
+    private void onRoomEvent(ClusterEvent event) {
+        if (event instanceof ClusterEvent.RoomFrame frame) {
+            roomExecutor.execute(frame.roomId(), () -> deliverRemote(frame));
         }
-        try {
-            String json = objectMapper.writeValueAsString(message);
-            session.sendMessage(new TextMessage(json));
-        } catch (Exception e) {
-            logger.error("Failed to send message to session: {}", session.getId(), e);
+    }
+
+    private void deliverRemote(ClusterEvent.RoomFrame frame) {
+        WebSocketMessageDto message = frame.message();
+        broadcaster.deliverToRoom(frame.roomId(), message);
+        if (message.getSeq() != null) {
+            messageStore.seqSeen(frame.roomId(), message.getSeq());
+        }
+        if (message.getType() == MessageType.CHAT && message.getPayload() instanceof ChatPayload chat) {
+            recentMessageCache.append(ChatMessage.builder()
+                    .type(MessageType.CHAT)
+                    .content(chat.content())
+                    .senderName(message.getSenderName())
+                    .roomId(frame.roomId())
+                    .timestamp(message.getTimestamp())
+                    .seq(message.getSeq())
+                    .build());
         }
     }
 }
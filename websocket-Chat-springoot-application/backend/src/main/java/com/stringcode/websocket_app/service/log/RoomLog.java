@@ -0,0 +1,266 @@
+package com.stringcode.websocket_app.service.log;
+
+import com.stringcode.websocket_app.model.ChatMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * The segments of one room, oldest first; the last one takes appends. Appends,
+ * rolling and closing are serialized on the log. A flush and a compaction only take
+ * the segment list under that lock: the active segment is forced, and sealed ones
+ * merged, outside it, and a compaction swaps its result in under the lock again.
+ * Reads work on the current segment list without locking, and segments replaced by
+ * compaction stay readable until their last reader lets go of them.
+ */
+final class RoomLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(RoomLog.class);
+
+    /**
+     * @param segmentBytes       size at which the active segment is sealed and a new one started
+     * @param indexIntervalBytes bytes between sparse index entries
+     * @param segmentMaxAgeMs    age of its first record at which the active segment is sealed; 0 = never
+     */
+    record Settings(int segmentBytes, int indexIntervalBytes, long segmentMaxAgeMs) {
+    }
+
+    final String roomId;
+    private final Path dir;
+    private final Settings settings;
+    private volatile List<Segment> segments;
+    private boolean closed;
+    // Held for a whole compaction, so two never run at once; appends do not wait for it.
+    private final Object compacting = new Object();
+    // Highest seq handed out or stored, guarded by this.
+    private long lastSeq;
+
+    private RoomLog(String roomId, Path dir, Settings settings, List<Segment> segments) {
+        this.roomId = roomId;
+        this.dir = dir;
+        this.settings = settings;
+        this.segments = segments;
+        this.lastSeq = segments.stream().mapToLong(Segment::lastSeq).max().orElse(0);
+    }
+
+    static RoomLog open(String roomId, Path dir, Settings settings) throws IOException {
+        Files.createDirectories(dir);
+        List<Long> baseIds = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".compact")) {
+                    Files.delete(file);
+                } else if (name.endsWith(Segment.LOG_SUFFIX)) {
+                    baseIds.add(Long.parseLong(name.substring(0, name.length() - Segment.LOG_SUFFIX.length())));
+                }
+            }
+        }
+        baseIds.sort(null);
+
+        List<Segment> segments = new ArrayList<>(baseIds.size());
+        for (int i = 0; i < baseIds.size(); i++) {
+            Segment segment = Segment.open(dir, baseIds.get(i), settings.segmentBytes(), settings.indexIntervalBytes(), i == baseIds.size() - 1);
+            Segment previous = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            // Left behind by a compaction interrupted after the merged segment replaced the first one.
+            if (previous != null && segment.baseId <= previous.lastId()) {
+                logger.info("Deleting segment {} of room {} already merged into {}", segment.baseId, roomId, previous.baseId);
+                segment.delete();
+                continue;
+            }
+            segments.add(segment);
+        }
+        return new RoomLog(roomId, dir, settings, List.copyOf(segments));
+    }
+
+    /**
+     * @return the seq after the highest one handed out or found on disk
+     */
+    synchronized long nextSeq() {
+        if (closed) {
+            throw new IllegalStateException("Log of room " + roomId + " is closed");
+        }
+        return ++lastSeq;
+    }
+
+    /**
+     * Stores the message under an id taken from {@code ids}, which is set on the message.
+     */
+    synchronized void append(ChatMessage message, LongSupplier ids) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Log of room " + roomId + " is closed");
+        }
+        byte[] sender = message.getSenderName() != null ? message.getSenderName().getBytes(StandardCharsets.UTF_8) : null;
+        byte[] content = (message.getContent() != null ? message.getContent() : "").getBytes(StandardCharsets.UTF_8);
+        if (sender != null && sender.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Sender name too long: " + sender.length + " bytes");
+        }
+        // Stored to the microsecond, like a PostgreSQL timestamp.
+        LocalDateTime timestamp = (message.getTimestamp() != null ? message.getTimestamp() : LocalDateTime.now())
+                .truncatedTo(ChronoUnit.MICROS);
+        int size = Segment.recordSize(sender, content);
+
+        long id = ids.getAsLong();
+        List<Segment> current = segments;
+        Segment active = current.isEmpty() ? null : current.get(current.size() - 1);
+        if (active == null || !active.fits(size) || expired(active, timestamp)) {
+            if (active != null) {
+                active.seal();
+            }
+            active = Segment.create(dir, id, Math.max(settings.segmentBytes(), size), settings.indexIntervalBytes());
+            List<Segment> rolled = new ArrayList<>(current);
+            rolled.add(active);
+            segments = List.copyOf(rolled);
+        }
+        long seq = message.getSeq() != null ? message.getSeq() : 0;
+        active.append(id, seq, timestamp, sender, content);
+        lastSeq = Math.max(lastSeq, seq);
+        message.setId(id);
+        message.setTimestamp(timestamp);
+    }
+
+    /**
+     * @return up to {@code limit} messages with an id below {@code beforeId}, newest first
+     */
+    List<ChatMessage> before(long beforeId, int limit) {
+        List<Segment> current = segments;
+        List<ChatMessage> messages = new ArrayList<>(Math.min(limit, 256));
+        for (int i = current.size() - 1; i >= 0 && messages.size() < limit; i--) {
+            Segment segment = current.get(i);
+            if (segment.baseId < beforeId) {
+                segment.readBefore(roomId, beforeId, limit, messages);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * @return up to {@code limit} messages with an id above {@code afterId}, oldest first
+     */
+    List<ChatMessage> after(long afterId, int limit) {
+        List<ChatMessage> messages = new ArrayList<>();
+        for (Segment segment : segments) {
+            if (messages.size() >= limit) {
+                break;
+            }
+            if (segment.lastId() > afterId) {
+                segment.readAfter(roomId, afterId, limit, messages);
+            }
+        }
+        return messages;
+    }
+
+    long lastId() {
+        List<Segment> current = segments;
+        for (int i = current.size() - 1; i >= 0; i--) {
+            if (!current.get(i).isEmpty()) {
+                return current.get(i).lastId();
+            }
+        }
+        return 0;
+    }
+
+    int segmentCount() {
+        return segments.size();
+    }
+
+    void flush() throws IOException {
+        Segment active;
+        synchronized (this) {
+            if (closed || segments.isEmpty()) {
+                return;
+            }
+            active = segments.get(segments.size() - 1);
+        }
+        // Sealed by a roll in the meantime, it was flushed then and this does nothing.
+        active.flush();
+    }
+
+    /**
+     * Deletes sealed segments whose newest record is older than {@code retainAfter}
+     * (when not null), then merges runs of adjacent sealed segments that together fit
+     * in one segment, so quiet rooms do not pile up small files.
+     *
+     * @return the number of segment files removed
+     */
+    int compact(LocalDateTime retainAfter) throws IOException {
+        synchronized (compacting) {
+            List<Segment> sealed;
+            synchronized (this) {
+                if (closed || segments.size() < 2) {
+                    return 0;
+                }
+                sealed = new ArrayList<>(segments.subList(0, segments.size() - 1));
+            }
+            // Only compaction changes the sealed segments, so they are still the head of the list at the swap.
+            int replacedCount = sealed.size();
+            List<Segment> removed = new ArrayList<>();
+            if (retainAfter != null) {
+                long cutoff = Segment.toMicros(retainAfter);
+                while (!sealed.isEmpty() && sealed.get(0).lastTimestamp() < cutoff) {
+                    removed.add(sealed.remove(0));
+                }
+            }
+            List<Segment> compacted = merge(sealed, removed);
+
+            synchronized (this) {
+                List<Segment> current = segments;
+                compacted.addAll(current.subList(replacedCount, current.size()));
+                segments = List.copyOf(compacted);
+            }
+            for (Segment segment : removed) {
+                segment.delete();
+            }
+            return removed.size();
+        }
+    }
+
+    // Merges runs of adjacent segments that fit in one; the merged ones but the first of each run go to removed.
+    private List<Segment> merge(List<Segment> sealed, List<Segment> removed) throws IOException {
+        List<Segment> compacted = new ArrayList<>(sealed.size());
+        int runStart = 0;
+        long runBytes = 0;
+        for (int i = 0; i <= sealed.size(); i++) {
+            if (i < sealed.size() && runBytes + sealed.get(i).size() <= settings.segmentBytes()) {
+                runBytes += sealed.get(i).size();
+                continue;
+            }
+            List<Segment> run = sealed.subList(runStart, i);
+            if (run.size() > 1) {
+                // Written over the first segment's file, which thereby goes away.
+                compacted.add(Segment.merge(dir, run, settings.indexIntervalBytes()));
+                removed.addAll(run.subList(1, run.size()));
+            } else {
+                compacted.addAll(run);
+            }
+            if (i < sealed.size()) {
+                runStart = i;
+                runBytes = sealed.get(i).size();
+            }
+        }
+        return compacted;
+    }
+
+    synchronized void close() throws IOException {
+        if (!closed && !segments.isEmpty()) {
+            segments.get(segments.size() - 1).seal();
+        }
+        closed = true;
+    }
+
+    private boolean expired(Segment active, LocalDateTime timestamp) {
+        return settings.segmentMaxAgeMs() > 0 && !active.isEmpty()
+                && Segment.toMicros(timestamp) - active.firstTimestamp() >= TimeUnit.MILLISECONDS.toMicros(settings.segmentMaxAgeMs());
+    }
+}
@@ -0,0 +1,512 @@
+package com.stringcode.websocket_app.service.log;
+
+import com.stringcode.websocket_app.enums.MessageType;
+import com.stringcode.websocket_app.model.ChatMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * One file of a room's log, named after the first id it holds.
+ * <p>
+ * Records are written through a read-write mapping of the whole segment, which the
+ * active segment preallocates as a sparse file; a sealed segment is truncated to its
+ * records and mapped read-only. The end of the records is published through a volatile
+ * field after each append, so readers share the mapping without locking.
+ * <p>
+ * Record layout, big-endian:
+ * <pre>
+ * int   length          bytes after this field
+ * int   crc             CRC32C of the bytes after this field
+ * byte  version         {@link #FORMAT_VERSION}
+ * long  id
+ * long  seq             position in the room's stream, 0 for none
+ * long  timestamp       epoch microseconds, the LocalDateTime read as UTC
+ * short senderLength    -1 for no sender
+ * byte[] sender         UTF-8
+ * byte[] content        UTF-8, up to the end of the record
+ * </pre>
+ * A sparse index holds the id and position of the first record at or after every
+ * {@code indexInterval} bytes. It lives in memory and in a sidecar file that is only
+ * a hint: recovery trusts its entries up to the end of the valid records and rebuilds
+ * the rest by scanning, stopping at the first torn or corrupt record. A record whose
+ * CRC matches but whose version is unknown fails the recovery instead, since dropping
+ * it as a torn tail would lose the rest of the segment.
+ */
+final class Segment {
+
+    static final String LOG_SUFFIX = ".log";
+    static final String INDEX_SUFFIX = ".idx";
+
+    static final byte FORMAT_VERSION = 1;
+
+    private static final int CRC_OFFSET = 4;
+    private static final int VERSION_OFFSET = 8;
+    private static final int ID_OFFSET = 9;
+    private static final int SEQ_OFFSET = 17;
+    private static final int TIMESTAMP_OFFSET = 25;
+    private static final int SENDER_LENGTH_OFFSET = 33;
+    private static final int HEADER_BYTES = 35;
+    private static final int INDEX_ENTRY_BYTES = 8 + 4;
+
+    final long baseId;
+    private final Path file;
+    private final Path indexFile;
+    private final int indexInterval;
+
+    private MappedByteBuffer map;
+    // The index channel, and whether it is open, are guarded by this; see flush().
+    private FileChannel indexChannel;
+    private boolean active;
+    private volatile boolean dirty;
+
+    // End of the valid records; everything before it is visible to a reader that reads it.
+    private volatile int end;
+    private volatile long lastId;
+    private long lastSeq;
+    private long firstTimestamp = Long.MIN_VALUE;
+    private long lastTimestamp = Long.MIN_VALUE;
+
+    // Sparse index; a reader reads end, then indexSize, then the arrays.
+    private long[] indexIds = new long[16];
+    private int[] indexPositions = new int[16];
+    private volatile int indexSize;
+    private int indexWritten;
+    private int nextIndexPosition;
+
+    private Segment(Path dir, long baseId, int indexInterval) {
+        this.baseId = baseId;
+        this.file = dir.resolve(fileName(baseId, LOG_SUFFIX));
+        this.indexFile = dir.resolve(fileName(baseId, INDEX_SUFFIX));
+        this.indexInterval = indexInterval;
+    }
+
+    static String fileName(long baseId, String suffix) {
+        return String.format("%020d%s", baseId, suffix);
+    }
+
+    static int recordSize(byte[] sender, byte[] content) {
+        return HEADER_BYTES + (sender != null ? sender.length : 0) + content.length;
+    }
+
+    static Segment create(Path dir, long baseId, int capacity, int indexInterval) throws IOException {
+        Segment segment = new Segment(dir, baseId, indexInterval);
+        segment.openActive(0, capacity);
+        return segment;
+    }
+
+    static Segment open(Path dir, long baseId, int capacity, int indexInterval, boolean active) throws IOException {
+        Segment segment = new Segment(dir, baseId, indexInterval);
+        segment.recover();
+        if (active) {
+            segment.openActive(segment.end, Math.max(capacity, segment.end));
+        } else {
+            segment.seal();
+        }
+        return segment;
+    }
+
+    /**
+     * Merges sealed segments into one new segment named after the first, written next
+     * to it and moved over it. The caller deletes the other files.
+     */
+    static Segment merge(Path dir, List<Segment> sealed, int indexInterval) throws IOException {
+        Segment first = sealed.get(0);
+        Path tmpLog = dir.resolve(fileName(first.baseId, LOG_SUFFIX + ".compact"));
+        Path tmpIndex = dir.resolve(fileName(first.baseId, INDEX_SUFFIX + ".compact"));
+        Segment merged = new Segment(dir, first.baseId, indexInterval);
+        try (FileChannel out = FileChannel.open(tmpLog, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            int offset = 0;
+            for (Segment segment : sealed) {
+                ByteBuffer records = segment.map.slice(0, segment.end);
+                while (records.hasRemaining()) {
+                    out.write(records);
+                }
+                for (int i = 0; i < segment.indexSize; i++) {
+                    merged.addIndexEntry(segment.indexIds[i], offset + segment.indexPositions[i]);
+                }
+                offset += segment.end;
+            }
+            out.force(true);
+            merged.end = offset;
+        }
+        Segment last = sealed.get(sealed.size() - 1);
+        merged.lastId = last.lastId;
+        merged.lastSeq = sealed.stream().mapToLong(segment -> segment.lastSeq).max().orElse(0);
+        merged.firstTimestamp = first.firstTimestamp;
+        merged.lastTimestamp = last.lastTimestamp;
+        merged.nextIndexPosition = merged.end;
+        merged.writeIndex(tmpIndex);
+
+        // The log first: an index older than its log is only missing entries, which recovery rebuilds.
+        Files.move(tmpLog, merged.file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        Files.move(tmpIndex, merged.indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        merged.map = map(merged.file, FileChannel.MapMode.READ_ONLY, merged.end);
+        return merged;
+    }
+
+    boolean fits(int recordSize) {
+        return end <= map.capacity() - recordSize;
+    }
+
+    boolean isEmpty() {
+        return end == 0;
+    }
+
+    int size() {
+        return end;
+    }
+
+    long lastId() {
+        return lastId;
+    }
+
+    /**
+     * @return the highest seq among the records, or 0 if none has one
+     */
+    long lastSeq() {
+        return lastSeq;
+    }
+
+    long firstTimestamp() {
+        return firstTimestamp;
+    }
+
+    long lastTimestamp() {
+        return lastTimestamp;
+    }
+
+    /**
+     * Appends a record; the caller checked that it {@link #fits}.
+     */
+    void append(long id, long seq, LocalDateTime timestamp, byte[] sender, byte[] content) {
+        int position = end;
+        int size = recordSize(sender, content);
+        long micros = toMicros(timestamp);
+        map.putInt(position, size - 4);
+        map.put(position + VERSION_OFFSET, FORMAT_VERSION);
+        map.putLong(position + ID_OFFSET, id);
+        map.putLong(position + SEQ_OFFSET, seq);
+        map.putLong(position + TIMESTAMP_OFFSET, micros);
+        map.putShort(position + SENDER_LENGTH_OFFSET, (short) (sender != null ? sender.length : -1));
+        int offset = position + HEADER_BYTES;
+        if (sender != null) {
+            map.put(offset, sender);
+            offset += sender.length;
+        }
+        map.put(offset, content);
+        map.putInt(position + CRC_OFFSET, crc(map, position, size - 4));
+
+        if (position >= nextIndexPosition) {
+            addIndexEntry(id, position);
+        }
+        if (firstTimestamp == Long.MIN_VALUE) {
+            firstTimestamp = micros;
+        }
+        lastTimestamp = micros;
+        lastId = id;
+        lastSeq = Math.max(lastSeq, seq);
+        dirty = true;
+        end = position + size;
+    }
+
+    /**
+     * Adds up to {@code limit} records with an id below {@code beforeId} to {@code out}, newest first.
+     */
+    void readBefore(String roomId, long beforeId, int limit, List<ChatMessage> out) {
+        int end = this.end;
+        int size = indexSize;
+        long[] ids = indexIds;
+        int[] positions = indexPositions;
+        while (size > 0 && positions[size - 1] >= end) {
+            size--;
+        }
+        List<ChatMessage> block = new ArrayList<>();
+        for (int i = floor(ids, size, beforeId - 1); i >= 0 && out.size() < limit; i--) {
+            block.clear();
+            decode(roomId, positions[i], i + 1 < size ? positions[i + 1] : end, block);
+            for (int j = block.size() - 1; j >= 0 && out.size() < limit; j--) {
+                if (block.get(j).getId() < beforeId) {
+                    out.add(block.get(j));
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds up to {@code limit} records with an id above {@code afterId} to {@code out}, oldest first.
+     */
+    void readAfter(String roomId, long afterId, int limit, List<ChatMessage> out) {
+        int end = this.end;
+        int size = indexSize;
+        long[] ids = indexIds;
+        int[] positions = indexPositions;
+        while (size > 0 && positions[size - 1] >= end) {
+            size--;
+        }
+        List<ChatMessage> block = new ArrayList<>();
+        for (int i = Math.max(0, floor(ids, size, afterId)); i < size && out.size() < limit; i++) {
+            block.clear();
+            decode(roomId, positions[i], i + 1 < size ? positions[i + 1] : end, block);
+            for (ChatMessage message : block) {
+                if (message.getId() > afterId && out.size() < limit) {
+                    out.add(message);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forces appended records to disk and writes the pending index entries. Runs
+     * alongside appends, like a reader: records appended meanwhile are forced by the
+     * next flush. Does nothing once the segment is sealed, which flushes it.
+     */
+    synchronized void flush() throws IOException {
+        if (!active || !dirty) {
+            return;
+        }
+        // Cleared first: an append after this point leaves the segment dirty for the next flush.
+        dirty = false;
+        int size = indexSize;
+        long[] ids = indexIds;
+        int[] positions = indexPositions;
+        try {
+            map.force();
+            if (indexWritten < size) {
+                ByteBuffer entries = ByteBuffer.allocate((size - indexWritten) * INDEX_ENTRY_BYTES);
+                for (int i = indexWritten; i < size; i++) {
+                    entries.putLong(ids[i]).putInt(positions[i]);
+                }
+                entries.flip();
+                long position = (long) indexWritten * INDEX_ENTRY_BYTES;
+                while (entries.hasRemaining()) {
+                    position += indexChannel.write(entries, position);
+                }
+                indexWritten = size;
+            }
+        } catch (IOException | RuntimeException e) {
+            dirty = true;
+            throw e;
+        }
+    }
+
+    /**
+     * Flushes and truncates the file to its records, which are then mapped read-only.
+     */
+    void seal() throws IOException {
+        synchronized (this) {
+            if (active) {
+                flush();
+                indexChannel.close();
+                active = false;
+            }
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            if (channel.size() != end) {
+                channel.truncate(end);
+            }
+        }
+        map = map(file, FileChannel.MapMode.READ_ONLY, end);
+    }
+
+    void delete() throws IOException {
+        synchronized (this) {
+            if (active) {
+                indexChannel.close();
+                active = false;
+            }
+        }
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(indexFile);
+    }
+
+    private void openActive(int end, int capacity) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Drops any torn tail, then extends with zeros: a zero length marks the end of the records.
+            channel.truncate(end);
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+        writeIndex(indexFile);
+        indexChannel = FileChannel.open(indexFile, StandardOpenOption.WRITE);
+        indexWritten = indexSize;
+        active = true;
+    }
+
+    private void recover() throws IOException {
+        int fileSize = (int) Files.size(file);
+        MappedByteBuffer buffer = map(file, FileChannel.MapMode.READ_ONLY, fileSize);
+        loadIndex(fileSize);
+
+        // Scan from the last indexed record; entries past a torn record are dropped.
+        int position = 0;
+        long previousId = baseId - 1;
+        while (indexSize > 0) {
+            int last = indexPositions[indexSize - 1];
+            int recordEnd = validRecordEnd(buffer, last, fileSize, indexIds[indexSize - 1] - 1);
+            if (recordEnd > 0 && buffer.getLong(last + ID_OFFSET) == indexIds[indexSize - 1]) {
+                position = last;
+                previousId = indexIds[indexSize - 1] - 1;
+                break;
+            }
+            indexSize--;
+        }
+        nextIndexPosition = indexSize > 0 ? position + indexInterval : 0;
+        while (true) {
+            int recordEnd = validRecordEnd(buffer, position, fileSize, previousId);
+            if (recordEnd < 0) {
+                break;
+            }
+            long id = buffer.getLong(position + ID_OFFSET);
+            if (position >= nextIndexPosition) {
+                addIndexEntry(id, position);
+            }
+            lastSeq = Math.max(lastSeq, buffer.getLong(position + SEQ_OFFSET));
+            lastTimestamp = buffer.getLong(position + TIMESTAMP_OFFSET);
+            lastId = id;
+            previousId = id;
+            position = recordEnd;
+        }
+        end = position;
+        if (end > 0) {
+            firstTimestamp = buffer.getLong(TIMESTAMP_OFFSET);
+        }
+        map = buffer;
+    }
+
+    private void loadIndex(int fileSize) throws IOException {
+        if (!Files.exists(indexFile)) {
+            return;
+        }
+        ByteBuffer entries = ByteBuffer.wrap(Files.readAllBytes(indexFile));
+        long previousId = baseId - 1;
+        int previousPosition = -1;
+        while (entries.remaining() >= INDEX_ENTRY_BYTES) {
+            long id = entries.getLong();
+            int position = entries.getInt();
+            if (id <= previousId || position <= previousPosition || position >= fileSize) {
+                break;
+            }
+            addIndexEntry(id, position);
+            previousId = id;
+            previousPosition = position;
+        }
+    }
+
+    private void writeIndex(Path target) throws IOException {
+        ByteBuffer entries = ByteBuffer.allocate(indexSize * INDEX_ENTRY_BYTES);
+        for (int i = 0; i < indexSize; i++) {
+            entries.putLong(indexIds[i]).putInt(indexPositions[i]);
+        }
+        entries.flip();
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (entries.hasRemaining()) {
+                channel.write(entries);
+            }
+        }
+    }
+
+    private void addIndexEntry(long id, int position) {
+        int size = indexSize;
+        if (size == indexIds.length) {
+            indexIds = Arrays.copyOf(indexIds, size * 2);
+            indexPositions = Arrays.copyOf(indexPositions, size * 2);
+        }
+        indexIds[size] = id;
+        indexPositions[size] = position;
+        indexSize = size + 1;
+        nextIndexPosition = position + indexInterval;
+    }
+
+    private void decode(String roomId, int from, int to, List<ChatMessage> out) {
+        MappedByteBuffer map = this.map;
+        int position = from;
+        while (position < to) {
+            int length = map.getInt(position);
+            short senderLength = map.getShort(position + SENDER_LENGTH_OFFSET);
+            long seq = map.getLong(position + SEQ_OFFSET);
+            int offset = position + HEADER_BYTES;
+            String sender = null;
+            if (senderLength >= 0) {
+                sender = string(map, offset, senderLength);
+                offset += senderLength;
+            }
+            out.add(ChatMessage.builder()
+                    .id(map.getLong(position + ID_OFFSET))
+                    .type(MessageType.CHAT)
+                    .content(string(map, offset, position + 4 + length - offset))
+                    .senderName(sender)
+                    .roomId(roomId)
+                    .timestamp(fromMicros(map.getLong(position + TIMESTAMP_OFFSET)))
+                    .seq(seq != 0 ? seq : null)
+                    .build());
+            position += 4 + length;
+        }
+    }
+
+    // End of the record at position, or -1 if none is there or it is torn, corrupt or out of order.
+    private int validRecordEnd(ByteBuffer buffer, int position, int limit, long previousId) throws IOException {
+        if (position + HEADER_BYTES > limit) {
+            return -1;
+        }
+        int length = buffer.getInt(position);
+        if (length < HEADER_BYTES - 4 || length > limit - position - 4
+                || buffer.getInt(position + CRC_OFFSET) != crc(buffer, position, length)) {
+            return -1;
+        }
+        byte version = buffer.get(position + VERSION_OFFSET);
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Record at " + position + " of " + file + " has format version " + version
+                    + ", this version reads " + FORMAT_VERSION);
+        }
+        short senderLength = buffer.getShort(position + SENDER_LENGTH_OFFSET);
+        if (senderLength > length - (HEADER_BYTES - 4) || buffer.getLong(position + ID_OFFSET) <= previousId) {
+            return -1;
+        }
+        return position + 4 + length;
+    }
+
+    // Largest index slot whose id is at most id, or -1.
+    private static int floor(long[] ids, int size, long id) {
+        int slot = Arrays.binarySearch(ids, 0, size, id);
+        return slot >= 0 ? slot : -slot - 2;
+    }
+
+    private static int crc(ByteBuffer buffer, int position, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(position + VERSION_OFFSET, length - 4));
+        return (int) crc.getValue();
+    }
+
+    private static String string(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static MappedByteBuffer map(Path file, FileChannel.MapMode mode, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(mode, 0, size);
+        }
+    }
+
+    static long toMicros(LocalDateTime timestamp) {
+        return timestamp.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + timestamp.getNano() / 1_000;
+    }
+
+    static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000), (int) Math.floorMod(micros, 1_000_000) * 1_000, ZoneOffset.UTC);
+    }
+}
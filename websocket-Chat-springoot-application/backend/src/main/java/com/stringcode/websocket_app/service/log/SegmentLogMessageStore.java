@@ -0,0 +1,261 @@
+package com.stringcode.websocket_app.service.log;
+
+import com.stringcode.websocket_app.dto.ChatMessageDto;
+import com.stringcode.websocket_app.model.ChatMessage;
+import com.stringcode.websocket_app.service.MessageStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Stores messages in an append-only log per room on local disk, one directory per
+ * room (the room id, base64url-encoded) holding its {@link Segment} files.
+ * <p>
+ * Ids come from one counter, taken under the room's append lock, so they increase
+ * within each room and are unique on this node; the counter restarts after the
+ * highest id found on disk. Each room's seq continues after the highest one in its
+ * log. Appends reach the page cache immediately and are forced to disk every
+ * {@code flush-ms}, so a process crash loses nothing and a machine crash loses at most
+ * that window, whose seqs are then handed out again. Listeners get the forced messages
+ * in one batch per flush, off the room stripes. Flushes and compaction run on the
+ * store's own threads, so a slow disk does not hold up the application's scheduled jobs.
+ * <p>
+ * The log is local to one node: with several nodes each one only holds the messages
+ * published through it, so this store is meant for single-node deployments.
+ */
+@Component("messageStore")
+@ConditionalOnProperty(name = "chat.store.type", havingValue = "log")
+public class SegmentLogMessageStore implements MessageStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentLogMessageStore.class);
+
+    private final Path dir;
+    private final RoomLog.Settings settings;
+    private final Map<String, RoomLog> rooms = new ConcurrentHashMap<>();
+    private final AtomicLong lastId = new AtomicLong();
+    // Appended since the last flush, in append order; handed to the listeners once forced.
+    private final ConcurrentLinkedQueue<ChatMessage> unflushed = new ConcurrentLinkedQueue<>();
+    private final Timer appends;
+    private final Counter removedSegments;
+    private final List<Consumer<List<ChatMessage>>> listeners = new CopyOnWriteArrayList<>();
+
+    @Value("${chat.store.log.retention-days:0}")
+    private int retentionDays;
+
+    @Value("${chat.store.log.flush-ms:1000}")
+    private long flushMs;
+
+    @Value("${chat.store.log.compaction-ms:600000}")
+    private long compactionMs;
+
+    private ScheduledExecutorService maintenance;
+
+    public SegmentLogMessageStore(
+            MeterRegistry meterRegistry,
+            @Value("${chat.store.log.dir:data/message-log}") String dir,
+            @Value("${chat.store.log.segment-bytes:16777216}") int segmentBytes,
+            @Value("${chat.store.log.index-interval-bytes:4096}") int indexIntervalBytes,
+            @Value("${chat.store.log.segment-max-age-ms:86400000}") long segmentMaxAgeMs
+    ) {
+        this.dir = Path.of(dir);
+        this.settings = new RoomLog.Settings(segmentBytes, indexIntervalBytes, segmentMaxAgeMs);
+        this.appends = Timer.builder("chat.store.log.append")
+                .description("Time to append a message to its room's log")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(1_000))
+                .maximumExpectedValue(Duration.ofSeconds(1))
+                .register(meterRegistry);
+        this.removedSegments = Counter.builder("chat.store.log.segments.removed")
+                .description("Segment files removed by compaction and retention")
+                .register(meterRegistry);
+        Gauge.builder("chat.store.log.segments", this, SegmentLogMessageStore::segmentCount)
+                .description("Segment files across all room logs")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        Files.createDirectories(dir);
+        try (DirectoryStream<Path> roomDirs = Files.newDirectoryStream(dir, Files::isDirectory)) {
+            for (Path roomDir : roomDirs) {
+                String roomId = new String(Base64.getUrlDecoder().decode(roomDir.getFileName().toString()), StandardCharsets.UTF_8);
+                RoomLog log = RoomLog.open(roomId, roomDir, settings);
+                rooms.put(roomId, log);
+                lastId.accumulateAndGet(log.lastId(), Math::max);
+            }
+        }
+        logger.info("Opened message log in {} with {} rooms, last id {}", dir, rooms.size(), lastId.get());
+
+        // Two threads: merging a room's segments, which may take a while, leaves the other to flush.
+        maintenance = Executors.newScheduledThreadPool(2, r -> {
+            Thread thread = new Thread(r, "message-log");
+            thread.setDaemon(true);
+            return thread;
+        });
+        schedule("flush", flushMs, this::flush);
+        schedule("compaction", compactionMs, this::compact);
+    }
+
+    @PreDestroy
+    public void close() {
+        // Not interrupted: a file channel is closed when its thread is interrupted.
+        maintenance.shutdown();
+        flush();
+        for (RoomLog log : rooms.values()) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                logger.error("Failed to close the log of room {}", log.roomId, e);
+            }
+        }
+    }
+
+    @Override
+    public long nextSeq(String roomId) {
+        return rooms.computeIfAbsent(roomId, this::create).nextSeq();
+    }
+
+    @Override
+    public boolean append(ChatMessage message) {
+        long start = System.nanoTime();
+        try {
+            rooms.computeIfAbsent(message.getRoomId(), this::create).append(message, lastId::incrementAndGet);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            appends.record(Duration.ofNanos(System.nanoTime() - start));
+        }
+        unflushed.add(message);
+        return true;
+    }
+
+    @Override
+    public List<ChatMessageDto> findLatest(String roomId, int limit) {
+        return findBefore(roomId, Long.MAX_VALUE, limit);
+    }
+
+    @Override
+    public List<ChatMessageDto> findBefore(String roomId, long beforeId, int limit) {
+        RoomLog log = rooms.get(roomId);
+        if (log == null) {
+            return List.of();
+        }
+        List<ChatMessage> messages = log.before(beforeId, limit);
+        List<ChatMessageDto> dtos = new ArrayList<>(messages.size());
+        for (ChatMessage m : messages) {
+            dtos.add(new ChatMessageDto(m.getId(), m.getType(), m.getContent(), m.getSenderName(), m.getRoomId(), m.getTimestamp(), m.getSeq()));
+        }
+        return dtos;
+    }
+
+    // Reads each room past the id and keeps the lowest ids; only rooms with newer messages are read.
+    @Override
+    public List<ChatMessage> findAfter(long afterId, int limit) {
+        List<ChatMessage> messages = new ArrayList<>();
+        for (RoomLog log : rooms.values()) {
+            if (log.lastId() > afterId) {
+                messages.addAll(log.after(afterId, limit));
+            }
+        }
+        messages.sort(Comparator.comparing(ChatMessage::getId));
+        return messages.size() > limit ? new ArrayList<>(messages.subList(0, limit)) : messages;
+    }
+
+    @Override
+    public void addListener(Consumer<List<ChatMessage>> listener) {
+        listeners.add(listener);
+    }
+
+    public void flush() {
+        // Taken first: every message in the batch was appended before its room is forced below.
+        List<ChatMessage> batch = new ArrayList<>();
+        for (ChatMessage message = unflushed.poll(); message != null; message = unflushed.poll()) {
+            batch.add(message);
+        }
+        for (RoomLog log : rooms.values()) {
+            try {
+                log.flush();
+            } catch (IOException e) {
+                logger.error("Failed to flush the log of room {}", log.roomId, e);
+            }
+        }
+        if (!batch.isEmpty()) {
+            for (Consumer<List<ChatMessage>> listener : listeners) {
+                try {
+                    listener.accept(batch);
+                } catch (Exception e) {
+                    logger.error("Chat message listener failed for {} messages", batch.size(), e);
+                }
+            }
+        }
+    }
+
+    public void compact() {
+        LocalDateTime retainAfter = retentionDays > 0 ? LocalDateTime.now().minusDays(retentionDays) : null;
+        int removed = 0;
+        for (RoomLog log : rooms.values()) {
+            try {
+                removed += log.compact(retainAfter);
+            } catch (IOException e) {
+                logger.error("Failed to compact the log of room {}", log.roomId, e);
+            }
+        }
+        if (removed > 0) {
+            removedSegments.increment(removed);
+            logger.info("Message log compaction removed {} segment files", removed);
+        }
+    }
+
+    private void schedule(String name, long delayMs, Runnable task) {
+        maintenance.scheduleWithFixedDelay(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.error("Message log {} failed", name, e);
+            }
+        }, delayMs, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private RoomLog create(String roomId) {
+        String name = Base64.getUrlEncoder().withoutPadding().encodeToString(roomId.getBytes(StandardCharsets.UTF_8));
+        try {
+            return RoomLog.open(roomId, dir.resolve(name), settings);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private double segmentCount() {
+        return rooms.values().stream().mapToInt(RoomLog::segmentCount).sum();
+    }
+}
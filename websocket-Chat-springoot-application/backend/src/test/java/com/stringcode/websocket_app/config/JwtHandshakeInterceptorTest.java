@@ -0,0 +1,63 @@
+package com.stringcode.websocket_app.config;
+
+import com.stringcode.websocket_app.model.User;
+import com.stringcode.websocket_app.service.JwtService;
+import com.stringcode.websocket_app.service.UserPrincipalCache;
+import io.jsonwebtoken.MalformedJwtException;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.socket.WebSocketHandler;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class JwtHandshakeInterceptorTest {
+
+	private final JwtService jwtService = mock(JwtService.class);
+	private final UserPrincipalCache userPrincipalCache = mock(UserPrincipalCache.class);
+	private final JwtHandshakeInterceptor interceptor = new JwtHandshakeInterceptor(jwtService, userPrincipalCache);
+
+	@Test
+	void validTokenStoresUsernameInSessionAttributes() {
+		User alice = User.builder().username("alice").password("x").build();
+		when(jwtService.extractUsername("good")).thenReturn("alice");
+		when(userPrincipalCache.load("alice")).thenReturn(alice);
+		when(jwtService.isTokenValid("good", alice)).thenReturn(true);
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/ws");
+		request.setQueryString("token=good");
+		Map<String, Object> attributes = new HashMap<>();
+
+		boolean accepted = interceptor.beforeHandshake(new ServletServerHttpRequest(request),
+				new ServletServerHttpResponse(new MockHttpServletResponse()), mock(WebSocketHandler.class), attributes);
+
+		assertThat(accepted).isTrue();
+		assertThat(attributes).containsEntry(JwtHandshakeInterceptor.USERNAME_ATTRIBUTE, "alice");
+	}
+
+	@Test
+	void missingOrInvalidTokenIsRejectedWith401() throws Exception {
+		when(jwtService.extractUsername("bad")).thenThrow(new MalformedJwtException("bad"));
+		for (String query : new String[]{null, "token=bad"}) {
+			MockHttpServletRequest request = new MockHttpServletRequest("GET", "/ws");
+			request.setQueryString(query);
+			MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+			ServletServerHttpResponse response = new ServletServerHttpResponse(servletResponse);
+			Map<String, Object> attributes = new HashMap<>();
+
+			boolean accepted = interceptor.beforeHandshake(new ServletServerHttpRequest(request), response,
+					mock(WebSocketHandler.class), attributes);
+			response.flush();
+
+			assertThat(accepted).isFalse();
+			assertThat(servletResponse.getStatus()).isEqualTo(HttpStatus.UNAUTHORIZED.value());
+			assertThat(attributes).isEmpty();
+		}
+	}
+}
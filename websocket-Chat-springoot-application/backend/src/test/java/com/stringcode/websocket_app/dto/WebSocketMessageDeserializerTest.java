@@ -0,0 +1,84 @@
+package com.stringcode.websocket_app.dto;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import com.stringcode.websocket_app.config.JacksonConfig;
+import com.stringcode.websocket_app.dto.payload.ChatPayload;
+import com.stringcode.websocket_app.dto.payload.JoinPayload;
+import com.stringcode.websocket_app.dto.payload.ResumePayload;
+import com.stringcode.websocket_app.dto.payload.SignalPayload;
+import com.stringcode.websocket_app.enums.MessageType;
+import com.stringcode.websocket_app.enums.WireProtocol;
+import com.stringcode.websocket_app.service.WireCodec;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class WebSocketMessageDeserializerTest {
+
+	private final ObjectMapper objectMapper = new JacksonConfig().objectMapper();
+
+	@Test
+	void bindsPayloadToTheRecordForItsType() throws Exception {
+		WebSocketMessageDto join = objectMapper.readValue(
+				"{\"type\":\"JOIN\",\"payload\":{\"roomId\":\"general\",\"username\":\"alice\"},\"senderName\":\"alice\"}",
+				WebSocketMessageDto.class);
+		assertThat(join.getPayload()).isEqualTo(new JoinPayload("general"));
+		assertThat(join.getSenderName()).isEqualTo("alice");
+
+		WebSocketMessageDto chat = objectMapper.readValue(
+				"{\"payload\":{\"content\":\"hi\",\"roomId\":\"general\"},\"timestamp\":\"2024-05-01T12:30:15.123Z\",\"type\":\"CHAT\"}",
+				WebSocketMessageDto.class);
+		assertThat(chat.getPayload()).isEqualTo(new ChatPayload("hi", "general"));
+		assertThat(chat.getTimestamp()).isNotNull();
+
+		WebSocketMessageDto resume = objectMapper.readValue(
+				"{\"type\":\"RESUME\",\"payload\":{\"roomId\":\"general\",\"lastSeq\":42}}", WebSocketMessageDto.class);
+		assertThat(resume.getPayload()).isEqualTo(new ResumePayload("general", 42L));
+
+		WebSocketMessageDto ping = objectMapper.readValue(
+				"{\"type\":\"PING\",\"payload\":{\"username\":\"alice\"}}", WebSocketMessageDto.class);
+		assertThat(ping.getPayload()).isNull();
+	}
+
+	@Test
+	void signalPayloadIsRelayedVerbatimInEitherFormat() throws Exception {
+		String offer = "{\"type\":\"offer\",\"sdp\":\"v=0\\r\\no=- 46117 2 IN IP4 127.0.0.1\\r\\n\"}";
+		WebSocketMessageDto message = objectMapper.readValue(
+				"{\"type\":\"OFFER\",\"payload\":" + offer + "}", WebSocketMessageDto.class);
+		assertThat(message.getPayload()).isInstanceOf(SignalPayload.class);
+
+		String relayed = objectMapper.writeValueAsString(message);
+		assertThat(objectMapper.readTree(relayed).get("payload")).isEqualTo(objectMapper.readTree(offer));
+
+		WireCodec codec = new WireCodec(objectMapper);
+		BinaryMessage cbor = (BinaryMessage) codec.encode(message, WireProtocol.CBOR);
+		WebSocketMessageDto decoded = codec.decode(cbor);
+		TextMessage json = (TextMessage) codec.encode(decoded, WireProtocol.JSON);
+		assertThat(objectMapper.readTree(json.getPayload()).get("payload")).isEqualTo(objectMapper.readTree(offer));
+	}
+
+	@Test
+	void rejectsMalformedFrames() {
+		assertThatThrownBy(() -> objectMapper.readValue("{\"payload\":{\"roomId\":\"general\"}}", WebSocketMessageDto.class))
+				.isInstanceOf(MismatchedInputException.class);
+		assertThatThrownBy(() -> objectMapper.readValue("{\"type\":\"JOIN\",\"payload\":[1,2]}", WebSocketMessageDto.class))
+				.isInstanceOf(MismatchedInputException.class);
+		assertThatThrownBy(() -> objectMapper.readValue("[]", WebSocketMessageDto.class))
+				.isInstanceOf(MismatchedInputException.class);
+	}
+
+	@Test
+	void outboundMapPayloadsStillSerialize() throws Exception {
+		WebSocketMessageDto message = new WebSocketMessageDto(MessageType.SYSTEM, Map.of("message", "hi"), null, "SYSTEM", "SYSTEM");
+		assertThat(objectMapper.writeValueAsString(message)).contains("\"payload\":{\"message\":\"hi\"}").doesNotContain("seq");
+
+		message.setSeq(7L);
+		assertThat(objectMapper.readValue(objectMapper.writeValueAsString(message), WebSocketMessageDto.class).getSeq()).isEqualTo(7L);
+	}
+}
@@ -0,0 +1,49 @@
+package com.stringcode.websocket_app.repository;
+
+import com.stringcode.websocket_app.dto.ChatMessageDto;
+import com.stringcode.websocket_app.enums.MessageType;
+import com.stringcode.websocket_app.model.ChatMessage;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.data.domain.Limit;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+class ChatMessageRepositoryTest {
+
+	@Autowired
+	private ChatMessageRepository chatMessageRepository;
+
+	@Test
+	void keysetPagesWalkBackwardsWithoutGapsOrDuplicates() {
+		LocalDateTime base = LocalDateTime.of(2026, 1, 1, 12, 0);
+		for (int i = 0; i < 5; i++) {
+			// Two messages share each timestamp so the id tie-breaker is exercised.
+			save("room-a", "m" + i, base.plusSeconds(i / 2));
+		}
+		save("room-b", "other", base);
+
+		List<ChatMessageDto> latest = chatMessageRepository.findLatest("room-a", Limit.of(2));
+		assertThat(latest).extracting(ChatMessageDto::getContent).containsExactly("m4", "m3");
+
+		ChatMessageDto cursor = latest.get(1);
+		LocalDateTime ts = chatMessageRepository.findTimestamp("room-a", cursor.getId()).orElseThrow();
+		List<ChatMessageDto> older = chatMessageRepository.findBefore("room-a", ts, cursor.getId(), Limit.of(10));
+		assertThat(older).extracting(ChatMessageDto::getContent).containsExactly("m2", "m1", "m0");
+	}
+
+	private void save(String roomId, String content, LocalDateTime timestamp) {
+		chatMessageRepository.save(ChatMessage.builder()
+				.type(MessageType.CHAT)
+				.roomId(roomId)
+				.senderName("alice")
+				.content(content)
+				.timestamp(timestamp)
+				.build());
+	}
+}
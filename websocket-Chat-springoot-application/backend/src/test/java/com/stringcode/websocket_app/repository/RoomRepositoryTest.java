@@ -0,0 +1,47 @@
+package com.stringcode.websocket_app.repository;
+
+import com.stringcode.websocket_app.dto.RoomDto;
+import com.stringcode.websocket_app.model.Room;
+import com.stringcode.websocket_app.model.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+class RoomRepositoryTest {
+
+	@Autowired
+	private RoomRepository roomRepository;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Test
+	void summariesCarryCreatorNameNewestFirst() {
+		User alice = userRepository.save(User.builder().username("alice").password("x").build());
+		LocalDateTime base = LocalDateTime.of(2026, 1, 1, 12, 0);
+		save("old", alice, base);
+		save("new", alice, base.plusMinutes(1));
+		save("orphan", null, base.minusMinutes(1));
+
+		List<RoomDto> rooms = roomRepository.findAllSummaries();
+		assertThat(rooms).extracting(RoomDto::getRoomId).containsExactly("new", "old", "orphan");
+		assertThat(rooms).extracting(RoomDto::getCreatedBy).containsExactly("alice", "alice", null);
+		assertThat(roomRepository.findSummary("old")).get().extracting(RoomDto::getName).isEqualTo("Room old");
+		assertThat(roomRepository.findSummary("missing")).isEmpty();
+	}
+
+	private void save(String roomId, User createdBy, LocalDateTime createdAt) {
+		roomRepository.save(Room.builder()
+				.roomId(roomId)
+				.name("Room " + roomId)
+				.createdBy(createdBy)
+				.createdAt(createdAt)
+				.build());
+	}
+}
@@ -0,0 +1,100 @@
+package com.stringcode.websocket_app.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.*;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatMessagePartitionManagerTest {
+
+	private static final YearMonth OCTOBER = YearMonth.of(2026, 10);
+
+	@Test
+	void createsOnlyMonthsNoPartitionCovers() {
+		List<ChatMessagePartitionManager.Partition> partitions = List.of(
+				ChatMessagePartitionManager.parse("chat_messages_legacy", "FOR VALUES FROM (MINVALUE) TO ('2026-11-01 00:00:00')"),
+				ChatMessagePartitionManager.parse("chat_messages_default", "DEFAULT"),
+				ChatMessagePartitionManager.parse("chat_messages_y2026m12", "FOR VALUES FROM ('2026-12-01 00:00:00') TO ('2027-01-01 00:00:00')")
+		);
+
+		assertThat(ChatMessagePartitionManager.missingMonths(partitions, OCTOBER, 3))
+				.containsExactly(YearMonth.of(2026, 11), YearMonth.of(2027, 1));
+		assertThat(ChatMessagePartitionManager.partitionName(YearMonth.of(2027, 1))).isEqualTo("chat_messages_y2027m01");
+	}
+
+	@Test
+	void expiresPartitionsEndingBeforeTheRetentionWindow() {
+		List<ChatMessagePartitionManager.Partition> partitions = List.of(
+				ChatMessagePartitionManager.parse("chat_messages_legacy", "FOR VALUES FROM (MINVALUE) TO ('2026-08-01 00:00:00')"),
+				ChatMessagePartitionManager.parse("chat_messages_y2026m08", "FOR VALUES FROM ('2026-08-01 00:00:00') TO ('2026-09-01 00:00:00')"),
+				ChatMessagePartitionManager.parse("chat_messages_y2026m09", "FOR VALUES FROM ('2026-09-01 00:00:00') TO ('2026-10-01 00:00:00')"),
+				ChatMessagePartitionManager.parse("chat_messages_default", "DEFAULT")
+		);
+
+		assertThat(ChatMessagePartitionManager.expired(partitions, OCTOBER, 2))
+				.extracting(ChatMessagePartitionManager.Partition::name)
+				.containsExactly("chat_messages_legacy");
+		assertThat(ChatMessagePartitionManager.expired(partitions, OCTOBER, 1))
+				.extracting(ChatMessagePartitionManager.Partition::name)
+				.containsExactly("chat_messages_legacy", "chat_messages_y2026m08");
+	}
+
+	// Runs against a disposable local database, e.g.
+	// CHAT_TEST_POSTGRES_URL=jdbc:postgresql://localhost:5432/chat_test?user=postgres&password=postgres
+	@Test
+	@EnabledIfEnvironmentVariable(named = "CHAT_TEST_POSTGRES_URL", matches = ".+")
+	void convertsPlainTableAndArchivesExpiredPartitionsOnPostgres() throws Exception {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource(System.getenv("CHAT_TEST_POSTGRES_URL"));
+		JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+		jdbc.execute("drop table if exists chat_messages cascade");
+		jdbc.execute("drop schema if exists chat_archive cascade");
+		jdbc.execute("drop sequence if exists chat_messages_seq");
+		// The shape Hibernate gives the unpartitioned table.
+		jdbc.execute("create table chat_messages (id bigint primary key, content text, room_id varchar(255), " +
+				"sender_name varchar(255), \"timestamp\" timestamp(6), type varchar(255))");
+		jdbc.execute("create index idx_chat_messages_room_ts on chat_messages (room_id, \"timestamp\", id)");
+		jdbc.update("insert into chat_messages values (1, 'old', 'room-a', 'alice', timestamp '2026-06-15 10:00', 'CHAT')");
+		jdbc.update("insert into chat_messages values (2, 'recent', 'room-a', 'alice', timestamp '2026-08-15 10:00', 'CHAT')");
+
+		ChatMessagePartitionManager manager = manager(dataSource, 0);
+		manager.bootstrap();
+
+		assertThat(jdbc.queryForObject("select relkind from pg_class where relname = 'chat_messages'", String.class)).isEqualTo("p");
+		// The rows predate the sequence, which now continues one allocation past them.
+		assertThat(jdbc.queryForObject("select last_value from chat_messages_seq", Long.class)).isEqualTo(52);
+		assertThat(partitionNames(jdbc)).containsExactlyInAnyOrder("chat_messages_legacy", "chat_messages_default",
+				"chat_messages_y2026m10", "chat_messages_y2026m11", "chat_messages_y2026m12", "chat_messages_y2027m01");
+		jdbc.update("insert into chat_messages (id, content, room_id, sender_name, \"timestamp\", type) values (3, 'new', 'room-a', 'bob', timestamp '2026-11-02 10:00', 'CHAT')");
+		assertThat(jdbc.queryForObject("select count(*) from chat_messages_y2026m11", Integer.class)).isEqualTo(1);
+		assertThat(jdbc.queryForObject("select count(*) from chat_messages", Integer.class)).isEqualTo(3);
+
+		// The legacy partition ends with August, so keeping one month besides October expires it.
+		ReflectionTestUtils.setField(manager, "retentionMonths", 1);
+		manager.maintain();
+		assertThat(partitionNames(jdbc)).doesNotContain("chat_messages_legacy");
+		assertThat(jdbc.queryForObject("select count(*) from chat_archive.chat_messages_legacy", Integer.class)).isEqualTo(2);
+		assertThat(jdbc.queryForObject("select count(*) from chat_messages", Integer.class)).isEqualTo(1);
+	}
+
+	private static ChatMessagePartitionManager manager(DriverManagerDataSource dataSource, int retentionMonths) {
+		Clock clock = Clock.fixed(LocalDateTime.of(2026, 10, 15, 12, 0).toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+		ChatMessagePartitionManager manager = new ChatMessagePartitionManager(dataSource, clock);
+		ReflectionTestUtils.setField(manager, "enabled", true);
+		ReflectionTestUtils.setField(manager, "monthsAhead", 3);
+		ReflectionTestUtils.setField(manager, "retentionMonths", retentionMonths);
+		ReflectionTestUtils.setField(manager, "retentionAction", "detach");
+		ReflectionTestUtils.setField(manager, "archiveSchema", "chat_archive");
+		return manager;
+	}
+
+	private static List<String> partitionNames(JdbcTemplate jdbc) {
+		return jdbc.queryForList("select c.relname from pg_inherits i join pg_class c on c.oid = i.inhrelid " +
+				"where i.inhparent = 'chat_messages'::regclass", String.class);
+	}
+}
@@ -0,0 +1,88 @@
+package com.stringcode.websocket_app.service;
+
+import com.stringcode.websocket_app.enums.MessageType;
+import com.stringcode.websocket_app.model.ChatMessage;
+import com.stringcode.websocket_app.repository.ChatMessageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class ChatMessageWriterTest {
+
+	private final ChatMessageRepository repository = mock(ChatMessageRepository.class);
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final ChatMessageWriter writer = new ChatMessageWriter(repository, meterRegistry, 100);
+	private final List<ChatMessage> notified = new CopyOnWriteArrayList<>();
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		writer.stop();
+	}
+
+	@Test
+	void batchWithABadRowIsSavedRowByRowAndTheBadRowDeadLettered() throws Exception {
+		start();
+		ChatMessage bad = message("x".repeat(300));
+		doThrow(new DataIntegrityViolationException("value too long")).when(repository).saveAll(anyList());
+		when(repository.save(any())).thenAnswer(inv -> {
+			if (inv.getArgument(0) == bad) {
+				throw new DataIntegrityViolationException("value too long");
+			}
+			return inv.getArgument(0);
+		});
+
+		writer.enqueue(message("a"));
+		writer.enqueue(bad);
+		writer.enqueue(message("b"));
+
+		await().until(() -> notified.size() == 2);
+		assertThat(notified).extracting(ChatMessage::getRoomId).doesNotContain(bad.getRoomId());
+		assertThat(meterRegistry.get("chat.persistence.dead.letters").counter().count()).isEqualTo(1);
+		verify(repository, times(3)).saveAll(anyList());
+	}
+
+	@Test
+	void rowsAreKeptWhileTheDatabaseIsDown() throws Exception {
+		start();
+		doThrow(new DataAccessResourceFailureException("down")).when(repository).saveAll(anyList());
+		doThrow(new DataAccessResourceFailureException("down")).doAnswer(inv -> inv.getArgument(0))
+				.when(repository).save(any());
+
+		writer.enqueue(message("a"));
+
+		await().until(() -> notified.size() == 1);
+		assertThat(meterRegistry.get("chat.persistence.dead.letters").counter().count()).isZero();
+	}
+
+	private void start() {
+		ReflectionTestUtils.setField(writer, "batchSize", 10);
+		ReflectionTestUtils.setField(writer, "flushIntervalMs", 10L);
+		ReflectionTestUtils.setField(writer, "shutdownTimeoutMs", 5000L);
+		ReflectionTestUtils.setField(writer, "maxBatchRetries", 3);
+		writer.addListener(notified::addAll);
+		writer.start();
+	}
+
+	private static ChatMessage message(String roomId) {
+		return ChatMessage.builder()
+				.type(MessageType.CHAT)
+				.content("hi")
+				.senderName("alice")
+				.roomId(roomId)
+				.timestamp(LocalDateTime.now())
+				.build();
+	}
+}
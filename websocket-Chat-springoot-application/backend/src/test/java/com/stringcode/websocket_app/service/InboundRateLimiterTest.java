@@ -0,0 +1,133 @@
+package com.stringcode.websocket_app.service;
+
+import com.stringcode.websocket_app.enums.MessageType;
+import com.stringcode.websocket_app.service.InboundRateLimiter.Action;
+import com.stringcode.websocket_app.service.InboundRateLimiter.Limit;
+import com.stringcode.websocket_app.service.InboundRateLimiter.Policy;
+import com.stringcode.websocket_app.service.InboundRateLimiter.Verdict;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class InboundRateLimiterTest {
+
+	// Slow enough that nothing refills while a test runs.
+	private static final Limit TWO = new Limit(0.001, 2);
+
+	private final SessionRegistry sessionRegistry = mock(SessionRegistry.class);
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private InboundRateLimiter limiter;
+
+	@BeforeEach
+	void setUp() {
+		limiter = limiter(Map.of(
+				MessageType.CHAT, new Policy(TWO, null, new Limit(0.001, 3), null),
+				MessageType.CALL_REQUEST, new Policy(null, TWO, null, Action.CLOSE)));
+	}
+
+	@Test
+	void sessionOverItsTypeLimitHasFramesDroppedWhileOthersAreUnaffected() {
+		WebSocketSession first = session("1");
+		WebSocketSession second = session("2");
+		limiter.open(first, "alice");
+		limiter.open(second, "bob");
+
+		assertThat(limiter.admit(first, MessageType.CHAT)).isEqualTo(Verdict.ALLOW);
+		assertThat(limiter.admit(first, MessageType.CHAT)).isEqualTo(Verdict.ALLOW);
+		assertThat(limiter.admit(first, MessageType.CHAT)).isEqualTo(Verdict.DROP);
+		assertThat(limiter.admit(first, MessageType.PING)).isEqualTo(Verdict.ALLOW);
+		assertThat(limiter.admit(second, MessageType.CHAT)).isEqualTo(Verdict.ALLOW);
+		assertThat(throttled("CHAT", "session")).isEqualTo(1);
+	}
+
+	@Test
+	void userLimitIsSharedByAllTheirSessionsAndClosesWhenThePolicySaysSo() {
+		WebSocketSession laptop = session("1");
+		WebSocketSession phone = session("2");
+		limiter.open(laptop, "alice");
+		limiter.open(phone, "alice");
+
+		assertThat(limiter.admit(laptop, MessageType.CALL_REQUEST)).isEqualTo(Verdict.ALLOW);
+		assertThat(limiter.admit(phone, MessageType.CALL_REQUEST)).isEqualTo(Verdict.ALLOW);
+		assertThat(limiter.admit(phone, MessageType.CALL_REQUEST)).isEqualTo(Verdict.CLOSE);
+		assertThat(throttled("CALL_REQUEST", "user")).isEqualTo(1);
+	}
+
+	@Test
+	void roomLimitOnlyEverDrops() {
+		when(sessionRegistry.getRoom("alice")).thenReturn("lobby");
+		when(sessionRegistry.getRoom("bob")).thenReturn("lobby");
+		WebSocketSession alice = session("1");
+		WebSocketSession bob = session("2");
+		limiter.open(alice, "alice");
+		limiter.open(bob, "bob");
+
+		assertThat(limiter.admit(alice, MessageType.CHAT)).isEqualTo(Verdict.ALLOW);
+		assertThat(limiter.admit(alice, MessageType.CHAT)).isEqualTo(Verdict.ALLOW);
+		assertThat(limiter.admit(bob, MessageType.CHAT)).isEqualTo(Verdict.ALLOW);
+		assertThat(limiter.admit(bob, MessageType.CHAT)).isEqualTo(Verdict.DROP);
+		assertThat(throttled("CHAT", "room")).isEqualTo(1);
+	}
+
+	@Test
+	void frameBudgetIsChargedBeforeDecodingAndForgottenOnClose() {
+		ReflectionTestUtils.setField(limiter, "framesBurst", 1);
+		WebSocketSession session = session("1");
+		limiter.open(session, "alice");
+
+		assertThat(limiter.admitFrame(session)).isEqualTo(Verdict.ALLOW);
+		assertThat(limiter.admitFrame(session)).isEqualTo(Verdict.CLOSE);
+		assertThat(throttled("ANY", "frames")).isEqualTo(1);
+
+		limiter.close(session);
+		assertThat(limiter.admitFrame(session)).isEqualTo(Verdict.ALLOW);
+	}
+
+	@Test
+	void policiesAreBoundFromTheEnvironment() {
+		MockEnvironment environment = new MockEnvironment()
+				.withProperty("chat.rate-limit.policies.ICE_CANDIDATE.session.per-second", "0.001")
+				.withProperty("chat.rate-limit.policies.ICE_CANDIDATE.session.burst", "1")
+				.withProperty("chat.rate-limit.policies.ICE_CANDIDATE.action", "close");
+		InboundRateLimiter bound = new InboundRateLimiter(sessionRegistry, meterRegistry, environment);
+		enable(bound);
+		WebSocketSession session = session("1");
+		bound.open(session, "alice");
+
+		assertThat(bound.admit(session, MessageType.ICE_CANDIDATE)).isEqualTo(Verdict.ALLOW);
+		assertThat(bound.admit(session, MessageType.ICE_CANDIDATE)).isEqualTo(Verdict.CLOSE);
+		assertThat(bound.admit(session, MessageType.CHAT)).isEqualTo(Verdict.ALLOW);
+	}
+
+	private InboundRateLimiter limiter(Map<MessageType, Policy> policies) {
+		InboundRateLimiter limiter = new InboundRateLimiter(sessionRegistry, meterRegistry, policies);
+		enable(limiter);
+		return limiter;
+	}
+
+	private static void enable(InboundRateLimiter limiter) {
+		ReflectionTestUtils.setField(limiter, "enabled", true);
+		ReflectionTestUtils.setField(limiter, "framesPerSecond", 0.001);
+		ReflectionTestUtils.setField(limiter, "framesBurst", 100);
+		ReflectionTestUtils.setField(limiter, "framesAction", Action.CLOSE);
+	}
+
+	private double throttled(String type, String scope) {
+		return meterRegistry.get("chat.inbound.throttled").tag("type", type).tag("scope", scope).counter().count();
+	}
+
+	private static WebSocketSession session(String id) {
+		WebSocketSession session = mock(WebSocketSession.class);
+		when(session.getId()).thenReturn(id);
+		return session;
+	}
+}
@@ -0,0 +1,59 @@
+package com.stringcode.websocket_app.service;
+
+import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JwtServiceTest {
+
+	private static final String SECRET = "9a4f4c35456545445258584850524b584e4b524b584e4b524b584e4b524b584e";
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final JwtService jwtService = new JwtService(meterRegistry);
+	private final UserDetails alice = User.withUsername("alice").password("x").build();
+
+	@BeforeEach
+	void setUp() {
+		ReflectionTestUtils.setField(jwtService, "secretKey", SECRET);
+		ReflectionTestUtils.setField(jwtService, "jwtExpiration", 60_000L);
+		ReflectionTestUtils.setField(jwtService, "verifiedCacheSize", 100L);
+		jwtService.init();
+	}
+
+	@Test
+	void verifiesTokenOnceAndServesLaterChecksFromCache() {
+		String token = jwtService.generateToken(alice);
+
+		assertThat(jwtService.extractUsername(token)).isEqualTo("alice");
+		assertThat(jwtService.isTokenValid(token, alice)).isTrue();
+		assertThat(jwtService.isTokenValid(token, User.withUsername("bob").password("x").build())).isFalse();
+
+		assertThat(meterRegistry.get("cache.gets").tag("result", "miss").functionCounter().count()).isEqualTo(1);
+		assertThat(meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count()).isEqualTo(2);
+	}
+
+	@Test
+	void rejectsTamperedTokenWithoutCachingIt() {
+		String token = jwtService.generateToken(alice);
+		String tampered = token.substring(0, token.length() - 2) + (token.endsWith("A") ? "BB" : "AA");
+
+		assertThatThrownBy(() -> jwtService.extractUsername(tampered)).isInstanceOf(JwtException.class);
+		assertThatThrownBy(() -> jwtService.extractUsername(tampered)).isInstanceOf(JwtException.class);
+		assertThat(meterRegistry.get("cache.size").gauge().value()).isZero();
+	}
+
+	@Test
+	void expiredTokenIsRejected() {
+		ReflectionTestUtils.setField(jwtService, "jwtExpiration", -1_000L);
+		String token = jwtService.generateToken(alice);
+
+		assertThatThrownBy(() -> jwtService.isTokenValid(token, alice)).isInstanceOf(JwtException.class);
+	}
+}
@@ -0,0 +1,162 @@
+package com.stringcode.websocket_app.service;
+
+import com.stringcode.websocket_app.dto.ChatMessageDto;
+import com.stringcode.websocket_app.enums.MessageType;
+import com.stringcode.websocket_app.model.ChatMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MessageSearchIndexTest {
+
+	@TempDir
+	Path dir;
+
+	private final MessageStore store = mock(MessageStore.class);
+	private final List<ChatMessage> persisted = new ArrayList<>();
+	private MessageSearchIndex index;
+
+	@AfterEach
+	void closeIndex() throws Exception {
+		if (index != null) {
+			index.close();
+		}
+	}
+
+	@Test
+	void ranksMatchesAndFiltersByRoom() throws Exception {
+		index = open();
+		index.index(List.of(
+				message(1, "room-a", "deploy the release tonight"),
+				message(2, "room-a", "release release release notes"),
+				message(3, "room-b", "release party"),
+				message(4, "room-a", "lunch anyone?")
+		));
+		index.refresh();
+
+		assertThat(index.search("room-a", "Release", 0, 10)).extracting(ChatMessageDto::getId).containsExactly(2L, 1L);
+		assertThat(index.search("room-a", "Release", 0, 10)).extracting(ChatMessageDto::getSeq).containsExactly(20L, 10L);
+		assertThat(index.search(null, "release", 0, 10)).extracting(ChatMessageDto::getRoomId)
+				.containsExactlyInAnyOrder("room-a", "room-a", "room-b");
+		assertThat(index.search("room-a", "release tonight", 0, 10)).extracting(ChatMessageDto::getId).containsExactly(1L);
+		assertThat(index.search(null, "release", 1, 2)).hasSize(1);
+		assertThat(index.search(null, "   ", 0, 10)).isEmpty();
+	}
+
+	@Test
+	void survivesRestartAndCatchesUpWithTheStore() throws Exception {
+		index = open();
+		ChatMessage first = message(1, "room-a", "first words");
+		persisted.add(first);
+		index.index(List.of(first));
+		index.close();
+
+		// Persisted while the node was down.
+		persisted.add(message(2, "room-a", "second words"));
+		index = open();
+
+		await().untilAsserted(() -> {
+			index.refresh();
+			assertThat(index.search("room-a", "words", 0, 10)).extracting(ChatMessageDto::getId).containsExactly(2L, 1L);
+		});
+	}
+
+	@Test
+	void commitSkipsAndCloseWaitsForARunningCatchUpBatch() throws Exception {
+		for (int id = 1; id <= 3; id++) {
+			persisted.add(message(id, "room-a", "words " + id));
+		}
+		CountDownLatch reading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger reads = new AtomicInteger();
+		index = open();
+		ReflectionTestUtils.setField(index, "catchUpBatchSize", 1);
+		Thread catchUp = new Thread(index::catchUp);
+		// Only the catch-up started here blocks; the one open() started finds nothing new.
+		when(store.findAfter(anyLong(), anyInt())).thenAnswer(invocation -> {
+			if (Thread.currentThread() != catchUp) {
+				return List.of();
+			}
+			reads.incrementAndGet();
+			reading.countDown();
+			release.await(5, TimeUnit.SECONDS);
+			long after = invocation.getArgument(0);
+			return persisted.stream().filter(m -> m.getId() > after).limit(1).toList();
+		});
+		catchUp.start();
+		assertThat(reading.await(5, TimeUnit.SECONDS)).isTrue();
+		// A commit skips the period instead of waiting for the batch.
+		CompletableFuture.runAsync(() -> {
+			try {
+				index.commit();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}).get(1, TimeUnit.SECONDS);
+
+		CompletableFuture<Void> closing = CompletableFuture.runAsync(() -> {
+			try {
+				index.close();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+		Thread.sleep(200);
+		assertThat(closing).isNotDone();
+
+		release.countDown();
+		closing.get(5, TimeUnit.SECONDS);
+		catchUp.join(5000);
+		assertThat(reads.get()).isEqualTo(1);
+		index = null;
+	}
+
+	private MessageSearchIndex open() throws Exception {
+		when(store.findAfter(anyLong(), anyInt())).thenAnswer(invocation -> {
+			long after = invocation.getArgument(0);
+			return persisted.stream().filter(m -> m.getId() > after).toList();
+		});
+		MessageSearchIndex opened = new MessageSearchIndex(store, new SimpleMeterRegistry(), dir.toString());
+		ReflectionTestUtils.setField(opened, "maxPageSize", 100);
+		ReflectionTestUtils.setField(opened, "maxDepth", 1000);
+		ReflectionTestUtils.setField(opened, "catchUpBatchSize", 1000);
+		ReflectionTestUtils.setField(opened, "catchUpOverlap", 1000L);
+		ReflectionTestUtils.setField(opened, "refreshMs", 1000L);
+		ReflectionTestUtils.setField(opened, "commitMs", 10_000L);
+		ReflectionTestUtils.setField(opened, "catchUpMs", 60_000L);
+		opened.open();
+		return opened;
+	}
+
+	private static ChatMessage message(long id, String roomId, String content) {
+		return ChatMessage.builder()
+				.id(id)
+				.type(MessageType.CHAT)
+				.content(content)
+				.senderName("alice")
+				.roomId(roomId)
+				.seq(id * 10)
+				.timestamp(LocalDateTime.of(2026, 1, 1, 12, 0).plusSeconds(id))
+				.build();
+	}
+}
@@ -0,0 +1,154 @@
+package com.stringcode.websocket_app.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.websocket.RemoteEndpoint;
+import jakarta.websocket.SendHandler;
+import jakarta.websocket.SendResult;
+import jakarta.websocket.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class OutboundQueueManagerTest {
+
+	private final ChatService chatService = mock(ChatService.class);
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final OutboundQueueManager manager = new OutboundQueueManager(chatService, meterRegistry, 4);
+
+	@AfterEach
+	void tearDown() {
+		manager.shutdown();
+	}
+
+	@Test
+	void framesAreDeliveredInOrderOffTheCallingThread() throws Exception {
+		ReflectionTestUtils.setField(manager, "bufferSizeLimit", 1024);
+		WebSocketSession raw = session("1");
+		CountDownLatch delivered = new CountDownLatch(2);
+		doAnswer(inv -> {
+			delivered.countDown();
+			return null;
+		}).when(raw).sendMessage(any());
+
+		WebSocketSession queued = manager.open(raw);
+		queued.sendMessage(new TextMessage("a"));
+		queued.sendMessage(new TextMessage("b"));
+
+		assertThat(delivered.await(5, TimeUnit.SECONDS)).isTrue();
+		var order = inOrder(raw);
+		order.verify(raw).sendMessage(new TextMessage("a"));
+		order.verify(raw).sendMessage(new TextMessage("b"));
+	}
+
+	@Test
+	void sessionOverBufferLimitIsEvictedAndUnregistered() throws Exception {
+		ReflectionTestUtils.setField(manager, "bufferSizeLimit", 10);
+		WebSocketSession raw = session("1");
+		CountDownLatch blocked = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		doAnswer(inv -> {
+			blocked.countDown();
+			release.await(5, TimeUnit.SECONDS);
+			return null;
+		}).when(raw).sendMessage(any());
+
+		WebSocketSession queued = manager.open(raw);
+		queued.sendMessage(new TextMessage("in-flight"));
+		assertThat(blocked.await(5, TimeUnit.SECONDS)).isTrue();
+		queued.sendMessage(new TextMessage("12345678901"));
+		release.countDown();
+
+		verify(chatService, timeout(5000)).unregister(queued);
+		verify(raw, timeout(5000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+		assertThat(meterRegistry.get("chat.outbound.evicted.sessions").counter().count()).isEqualTo(1);
+		assertThat(manager.get(raw)).isSameAs(raw);
+	}
+
+	@Test
+	void peersThatDoNotReadHoldNoWriterThread() throws Exception {
+		ReflectionTestUtils.setField(manager, "bufferSizeLimit", 1024);
+		ReflectionTestUtils.setField(manager, "sendTimeLimitMs", 50L);
+		// More stalled peers than writer threads: the container never completes their sends.
+		List<WebSocketSession> stalled = new ArrayList<>();
+		List<RemoteEndpoint.Async> stalledRemotes = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			RemoteEndpoint.Async remote = mock(RemoteEndpoint.Async.class);
+			WebSocketSession queued = manager.open(containerSession("stalled-" + i, remote));
+			queued.sendMessage(new TextMessage("first"));
+			queued.sendMessage(new TextMessage("second"));
+			stalled.add(queued);
+			stalledRemotes.add(remote);
+		}
+		RemoteEndpoint.Async remote = mock(RemoteEndpoint.Async.class);
+		doAnswer(inv -> {
+			inv.getArgument(1, SendHandler.class).onResult(new SendResult(mock(Session.class)));
+			return null;
+		}).when(remote).sendText(any(), any());
+		WebSocketSession healthy = manager.open(containerSession("healthy", remote));
+		healthy.sendMessage(new TextMessage("a"));
+		healthy.sendMessage(new TextMessage("b"));
+
+		var order = inOrder(remote);
+		order.verify(remote, timeout(5000)).sendText(eq("a"), any());
+		order.verify(remote, timeout(5000)).sendText(eq("b"), any());
+		for (RemoteEndpoint.Async stalledRemote : stalledRemotes) {
+			verify(stalledRemote, timeout(5000)).sendText(eq("first"), any());
+			verify(stalledRemote, never()).sendText(eq("second"), any());
+		}
+
+		Thread.sleep(100);
+		manager.evictStalledSessions();
+		for (WebSocketSession queued : stalled) {
+			verify(chatService, timeout(5000)).unregister(queued);
+		}
+		verify(chatService, never()).unregister(healthy);
+	}
+
+	@Test
+	void sessionsAreStillClosedOnceThePoolsAreShutDown() throws Exception {
+		ReflectionTestUtils.setField(manager, "bufferSizeLimit", 1024);
+		WebSocketSession raw = session("1");
+		QueuedWebSocketSession queued = manager.open(raw);
+		manager.shutdown();
+
+		queued.sendMessage(new TextMessage("never written"));
+		manager.closeWithStatus(raw, CloseStatus.POLICY_VIOLATION);
+
+		verify(chatService).unregister(queued);
+		verify(raw).close(CloseStatus.POLICY_VIOLATION);
+		verify(raw, never()).sendMessage(any());
+		assertThat(queued.getQueuedFrames()).isZero();
+		assertThat(meterRegistry.get("chat.outbound.dropped.frames").counter().count()).isEqualTo(1);
+	}
+
+	private static WebSocketSession containerSession(String id, RemoteEndpoint.Async remote) {
+		NativeWebSocketSession session = mock(NativeWebSocketSession.class);
+		when(session.getId()).thenReturn(id);
+		when(session.isOpen()).thenReturn(true);
+		Session nativeSession = mock(Session.class);
+		when(nativeSession.getAsyncRemote()).thenReturn(remote);
+		when(session.getNativeSession(Session.class)).thenReturn(nativeSession);
+		return session;
+	}
+
+	private static WebSocketSession session(String id) {
+		WebSocketSession session = mock(WebSocketSession.class);
+		when(session.getId()).thenReturn(id);
+		when(session.isOpen()).thenReturn(true);
+		return session;
+	}
+}
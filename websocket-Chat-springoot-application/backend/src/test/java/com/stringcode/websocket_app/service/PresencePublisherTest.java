@@ -0,0 +1,78 @@
+package com.stringcode.websocket_app.service;
+
+import com.stringcode.websocket_app.dto.WebSocketMessageDto;
+import com.stringcode.websocket_app.enums.MessageType;
+import com.stringcode.websocket_app.service.cluster.ClusterPresence;
+import com.stringcode.websocket_app.service.cluster.SingleNodeClusterBus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class PresencePublisherTest {
+
+	private final SessionRegistry registry = new SessionRegistry();
+	private final MessageBroadcaster broadcaster = mock(MessageBroadcaster.class);
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final PresencePublisher publisher = new PresencePublisher(
+			new ClusterPresence(new SingleNodeClusterBus(), registry), broadcaster, meterRegistry);
+
+	@Test
+	void burstOfJoinsIsPublishedAsOneFramePerScope() {
+		for (int i = 0; i < 3; i++) {
+			String user = "user" + i;
+			registry.register(session(String.valueOf(i)), user);
+			registry.join(user, "room");
+			publisher.userChanged(user);
+			publisher.roomChanged("room");
+		}
+
+		publisher.publish();
+
+		ArgumentCaptor<WebSocketMessageDto> online = ArgumentCaptor.forClass(WebSocketMessageDto.class);
+		verify(broadcaster, times(1)).broadcastToAll(online.capture());
+		assertThat(payload(online.getValue()).get("version")).isEqualTo(1L);
+		assertThat((List<?>) payload(online.getValue()).get("events")).hasSize(3);
+
+		ArgumentCaptor<WebSocketMessageDto> room = ArgumentCaptor.forClass(WebSocketMessageDto.class);
+		verify(broadcaster, times(1)).deliverToRoom(eq("room"), room.capture());
+		assertThat(room.getValue().getType()).isEqualTo(MessageType.PRESENCE_BATCH);
+		assertThat((List<?>) payload(room.getValue()).get("events")).hasSize(3);
+		assertThat(meterRegistry.get("chat.presence.changes.coalesced").counter().count()).isEqualTo(0);
+	}
+
+	@Test
+	void changesThatCancelOutWithinATickPublishNothing() {
+		WebSocketSession session = session("1");
+		registry.register(session, "alice");
+		publisher.userChanged("alice");
+		registry.unregister(session);
+		publisher.userChanged("alice");
+
+		publisher.publish();
+		publisher.publish();
+
+		verify(broadcaster, never()).broadcastToAll(any());
+		assertThat(meterRegistry.get("chat.presence.changes.coalesced").counter().count()).isEqualTo(2);
+		assertThat(meterRegistry.get("chat.presence.ticks.skipped").counter().count()).isEqualTo(1);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> payload(WebSocketMessageDto message) {
+		return (Map<String, Object>) message.getPayload();
+	}
+
+	private static WebSocketSession session(String id) {
+		WebSocketSession session = mock(WebSocketSession.class);
+		when(session.getId()).thenReturn(id);
+		return session;
+	}
+}
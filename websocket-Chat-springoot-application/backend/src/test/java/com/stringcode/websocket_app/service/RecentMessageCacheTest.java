@@ -0,0 +1,139 @@
+package com.stringcode.websocket_app.service;
+
+import com.stringcode.websocket_app.dto.ChatMessageDto;
+import com.stringcode.websocket_app.enums.MessageType;
+import com.stringcode.websocket_app.model.ChatMessage;
+import org.assertj.core.api.InstanceOfAssertFactories;
+import org.assertj.core.api.InstanceOfAssertFactory;
+import org.assertj.core.api.ListAssert;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class RecentMessageCacheTest {
+
+	private static final InstanceOfAssertFactory<List, ListAssert<ChatMessageDto>> DTOS = InstanceOfAssertFactories.list(ChatMessageDto.class);
+
+	private final MessageStore store = mock(MessageStore.class);
+	private final RecentMessageCache cache = new RecentMessageCache(store, 3, 60_000);
+
+	@Test
+	void warmUpPlacesPersistedHistoryBeforeLiveMessagesWithoutDuplicates() {
+		ChatMessage flushed = message(2L, "live-flushed");
+		cache.append(flushed);
+		cache.append(message(null, "live-pending"));
+		when(store.findLatest(eq("room"), anyInt())).thenReturn(List.of(dto(2L, "live-flushed"), dto(1L, "old")));
+
+		assertThat(cache.warm("room")).isTrue();
+		List<ChatMessageDto> latest = cache.latest("room", 10);
+
+		assertThat(latest).extracting(ChatMessageDto::getContent).containsExactly("old", "live-flushed", "live-pending");
+		cache.warm("room");
+		verify(store, times(1)).findLatest(eq("room"), anyInt());
+	}
+
+	@Test
+	void ringKeepsOnlyTheNewestEntries() {
+		when(store.findLatest(eq("room"), anyInt())).thenReturn(List.of());
+		cache.warm("room");
+		for (long i = 1; i <= 5; i++) {
+			cache.append(message(i, "m" + i));
+		}
+
+		assertThat(cache.latest("room", 10)).extracting(ChatMessageDto::getContent).containsExactly("m3", "m4", "m5");
+		assertThat(cache.before("room", 5L, 1)).get(DTOS).extracting(ChatMessageDto::getContent).containsExactly("m4");
+		assertThat(cache.before("room", 4L, 5)).isEmpty();
+	}
+
+	@Test
+	void continuesTheStoredSeqAndAnswersResumesItStillReaches() {
+		when(store.findLatest(eq("room"), anyInt())).thenReturn(List.of(dto(8L, "m8", 8L), dto(7L, "m7", 7L)));
+		cache.warm("room");
+		assertThat(cache.lastSeq("room")).isEqualTo(8);
+		for (long seq = 9; seq <= 11; seq++) {
+			ChatMessage m = message(seq, "m" + seq);
+			m.setSeq(seq);
+			cache.append(m);
+		}
+
+		assertThat(cache.lastSeq("room")).isEqualTo(11);
+		assertThat(cache.after("room", 9)).get(DTOS).extracting(ChatMessageDto::getContent).containsExactly("m10", "m11");
+		assertThat(cache.after("room", 8)).get(DTOS).extracting(ChatMessageDto::getContent).containsExactly("m9", "m10", "m11");
+		assertThat(cache.after("room", 11)).get(DTOS).isEmpty();
+		// m8 has been pushed out of the ring, so seq 8 can no longer be replayed from memory.
+		assertThat(cache.after("room", 7)).isEmpty();
+	}
+
+	@Test
+	void keepsItsOwnCopyAndTakesTheIdOnceTheStoreReportsIt() {
+		ArgumentCaptor<Consumer<List<ChatMessage>>> listener = ArgumentCaptor.captor();
+		verify(store).addListener(listener.capture());
+		when(store.findLatest(eq("room"), anyInt())).thenReturn(List.of());
+		cache.warm("room");
+		ChatMessage pending = message(null, "m1");
+		pending.setSeq(1L);
+		cache.append(pending);
+		assertThat(cache.latest("room", 10)).extracting(ChatMessageDto::getId).containsOnlyNulls();
+
+		// The writer sets the id on its instance; the cache only sees it through the listener.
+		pending.setId(41L);
+		assertThat(cache.latest("room", 10)).extracting(ChatMessageDto::getId).containsOnlyNulls();
+		listener.getValue().accept(List.of(pending));
+
+		assertThat(cache.latest("room", 10)).extracting(ChatMessageDto::getId).containsExactly(41L);
+		assertThat(cache.before("room", 41L, 10)).get(DTOS).isEmpty();
+	}
+
+	@Test
+	void keepsAnIdTheStoreReportsBeforeTheMessageIsAppended() {
+		ArgumentCaptor<Consumer<List<ChatMessage>>> listener = ArgumentCaptor.captor();
+		verify(store).addListener(listener.capture());
+		when(store.findLatest(eq("room"), anyInt())).thenReturn(List.of());
+		cache.warm("room");
+		ChatMessage stored = message(7L, "m1");
+		stored.setSeq(1L);
+		listener.getValue().accept(List.of(stored));
+
+		ChatMessage appended = message(null, "m1");
+		appended.setSeq(1L);
+		cache.append(appended);
+
+		assertThat(cache.latest("room", 10)).extracting(ChatMessageDto::getId).containsExactly(7L);
+	}
+
+	@Test
+	void readsNeverQueryTheStore() {
+		cache.append(message(null, "live"));
+
+		assertThat(cache.latest("room", 10)).extracting(ChatMessageDto::getContent).containsExactly("live");
+		assertThat(cache.before("room", 1L, 10)).isEmpty();
+		assertThat(cache.isWarm("room")).isFalse();
+		verify(store, never()).findLatest(any(), anyInt());
+
+		when(store.findLatest(eq("room"), anyInt())).thenThrow(new IllegalStateException("down"));
+		assertThat(cache.warm("room")).isFalse();
+		assertThat(cache.isWarm("room")).isFalse();
+	}
+
+	private static ChatMessage message(Long id, String content) {
+		return ChatMessage.builder().id(id).type(MessageType.CHAT).roomId("room").content(content)
+				.senderName("alice").timestamp(LocalDateTime.now()).build();
+	}
+
+	private static ChatMessageDto dto(Long id, String content) {
+		return dto(id, content, null);
+	}
+
+	private static ChatMessageDto dto(Long id, String content, Long seq) {
+		return new ChatMessageDto(id, MessageType.CHAT, content, "alice", "room", LocalDateTime.now(), seq);
+	}
+}
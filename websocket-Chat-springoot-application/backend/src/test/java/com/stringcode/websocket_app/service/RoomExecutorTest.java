@@ -0,0 +1,98 @@
+package com.stringcode.websocket_app.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RoomExecutorTest {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final RoomExecutor executor = new RoomExecutor(meterRegistry, 4, 2100);
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		executor.shutdown();
+	}
+
+	@Test
+	void tasksOfOneRoomRunInSubmissionOrderAcrossSubmitters() throws Exception {
+		List<Integer> seen = Collections.synchronizedList(new ArrayList<>());
+		List<Thread> submitters = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			int offset = t * 1000;
+			submitters.add(new Thread(() -> {
+				for (int i = 0; i < 500; i++) {
+					int value = offset + i;
+					executor.execute("general", () -> seen.add(value));
+				}
+			}));
+		}
+		submitters.forEach(Thread::start);
+		for (Thread submitter : submitters) {
+			submitter.join();
+		}
+		CountDownLatch done = new CountDownLatch(1);
+		executor.execute("general", done::countDown);
+		assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+
+		assertThat(seen).hasSize(2000);
+		for (int t = 0; t < 4; t++) {
+			int offset = t * 1000;
+			assertThat(seen.stream().filter(v -> v >= offset && v < offset + 1000).toList()).isSorted();
+		}
+	}
+
+	@Test
+	void aFullStripeShedsTasksInsteadOfBlockingTheSubmitter() throws Exception {
+		RoomExecutor small = new RoomExecutor(meterRegistry, 1, 1);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch running = new CountDownLatch(1);
+		try {
+			small.execute("a", () -> {
+				running.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+
+			assertThat(small.execute("a", () -> { })).isTrue();
+			assertThat(small.execute("a", () -> { })).isFalse();
+			assertThat(meterRegistry.get("chat.rooms.shed.tasks").counter().count()).isEqualTo(1);
+		} finally {
+			release.countDown();
+			small.shutdown();
+		}
+	}
+
+	@Test
+	void aBlockedRoomDoesNotStallRoomsOnOtherStripes() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		executor.execute("a", () -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		String other = "b";
+		while (Math.floorMod(other.hashCode(), 4) == Math.floorMod("a".hashCode(), 4)) {
+			other = other + "x";
+		}
+		CountDownLatch ran = new CountDownLatch(1);
+		executor.execute(other, ran::countDown);
+
+		assertThat(ran.await(5, TimeUnit.SECONDS)).isTrue();
+		release.countDown();
+	}
+}
@@ -0,0 +1,46 @@
+package com.stringcode.websocket_app.service;
+
+import com.stringcode.websocket_app.dto.RoomDto;
+import com.stringcode.websocket_app.repository.RoomRepository;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class RoomListCacheTest {
+
+	private final RoomRepository repository = mock(RoomRepository.class);
+	private final RoomListCache cache = new RoomListCache(repository, 60_000);
+
+	@Test
+	void servesFromMemoryUntilInvalidated() {
+		when(repository.findAllSummaries()).thenReturn(List.of(room("a")));
+
+		RoomListCache.Snapshot first = cache.get();
+		assertThat(cache.get()).isSameAs(first);
+		verify(repository, times(1)).findAllSummaries();
+
+		when(repository.findAllSummaries()).thenReturn(List.of(room("b"), room("a")));
+		cache.invalidate();
+		RoomListCache.Snapshot second = cache.get();
+		assertThat(second.rooms()).extracting(RoomDto::getRoomId).containsExactly("b", "a");
+		assertThat(second.etag()).isNotEqualTo(first.etag());
+	}
+
+	@Test
+	void etagDependsOnlyOnContent() {
+		when(repository.findAllSummaries()).thenReturn(List.of(room("a")));
+		String etag = cache.get().etag();
+
+		cache.invalidate();
+		assertThat(cache.get().etag()).isEqualTo(etag);
+		assertThat(new RoomListCache(repository, 60_000).get().etag()).isEqualTo(etag);
+	}
+
+	private static RoomDto room(String id) {
+		return new RoomDto(id, "Room " + id, null, "alice", LocalDateTime.of(2026, 1, 1, 12, 0));
+	}
+}
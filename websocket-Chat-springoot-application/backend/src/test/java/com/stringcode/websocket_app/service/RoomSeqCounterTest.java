@@ -0,0 +1,82 @@
+package com.stringcode.websocket_app.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RoomSeqCounterTest {
+
+	// What chat_room_seq holds, and the blocks taken from it.
+	private final Map<String, Long> table = new HashMap<>();
+	private final List<String> reservations = new ArrayList<>();
+	private final RoomSeqCounter counter = new RoomSeqCounter((roomId, size) -> {
+		reservations.add(roomId);
+		return table.merge(roomId, (long) size, Long::sum);
+	}, 4);
+
+	@Test
+	void takesSeqsFromMemoryAndReservesTheNextBlockWhenHalfIsUsed() throws Exception {
+		assertThatThrownBy(() -> counter.next("room")).isInstanceOf(IllegalStateException.class);
+
+		counter.reserve("room");
+		assertThat(counter.next("room")).isEqualTo(1);
+		counter.reserve("room");
+		assertThat(counter.next("room")).isEqualTo(2);
+		assertThat(reservations).hasSize(1);
+
+		// Two left of four: the next block is reserved ahead of need and used once the first runs out.
+		counter.reserve("room");
+		counter.reserve("room");
+		assertThat(reservations).hasSize(2);
+		assertThat(List.of(counter.next("room"), counter.next("room"), counter.next("room"))).containsExactly(3L, 4L, 5L);
+	}
+
+	@Test
+	void aSeqFromAnotherNodeSkipsThePartOfTheBlocksBelowIt() throws Exception {
+		counter.reserve("room");
+		assertThat(counter.next("room")).isEqualTo(1);
+		// Another node took 5 to 8 and sent 6.
+		table.put("room", 8L);
+		counter.seen("room", 6);
+		assertThatThrownBy(() -> counter.next("room")).isInstanceOf(IllegalStateException.class);
+
+		counter.reserve("room");
+		assertThat(counter.next("room")).isEqualTo(9);
+	}
+
+	// Runs against a disposable local database, e.g.
+	// CHAT_TEST_POSTGRES_URL=jdbc:postgresql://localhost:5432/chat_test?user=postgres&password=postgres
+	@Test
+	@EnabledIfEnvironmentVariable(named = "CHAT_TEST_POSTGRES_URL", matches = ".+")
+	void reservesBlocksAfterTheStoredSeqsOnPostgres() throws Exception {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource(System.getenv("CHAT_TEST_POSTGRES_URL"));
+		JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+		jdbc.execute("drop table if exists chat_messages cascade");
+		jdbc.execute("drop table if exists chat_room_seq");
+		// The shape Hibernate gives RoomSeq.
+		jdbc.execute("create table chat_room_seq (room_id varchar(255) primary key, seq bigint not null)");
+		jdbc.execute("create table chat_messages (id bigint primary key, room_id varchar(255), seq bigint)");
+		jdbc.update("insert into chat_messages values (1, 'room-a', 6), (2, 'room-a', 7), (3, 'room-b', null)");
+
+		RoomSeqCounter first = new RoomSeqCounter(dataSource, 10);
+		first.reserve("room-a");
+		first.reserve("room-b");
+		assertThat(first.next("room-a")).isEqualTo(8);
+		assertThat(first.next("room-a")).isEqualTo(9);
+		assertThat(first.next("room-b")).isEqualTo(1);
+
+		// Another node, or this one after a restart, takes the block after the first one's.
+		RoomSeqCounter second = new RoomSeqCounter(dataSource, 10);
+		second.reserve("room-a");
+		assertThat(second.next("room-a")).isEqualTo(18);
+	}
+}
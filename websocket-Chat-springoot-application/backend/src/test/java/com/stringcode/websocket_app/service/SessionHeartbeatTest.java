@@ -0,0 +1,80 @@
+package com.stringcode.websocket_app.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class SessionHeartbeatTest {
+
+	private final ChatService chatService = mock(ChatService.class);
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final OutboundQueueManager manager = new OutboundQueueManager(chatService, meterRegistry, 4);
+	// Ping after 50 ms of silence, give up 50 ms later, 10 ms ticks.
+	private final SessionHeartbeat heartbeat = new SessionHeartbeat(manager, meterRegistry, 50, 50, 10);
+
+	@AfterEach
+	void tearDown() {
+		manager.shutdown();
+	}
+
+	@Test
+	void silentSessionIsPingedThenClosedWhileOneThatAnswersStays() throws Exception {
+		ReflectionTestUtils.setField(manager, "bufferSizeLimit", 1024);
+		WebSocketSession deadRaw = session("dead");
+		WebSocketSession liveRaw = session("live");
+		QueuedWebSocketSession dead = manager.open(deadRaw);
+		QueuedWebSocketSession live = manager.open(liveRaw);
+		// The live client answers every ping with a pong.
+		doAnswer(inv -> {
+			heartbeat.markActive(live);
+			return null;
+		}).when(liveRaw).sendMessage(any(PingMessage.class));
+		heartbeat.track(dead);
+		heartbeat.track(live);
+
+		for (int i = 0; i < 30; i++) {
+			heartbeat.tick();
+			Thread.sleep(10);
+		}
+
+		verify(deadRaw, timeout(5000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+		verify(chatService, timeout(5000)).unregister(dead);
+		verify(deadRaw, times(1)).sendMessage(any(PingMessage.class));
+		verify(liveRaw, atLeast(2)).sendMessage(any(PingMessage.class));
+		verify(liveRaw, never()).close(any());
+		verify(chatService, never()).unregister(live);
+		assertThat(meterRegistry.get("chat.heartbeat.reaped.sessions").counter().count()).isEqualTo(1);
+		assertThat(meterRegistry.get("chat.heartbeat.tracked.sessions").gauge().value()).isEqualTo(1);
+	}
+
+	@Test
+	void closedSessionsLeaveTheWheelWithoutAPing() throws Exception {
+		WebSocketSession raw = session("1");
+		QueuedWebSocketSession queued = manager.open(raw);
+		heartbeat.track(queued);
+		manager.close(raw);
+
+		for (int i = 0; i < 10; i++) {
+			heartbeat.tick();
+			Thread.sleep(10);
+		}
+
+		verify(raw, never()).sendMessage(any());
+		assertThat(meterRegistry.get("chat.heartbeat.tracked.sessions").gauge().value()).isZero();
+	}
+
+	private static WebSocketSession session(String id) {
+		WebSocketSession session = mock(WebSocketSession.class);
+		when(session.getId()).thenReturn(id);
+		when(session.isOpen()).thenReturn(true);
+		return session;
+	}
+}
@@ -0,0 +1,101 @@
+package com.stringcode.websocket_app.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.WebSocketSession;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SessionRegistryTest {
+
+	private final SessionRegistry registry = new SessionRegistry();
+
+	@Test
+	void joinMovesAllUserSessionsBetweenRooms() {
+		WebSocketSession tab1 = session("1");
+		WebSocketSession tab2 = session("2");
+		registry.register(tab1, "alice");
+		registry.register(tab2, "alice");
+
+		assertThat(registry.join("alice", "room-a")).isNull();
+		assertThat(registry.getRoomSessions("room-a")).containsExactlyInAnyOrder(tab1, tab2);
+
+		assertThat(registry.join("alice", "room-b")).isEqualTo("room-a");
+		assertThat(registry.getRoomSessions("room-a")).isEmpty();
+		assertThat(registry.getRoomUsers("room-a")).isEmpty();
+		assertThat(registry.getRoomSessions("room-b")).containsExactlyInAnyOrder(tab1, tab2);
+	}
+
+	@Test
+	void userLeavesRoomOnlyWhenLastSessionCloses() {
+		WebSocketSession tab1 = session("1");
+		WebSocketSession tab2 = session("2");
+		registry.register(tab1, "alice");
+		registry.register(tab2, "alice");
+		registry.join("alice", "room-a");
+
+		SessionRegistry.Removal first = registry.unregister(tab1);
+		assertThat(first.roomId()).isNull();
+		assertThat(first.lastSession()).isFalse();
+		assertThat(registry.getRoomSessions("room-a")).containsExactly(tab2);
+
+		SessionRegistry.Removal last = registry.unregister(tab2);
+		assertThat(last.roomId()).isEqualTo("room-a");
+		assertThat(last.lastSession()).isTrue();
+		assertThat(registry.getRoomCount()).isZero();
+		assertThat(registry.getOnlineUsernames()).isEmpty();
+		assertThat(registry.getRoom("alice")).isNull();
+	}
+
+	@Test
+	void sessionRegisteredAfterJoinReceivesRoomTraffic() {
+		WebSocketSession tab1 = session("1");
+		registry.register(tab1, "bob");
+		registry.join("bob", "room-a");
+
+		WebSocketSession tab2 = session("2");
+		assertThat(registry.register(tab2, "bob")).isEqualTo(2);
+		assertThat(registry.register(tab2, "bob")).isZero();
+		assertThat(registry.getRoomSessions("room-a")).containsExactlyInAnyOrder(tab1, tab2);
+	}
+
+	@Test
+	void roomSizeGaugesFollowMembership() {
+		MeterRegistry meters = new SimpleMeterRegistry();
+		registry.bindTo(meters);
+		for (int i = 0; i < 6; i++) {
+			registry.register(session("s" + i), "user" + i);
+			registry.join("user" + i, "big");
+		}
+		registry.register(session("solo"), "solo");
+		registry.join("solo", "small");
+
+		assertThat(roomsOfSize(meters, "1")).isEqualTo(1);
+		assertThat(roomsOfSize(meters, "6-20")).isEqualTo(1);
+		assertThat(meters.get("chat.rooms.active").gauge().value()).isEqualTo(2);
+		assertThat(meters.get("chat.sessions.active").gauge().value()).isEqualTo(7);
+
+		registry.leave("user5", "big");
+		registry.join("solo", "big");
+		assertThat(roomsOfSize(meters, "1")).isZero();
+		assertThat(roomsOfSize(meters, "6-20")).isEqualTo(1);
+
+		registry.leave("user4", "big");
+		assertThat(roomsOfSize(meters, "2-5")).isEqualTo(1);
+		assertThat(roomsOfSize(meters, "6-20")).isZero();
+		assertThat(roomsOfSize(meters, "501+")).isZero();
+	}
+
+	private static double roomsOfSize(MeterRegistry meters, String size) {
+		return meters.get("chat.rooms.by.size").tag("size", size).gauge().value();
+	}
+
+	private static WebSocketSession session(String id) {
+		WebSocketSession session = mock(WebSocketSession.class);
+		when(session.getId()).thenReturn(id);
+		return session;
+	}
+}
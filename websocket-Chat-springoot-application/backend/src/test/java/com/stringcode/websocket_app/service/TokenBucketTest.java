@@ -0,0 +1,45 @@
+package com.stringcode.websocket_app.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TokenBucketTest {
+
+	private static final long SECOND = 1_000_000_000L;
+
+	@Test
+	void allowsTheBurstThenRefillsAtTheRate() {
+		TokenBucket bucket = new TokenBucket(10, 5);
+		long now = System.nanoTime();
+
+		for (int i = 0; i < 5; i++) {
+			assertThat(bucket.tryAcquire(now)).isTrue();
+		}
+		assertThat(bucket.tryAcquire(now)).isFalse();
+		// One token every 100 ms.
+		assertThat(bucket.tryAcquire(now + SECOND / 10 - 1)).isFalse();
+		assertThat(bucket.tryAcquire(now + SECOND / 10)).isTrue();
+		assertThat(bucket.tryAcquire(now + SECOND / 10)).isFalse();
+	}
+
+	@Test
+	void idleTimeNeverBanksMoreThanTheBurst() {
+		TokenBucket bucket = new TokenBucket(10, 3);
+		long later = System.nanoTime() + 60 * SECOND;
+
+		int granted = 0;
+		while (bucket.tryAcquire(later)) {
+			granted++;
+		}
+
+		assertThat(granted).isEqualTo(3);
+	}
+
+	@Test
+	void rejectsNonPositiveSettings() {
+		assertThatThrownBy(() -> new TokenBucket(0, 1)).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> new TokenBucket(1, 0)).isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,46 @@
+package com.stringcode.websocket_app.service;
+
+import com.stringcode.websocket_app.model.User;
+import com.stringcode.websocket_app.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+class UserPrincipalCacheTest {
+
+	private final UserRepository userRepository = mock(UserRepository.class);
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final UserPrincipalCache cache = new UserPrincipalCache(userRepository, meterRegistry, 100, 60_000);
+
+	@Test
+	void loadsEachUserOnceUntilInvalidated() {
+		User alice = User.builder().id(1L).username("alice").password("x").build();
+		when(userRepository.findByUsername("alice")).thenReturn(Optional.of(alice));
+
+		assertThat(cache.load("alice")).isSameAs(alice);
+		assertThat(cache.load("alice")).isSameAs(alice);
+		verify(userRepository, times(1)).findByUsername("alice");
+
+		cache.invalidate("alice");
+		cache.load("alice");
+		verify(userRepository, times(2)).findByUsername("alice");
+
+		assertThat(meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count()).isEqualTo(1);
+		assertThat(meterRegistry.get("cache.gets").tag("result", "miss").functionCounter().count()).isEqualTo(2);
+	}
+
+	@Test
+	void unknownUserIsNotCached() {
+		when(userRepository.findByUsername("ghost")).thenReturn(Optional.empty());
+
+		assertThatThrownBy(() -> cache.load("ghost")).isInstanceOf(UsernameNotFoundException.class);
+		assertThatThrownBy(() -> cache.load("ghost")).isInstanceOf(UsernameNotFoundException.class);
+		verify(userRepository, times(2)).findByUsername("ghost");
+	}
+}
@@ -0,0 +1,45 @@
+package com.stringcode.websocket_app.service;
+
+import com.stringcode.websocket_app.config.JacksonConfig;
+import com.stringcode.websocket_app.dto.WebSocketMessageDto;
+import com.stringcode.websocket_app.enums.MessageType;
+import com.stringcode.websocket_app.enums.WireProtocol;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WireCodecTest {
+
+	private final WireCodec codec = new WireCodec(new JacksonConfig().objectMapper());
+
+	@Test
+	void cborRoundTripsAndIsSmallerThanJson() throws Exception {
+		WebSocketMessageDto message = new WebSocketMessageDto(MessageType.PRESENCE_BATCH, Map.of(
+				"scope", "room",
+				"roomId", "general",
+				"version", 7,
+				"events", List.of(
+						Map.of("type", "JOIN", "username", "alice", "roomId", "general"),
+						Map.of("type", "LEAVE", "username", "bob", "roomId", "general"))
+		), LocalDateTime.of(2024, 5, 1, 12, 30, 15, 123_000_000), "SYSTEM", "SYSTEM");
+
+		WebSocketMessage<?> json = codec.encode(message, WireProtocol.JSON);
+		WebSocketMessage<?> cbor = codec.encode(message, WireProtocol.CBOR);
+
+		assertThat(json).isInstanceOf(TextMessage.class);
+		assertThat(cbor).isInstanceOf(BinaryMessage.class);
+		assertThat(cbor.getPayloadLength()).isLessThan(json.getPayloadLength());
+
+		WebSocketMessageDto decoded = codec.decode((BinaryMessage) cbor);
+		assertThat(decoded).usingRecursiveComparison().isEqualTo(codec.decode((TextMessage) json));
+		assertThat(decoded.getTimestamp()).isEqualTo(message.getTimestamp());
+		assertThat(decoded.getType()).isEqualTo(MessageType.PRESENCE_BATCH);
+	}
+}
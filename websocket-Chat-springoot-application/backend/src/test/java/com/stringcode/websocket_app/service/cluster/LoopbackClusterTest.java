@@ -0,0 +1,149 @@
+package com.stringcode.websocket_app.service.cluster;
+
+import com.stringcode.websocket_app.config.JacksonConfig;
+import com.stringcode.websocket_app.dto.WebSocketMessageDto;
+import com.stringcode.websocket_app.enums.MessageType;
+import com.stringcode.websocket_app.service.MessageBroadcaster;
+import com.stringcode.websocket_app.service.PresencePublisher;
+import com.stringcode.websocket_app.service.SessionRegistry;
+import com.stringcode.websocket_app.service.WireCodec;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+class LoopbackClusterTest {
+
+	private final Node a = new Node("a");
+	private final Node b = new Node("b");
+
+	@AfterEach
+	void tearDown() {
+		a.stop();
+		b.stop();
+	}
+
+	@Test
+	void roomBroadcastReachesMembersOnOtherNodes() throws Exception {
+		WebSocketSession alice = a.connect("alice", "general");
+		WebSocketSession bob = b.connect("bob", "general");
+		b.bus.subscribe(ClusterBus.roomTopic("general"), event ->
+				b.broadcaster.deliverToRoom("general", ((ClusterEvent.RoomFrame) event).message()));
+
+		a.broadcaster.broadcastToRoom("general", new WebSocketMessageDto(MessageType.SYSTEM, Map.of("message", "hi"), null, "SYSTEM", "SYSTEM"));
+
+		verify(alice, times(1)).sendMessage(any());
+		verify(bob, timeout(2000).times(1)).sendMessage(argThat(frame ->
+				((TextMessage) frame).getPayload().contains("\"message\":\"hi\"")));
+	}
+
+	@Test
+	void presenceIsMergedAcrossNodes() {
+		a.connect("alice", "general");
+		a.presenceChanged("alice", "general");
+		b.connect("bob", "general");
+		b.presenceChanged("bob", "general");
+		a.publisher.publish();
+		b.publisher.publish();
+
+		await().atMost(Duration.ofSeconds(2)).untilAsserted(() -> {
+			assertThat(a.presence.getRoomUsers("general")).containsExactlyInAnyOrder("alice", "bob");
+			assertThat(b.presence.getRoomUsers("general")).containsExactlyInAnyOrder("alice", "bob");
+		});
+
+		b.stop();
+
+		await().atMost(Duration.ofSeconds(2)).untilAsserted(() -> {
+			assertThat(a.presence.isOnline("bob")).isFalse();
+			assertThat(a.presence.getRoomUsers("general")).isEqualTo(Set.of("alice"));
+		});
+	}
+
+	@Test
+	void usersOfANodeThatStopsHeartbeatingExpire() {
+		ReflectionTestUtils.setField(a.presence, "nodeTtlMs", 100L);
+		b.connect("bob", "general");
+		b.presenceChanged("bob", "general");
+		b.publisher.publish();
+		await().atMost(Duration.ofSeconds(2)).until(() -> a.presence.isOnline("bob"));
+
+		// b vanishes without announcing NodeLeft.
+		b.bus.leave();
+
+		await().atMost(Duration.ofSeconds(2)).pollInterval(Duration.ofMillis(50)).untilAsserted(() -> {
+			a.presence.heartbeat();
+			assertThat(a.presence.isOnline("bob")).isFalse();
+			assertThat(a.presence.getRoomUsers("general")).isEmpty();
+		});
+	}
+
+	@Test
+	void eachNodeReceivesItsOwnCopyOfARoomFrame() throws Exception {
+		WebSocketMessageDto sent = new WebSocketMessageDto(MessageType.SYSTEM, Map.of("message", "hi"), null, "SYSTEM", "SYSTEM");
+		CompletableFuture<WebSocketMessageDto> received = new CompletableFuture<>();
+		b.bus.subscribe(ClusterBus.roomTopic("general"), event -> received.complete(((ClusterEvent.RoomFrame) event).message()));
+
+		a.bus.publish(ClusterBus.roomTopic("general"), new ClusterEvent.RoomFrame("general", sent));
+
+		WebSocketMessageDto copy = received.get(2, TimeUnit.SECONDS);
+		assertThat(copy).isNotSameAs(sent).isEqualTo(sent);
+		copy.setTimestamp(LocalDateTime.now());
+		assertThat(sent.getTimestamp()).isNull();
+	}
+
+	private static final class Node {
+
+		final SessionRegistry registry = new SessionRegistry();
+		final LoopbackClusterBus bus;
+		final ClusterPresence presence;
+		final MessageBroadcaster broadcaster;
+		final PresencePublisher publisher;
+		private boolean stopped;
+
+		Node(String id) {
+			bus = new LoopbackClusterBus("test-cluster", id);
+			bus.join();
+			presence = new ClusterPresence(bus, registry);
+			presence.start();
+			broadcaster = new MessageBroadcaster(new WireCodec(new JacksonConfig().objectMapper()), registry, bus, new SimpleMeterRegistry());
+			publisher = new PresencePublisher(presence, broadcaster, new SimpleMeterRegistry());
+		}
+
+		WebSocketSession connect(String username, String roomId) {
+			WebSocketSession session = mock(WebSocketSession.class);
+			when(session.getId()).thenReturn(username + "@" + bus.getNodeId());
+			when(session.isOpen()).thenReturn(true);
+			registry.register(session, username);
+			registry.join(username, roomId);
+			return session;
+		}
+
+		void presenceChanged(String username, String roomId) {
+			publisher.userChanged(username);
+			publisher.roomChanged(roomId);
+		}
+
+		void stop() {
+			if (!stopped) {
+				stopped = true;
+				presence.stop();
+				bus.leave();
+			}
+		}
+	}
+}
@@ -0,0 +1,248 @@
+package com.stringcode.websocket_app.service.impl;
+
+import com.stringcode.websocket_app.dto.ChatMessageDto;
+import com.stringcode.websocket_app.dto.WebSocketMessageDto;
+import com.stringcode.websocket_app.dto.payload.CallRequestPayload;
+import com.stringcode.websocket_app.dto.payload.ChatPayload;
+import com.stringcode.websocket_app.dto.payload.JoinPayload;
+import com.stringcode.websocket_app.dto.payload.LeavePayload;
+import com.stringcode.websocket_app.dto.payload.ResumePayload;
+import com.stringcode.websocket_app.enums.MessageType;
+import com.stringcode.websocket_app.model.ChatMessage;
+import com.stringcode.websocket_app.service.MessageBroadcaster;
+import com.stringcode.websocket_app.service.MessageStore;
+import com.stringcode.websocket_app.service.PresencePublisher;
+import com.stringcode.websocket_app.service.RecentMessageCache;
+import com.stringcode.websocket_app.service.RoomExecutor;
+import com.stringcode.websocket_app.service.SessionRegistry;
+import com.stringcode.websocket_app.service.cluster.SingleNodeClusterBus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ChatServiceImplTest {
+
+	private final MessageStore store = mock(MessageStore.class);
+	private final SessionRegistry registry = new SessionRegistry();
+	private final RecentMessageCache cache = new RecentMessageCache(store, 3, 60_000);
+	private final MessageBroadcaster broadcaster = mock(MessageBroadcaster.class);
+	private final RoomExecutor roomExecutor = new RoomExecutor(new SimpleMeterRegistry(), 1, 100);
+	private final ChatServiceImpl service = new ChatServiceImpl(store, registry, cache, broadcaster,
+			mock(PresencePublisher.class), new SingleNodeClusterBus(), roomExecutor);
+
+	// What the store holds, newest first.
+	private final List<ChatMessageDto> persisted = new ArrayList<>();
+	private final WebSocketSession alice = session("1");
+	private final WebSocketSession bob = session("2");
+	// The store's counter, which continues after the seqs it holds.
+	private long lastSeq;
+
+	@BeforeEach
+	void setUp() {
+		ReflectionTestUtils.setField(service, "joinBacklogSize", 50);
+		ReflectionTestUtils.setField(service, "resumeMaxReplay", 1000);
+		when(store.append(any())).thenReturn(true);
+		when(store.nextSeq("room")).thenAnswer(inv -> lastSeq = Math.max(lastSeq,
+				persisted.stream().mapToLong(ChatMessageDto::getSeq).max().orElse(0)) + 1);
+		when(store.findLatest(eq("room"), anyInt())).thenAnswer(inv ->
+				List.copyOf(persisted.subList(0, Math.min(inv.<Integer>getArgument(1), persisted.size()))));
+		service.register(alice, "alice");
+		service.register(bob, "bob");
+		registry.join("alice", "room");
+	}
+
+	@Test
+	void chatFramesCarryTheSeqTheStoreHandsOut() throws Exception {
+		persisted.add(stored(5));
+		chat("a");
+		chat("b");
+		roomExecutor.shutdown();
+
+		ArgumentCaptor<WebSocketMessageDto> frames = ArgumentCaptor.forClass(WebSocketMessageDto.class);
+		verify(broadcaster, times(2)).broadcastToRoom(eq("room"), frames.capture());
+		assertThat(frames.getAllValues()).extracting(WebSocketMessageDto::getSeq).containsExactly(6L, 7L);
+		ArgumentCaptor<ChatMessage> appended = ArgumentCaptor.forClass(ChatMessage.class);
+		verify(store, times(2)).append(appended.capture());
+		assertThat(appended.getAllValues()).extracting(ChatMessage::getSeq).containsExactly(6L, 7L);
+	}
+
+	@Test
+	void resumeReplaysOnlyTheMissedFramesFromTheRecentBuffer() throws Exception {
+		for (int i = 1; i <= 4; i++) {
+			chat("m" + i);
+		}
+		resume(2);
+		roomExecutor.shutdown();
+
+		assertThat(sentTo(bob)).extracting(WebSocketMessageDto::getSeq).containsExactly(3L, 4L);
+		assertThat(registry.getRoom("bob")).isEqualTo("room");
+		verify(store, never()).findLatest(eq("room"), eq(2));
+	}
+
+	@Test
+	void resumePastTheBufferReadsTheStoreAndTheBufferForWhatTheStoreLacks() throws Exception {
+		for (int i = 1; i <= 6; i++) {
+			chat("m" + i);
+		}
+		roomExecutor.shutdown();
+		// The write-behind has stored up to seq 4; the buffer holds 4 to 6.
+		for (int seq = 4; seq >= 1; seq--) {
+			persisted.add(stored(seq));
+		}
+		RoomExecutor resumeExecutor = new RoomExecutor(new SimpleMeterRegistry(), 1, 100);
+		ChatServiceImpl resumed = new ChatServiceImpl(store, registry, cache, broadcaster,
+				mock(PresencePublisher.class), new SingleNodeClusterBus(), resumeExecutor);
+		ReflectionTestUtils.setField(resumed, "resumeMaxReplay", 1000);
+
+		resumed.handleMessage(bob, new WebSocketMessageDto(MessageType.RESUME, new ResumePayload("room", 1L), null, "bob", "bob"));
+		resumeExecutor.shutdown();
+
+		assertThat(sentTo(bob)).extracting(WebSocketMessageDto::getSeq).containsExactly(2L, 3L, 4L, 5L, 6L);
+	}
+
+	@Test
+	void resumeTooFarBehindOrAheadSendsTheLatestHistoryInstead() throws Exception {
+		ReflectionTestUtils.setField(service, "resumeMaxReplay", 2);
+		for (int i = 1; i <= 3; i++) {
+			chat("m" + i);
+		}
+		resume(0);
+		resume(9);
+		roomExecutor.shutdown();
+
+		assertThat(sentTo(bob)).extracting(WebSocketMessageDto::getType).containsExactly(MessageType.HISTORY, MessageType.HISTORY);
+	}
+
+	@Test
+	void joinAndLeaveChangeMembershipOnTheRoomsStripe() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		roomExecutor.execute("room", () -> {
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		service.handleMessage(bob, new WebSocketMessageDto(MessageType.JOIN, new JoinPayload("room"), null, "bob", "bob"));
+		service.handleMessage(alice, new WebSocketMessageDto(MessageType.LEAVE, new LeavePayload("room"), null, "alice", "alice"));
+		// Queued behind the stripe's current task.
+		assertThat(registry.getRoom("bob")).isNull();
+		assertThat(registry.getRoom("alice")).isEqualTo("room");
+
+		release.countDown();
+		roomExecutor.shutdown();
+		assertThat(registry.getRoom("bob")).isEqualTo("room");
+		assertThat(registry.getRoom("alice")).isNull();
+	}
+
+	@Test
+	void joinWithAnInvalidRoomIdIsIgnored() throws Exception {
+		service.handleMessage(bob, new WebSocketMessageDto(MessageType.JOIN, new JoinPayload("r".repeat(300)), null, "bob", "bob"));
+		service.handleMessage(bob, new WebSocketMessageDto(MessageType.JOIN, new JoinPayload("room\n"), null, "bob", "bob"));
+		roomExecutor.shutdown();
+
+		assertThat(registry.getRoom("bob")).isNull();
+	}
+
+	@Test
+	void aMessageTheStoreRefusesIsNeitherBroadcastNorCachedAndTheSenderIsTold() throws Exception {
+		when(store.append(any())).thenReturn(false);
+		chat("lost");
+		roomExecutor.shutdown();
+
+		verify(broadcaster, never()).broadcastToRoom(any(), any());
+		assertThat(cache.lastSeq("room")).isZero();
+		ArgumentCaptor<WebSocketMessageDto> frames = ArgumentCaptor.forClass(WebSocketMessageDto.class);
+		verify(broadcaster).send(eq(alice), frames.capture());
+		assertThat(frames.getValue().getType()).isEqualTo(MessageType.SYSTEM);
+	}
+
+	@Test
+	void aSeqTheStoreCannotHandOutFailsThePublishInsteadOfRestartingTheCount() throws Exception {
+		when(store.nextSeq("room")).thenReturn(1L).thenThrow(new IllegalStateException("down"));
+		chat("a");
+		chat("lost");
+		roomExecutor.shutdown();
+
+		verify(store, times(1)).append(any());
+		assertThat(cache.lastSeq("room")).isEqualTo(1);
+		ArgumentCaptor<WebSocketMessageDto> frames = ArgumentCaptor.forClass(WebSocketMessageDto.class);
+		verify(broadcaster).broadcastToRoom(eq("room"), frames.capture());
+		assertThat(frames.getValue().getSeq()).isEqualTo(1L);
+		verify(broadcaster).send(eq(alice), argThat(f -> f.getType() == MessageType.SYSTEM));
+	}
+
+	@Test
+	void signalingAndHistoryFramesCarryTheSeqOfTheRoomsNewestMessage() throws Exception {
+		ReflectionTestUtils.setField(service, "sendHistoryOnJoin", true);
+		chat("a");
+		chat("b");
+		service.handleMessage(alice, new WebSocketMessageDto(MessageType.CALL_HANGUP, null, null, "alice", "alice"));
+		service.handleMessage(bob, new WebSocketMessageDto(MessageType.JOIN, new JoinPayload("room"), null, "bob", "bob"));
+		roomExecutor.shutdown();
+
+		ArgumentCaptor<WebSocketMessageDto> frames = ArgumentCaptor.forClass(WebSocketMessageDto.class);
+		verify(broadcaster, times(3)).broadcastToRoom(eq("room"), frames.capture());
+		assertThat(frames.getAllValues()).extracting(WebSocketMessageDto::getSeq).containsExactly(1L, 2L, 2L);
+		assertThat(sentTo(bob)).singleElement().satisfies(history -> {
+			assertThat(history.getType()).isEqualTo(MessageType.HISTORY);
+			assertThat(history.getSeq()).isEqualTo(2L);
+		});
+	}
+
+	@Test
+	void relayedSignalingCarriesTheSessionUserNotTheClaimedOne() throws Exception {
+		service.handleMessage(alice, new WebSocketMessageDto(MessageType.CALL_REQUEST,
+				new CallRequestPayload("bob", "mallory", "video"), null, "mallory", "mallory"));
+		roomExecutor.shutdown();
+
+		ArgumentCaptor<WebSocketMessageDto> frames = ArgumentCaptor.forClass(WebSocketMessageDto.class);
+		verify(broadcaster).broadcastToRoom(eq("room"), frames.capture());
+		WebSocketMessageDto relayed = frames.getValue();
+		assertThat(relayed.getSenderId()).isEqualTo("alice");
+		assertThat(relayed.getSenderName()).isEqualTo("alice");
+		assertThat(relayed.getPayload()).isEqualTo(new CallRequestPayload("bob", "alice", "video"));
+	}
+
+	private void chat(String content) {
+		service.handleMessage(alice, new WebSocketMessageDto(MessageType.CHAT, new ChatPayload(content, "room"), null, "alice", "alice"));
+	}
+
+	private void resume(long lastSeq) {
+		service.handleMessage(bob, new WebSocketMessageDto(MessageType.RESUME, new ResumePayload("room", lastSeq), null, "bob", "bob"));
+	}
+
+	private List<WebSocketMessageDto> sentTo(WebSocketSession session) {
+		ArgumentCaptor<WebSocketMessageDto> frames = ArgumentCaptor.forClass(WebSocketMessageDto.class);
+		verify(broadcaster, atLeast(0)).send(eq(session), frames.capture());
+		return frames.getAllValues().stream()
+				.filter(f -> f.getType() == MessageType.CHAT || f.getType() == MessageType.HISTORY)
+				.toList();
+	}
+
+	private static ChatMessageDto stored(long seq) {
+		return new ChatMessageDto(seq, MessageType.CHAT, "m" + seq, "alice", "room", LocalDateTime.now(), seq);
+	}
+
+	private static WebSocketSession session(String id) {
+		WebSocketSession session = mock(WebSocketSession.class);
+		when(session.getId()).thenReturn(id);
+		when(session.isOpen()).thenReturn(true);
+		return session;
+	}
+}
@@ -0,0 +1,251 @@
+package com.stringcode.websocket_app.service.log;
+
+import com.stringcode.websocket_app.dto.ChatMessageDto;
+import com.stringcode.websocket_app.enums.MessageType;
+import com.stringcode.websocket_app.model.ChatMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SegmentLogMessageStoreTest {
+
+	private static final LocalDateTime START = LocalDateTime.of(2026, 1, 1, 12, 0, 0, 123_456_789);
+
+	@TempDir
+	Path dir;
+
+	private SegmentLogMessageStore store;
+
+	@AfterEach
+	void closeStore() {
+		if (store != null) {
+			store.close();
+		}
+	}
+
+	@Test
+	void pagesBackwardsAcrossSegmentsAndRooms() throws Exception {
+		store = open(512, 0);
+		for (int i = 0; i < 60; i++) {
+			store.append(message("room-a", "message " + i, START.plusSeconds(i)));
+			if (i % 3 == 0) {
+				store.append(message("room-b", "other " + i, START.plusSeconds(i)));
+			}
+		}
+		assertThat(segmentFiles("room-a")).isGreaterThan(3);
+
+		List<ChatMessageDto> latest = store.findLatest("room-a", 5);
+		assertThat(latest).extracting(ChatMessageDto::getContent)
+				.containsExactly("message 59", "message 58", "message 57", "message 56", "message 55");
+		assertThat(latest.get(0).getTimestamp()).isEqualTo(START.plusSeconds(59).withNano(123_456_000));
+		assertThat(latest.get(0).getSenderName()).isEqualTo("alice");
+		assertThat(latest.get(0).getRoomId()).isEqualTo("room-a");
+
+		assertThat(readBackwards("room-a", 7)).extracting(ChatMessageDto::getContent)
+				.containsExactlyElementsOf(Stream.iterate(59, i -> i - 1).limit(60).map(i -> "message " + i).toList());
+		assertThat(store.findLatest("room-b", 100)).hasSize(20);
+		assertThat(store.findLatest("room-c", 10)).isEmpty();
+	}
+
+	@Test
+	void assignsIncreasingIdsAndHandsFlushedMessagesToTheListener() throws Exception {
+		store = open(4096, 0);
+		List<List<ChatMessage>> batches = new ArrayList<>();
+		store.addListener(batches::add);
+		ChatMessage a1 = message("room-a", "a1", START);
+		a1.setSeq(41L);
+		store(a1);
+		ChatMessage b1 = store(message("room-b", "b1", START));
+		ChatMessage a2 = store(message("room-a", "a2", START));
+
+		assertThat(List.of(a1.getId(), b1.getId(), a2.getId())).containsExactly(1L, 2L, 3L);
+		assertThat(batches).isEmpty();
+		store.flush();
+		assertThat(batches).containsExactly(List.of(a1, b1, a2));
+		assertThat(store.findAfter(0, 10)).extracting(ChatMessage::getContent).containsExactly("a1", "b1", "a2");
+		assertThat(store.findAfter(1, 1)).extracting(ChatMessage::getContent).containsExactly("b1");
+		assertThat(store.findBefore("room-a", a2.getId(), 10)).extracting(ChatMessageDto::getSeq).containsExactly(41L);
+		assertThat(store.findLatest("room-b", 1)).extracting(ChatMessageDto::getSeq).containsNull();
+	}
+
+	@Test
+	void recoversAfterRestartAndDropsATornRecord() throws Exception {
+		store = open(4096, 0);
+		for (int i = 0; i < 5; i++) {
+			store.append(message("room-a", "message " + i, START.plusSeconds(i)));
+		}
+		store.close();
+
+		// A record whose write was cut short by a crash.
+		Path active = lastSegment("room-a");
+		Files.write(active, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+		store = open(4096, 0);
+		assertThat(store.findLatest("room-a", 10)).extracting(ChatMessageDto::getId).containsExactly(5L, 4L, 3L, 2L, 1L);
+		ChatMessage next = store(message("room-a", "after restart", START.plusSeconds(10)));
+		assertThat(next.getId()).isEqualTo(6L);
+		assertThat(store.findLatest("room-a", 2)).extracting(ChatMessageDto::getContent).containsExactly("after restart", "message 4");
+	}
+
+	@Test
+	void recoversAnUncleanShutdownFromThePreallocatedSegment() throws Exception {
+		SegmentLogMessageStore crashed = open(4096, 0);
+		for (int i = 0; i < 40; i++) {
+			crashed.append(message("room-a", "message " + i, START.plusSeconds(i)));
+		}
+		// Neither flushed nor closed: the segment is still preallocated and its index file empty.
+		assertThat(Files.size(lastSegment("room-a"))).isEqualTo(4096);
+
+		store = open(4096, 0);
+		assertThat(readBackwards("room-a", 9)).hasSize(40);
+		assertThat(store.findAfter(35, 10)).extracting(ChatMessage::getId).containsExactly(36L, 37L, 38L, 39L, 40L);
+	}
+
+	@Test
+	void compactionMergesSmallSegmentsAndKeepsHistoryReadable() throws Exception {
+		// A day between messages and a one-hour age limit: every message starts a new segment.
+		store = open(4096, 3_600_000);
+		for (int i = 0; i < 6; i++) {
+			store.append(message("room-a", "day " + i, START.plusDays(i)));
+		}
+		assertThat(segmentFiles("room-a")).isEqualTo(6);
+
+		store.compact();
+		assertThat(segmentFiles("room-a")).isEqualTo(2);
+		assertThat(readBackwards("room-a", 2)).extracting(ChatMessageDto::getContent)
+				.containsExactly("day 5", "day 4", "day 3", "day 2", "day 1", "day 0");
+
+		store.close();
+		store = open(4096, 3_600_000);
+		assertThat(store.findLatest("room-a", 10)).hasSize(6);
+		assertThat(store(message("room-a", "day 6", START.plusDays(6))).getId()).isEqualTo(7L);
+	}
+
+	@Test
+	void appendsAndFlushesGoOnWhileCompactionMerges() throws Exception {
+		store = open(4096, 3_600_000);
+		int count = 300;
+		Thread appender = new Thread(() -> {
+			for (int i = 0; i < count; i++) {
+				store.append(message("room-a", "day " + i, START.plusDays(i)));
+			}
+		});
+		appender.start();
+		while (appender.isAlive()) {
+			store.compact();
+			store.flush();
+		}
+		appender.join();
+		store.compact();
+
+		assertThat(segmentFiles("room-a")).isLessThan(count / 10);
+		assertThat(readBackwards("room-a", 7)).extracting(ChatMessageDto::getContent)
+				.containsExactlyElementsOf(Stream.iterate(count - 1, i -> i - 1).limit(count).map(i -> "day " + i).toList());
+		store.close();
+		store = open(4096, 3_600_000);
+		assertThat(readBackwards("room-a", 50)).hasSize(count);
+	}
+
+	@Test
+	void seqsContinueAfterTheHighestOneInTheLog() throws Exception {
+		store = open(512, 0);
+		for (int i = 0; i < 20; i++) {
+			ChatMessage m = message("room-a", "message " + i, START.plusSeconds(i));
+			m.setSeq(store.nextSeq("room-a"));
+			store.append(m);
+		}
+		assertThat(store.nextSeq("room-b")).isEqualTo(1);
+		store.close();
+
+		store = open(512, 0);
+		assertThat(store.findLatest("room-a", 1)).extracting(ChatMessageDto::getSeq).containsExactly(20L);
+		assertThat(store.nextSeq("room-a")).isEqualTo(21);
+		assertThat(store.nextSeq("room-a")).isEqualTo(22);
+	}
+
+	@Test
+	void refusesToOpenARecordOfAnUnknownFormatVersion() throws Exception {
+		store = open(4096, 0);
+		store.append(message("room-a", "message", START));
+		store.close();
+		store = null;
+
+		// A valid record, CRC included, written by a newer format.
+		Path segment = lastSegment("room-a");
+		ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(segment));
+		bytes.put(8, (byte) 2);
+		CRC32C crc = new CRC32C();
+		crc.update(bytes.slice(8, bytes.getInt(0) - 4));
+		bytes.putInt(4, (int) crc.getValue());
+		Files.write(segment, bytes.array());
+
+		assertThatThrownBy(() -> open(4096, 0)).isInstanceOf(IOException.class).hasMessageContaining("format version 2");
+	}
+
+	private SegmentLogMessageStore open(int segmentBytes, long segmentMaxAgeMs) throws IOException {
+		SegmentLogMessageStore opened = new SegmentLogMessageStore(new SimpleMeterRegistry(), dir.toString(), segmentBytes, 64, segmentMaxAgeMs);
+		// The tests flush and compact themselves.
+		ReflectionTestUtils.setField(opened, "flushMs", 3_600_000L);
+		ReflectionTestUtils.setField(opened, "compactionMs", 3_600_000L);
+		opened.open();
+		return opened;
+	}
+
+	private ChatMessage store(ChatMessage message) {
+		store.append(message);
+		return message;
+	}
+
+	private List<ChatMessageDto> readBackwards(String roomId, int pageSize) {
+		List<ChatMessageDto> all = new ArrayList<>();
+		List<ChatMessageDto> page = store.findLatest(roomId, pageSize);
+		while (!page.isEmpty()) {
+			all.addAll(page);
+			page = store.findBefore(roomId, page.get(page.size() - 1).getId(), pageSize);
+		}
+		return all;
+	}
+
+	private long segmentFiles(String roomId) throws IOException {
+		try (Stream<Path> files = Files.list(roomDir(roomId))) {
+			return files.filter(f -> f.toString().endsWith(Segment.LOG_SUFFIX)).count();
+		}
+	}
+
+	private Path lastSegment(String roomId) throws IOException {
+		try (Stream<Path> files = Files.list(roomDir(roomId))) {
+			return files.filter(f -> f.toString().endsWith(Segment.LOG_SUFFIX)).sorted().reduce((a, b) -> b).orElseThrow();
+		}
+	}
+
+	private Path roomDir(String roomId) {
+		return dir.resolve(Base64.getUrlEncoder().withoutPadding().encodeToString(roomId.getBytes()));
+	}
+
+	private static ChatMessage message(String roomId, String content, LocalDateTime timestamp) {
+		return ChatMessage.builder()
+				.type(MessageType.CHAT)
+				.content(content)
+				.senderName("alice")
+				.roomId(roomId)
+				.timestamp(timestamp)
+				.build();
+	}
+}
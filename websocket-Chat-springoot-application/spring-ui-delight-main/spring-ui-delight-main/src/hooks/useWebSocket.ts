@@ -1,5 +1,5 @@
 import { useState, useCallback, useRef, useEffect } from 'react';
-import { MessageType, WebSocketMessage, User, Room, ConnectionState, SystemNotification } from '@/types/websocket';
+import { MessageType, WebSocketMessage, User, Room, ConnectionState, SystemNotification, PresenceEvent, ResumeRoomPayload } from '@/types/websocket';
 import { api } from '@/lib/api';
 
 const WEBSOCKET_URL = import.meta.env.VITE_WS_URL || 'ws://localhost:8080/ws';
@@ -7,6 +7,20 @@ const HEARTBEAT_INTERVAL = 30000; // 30 seconds
 const RECONNECT_DELAY = 3000;
 const MAX_RECONNECT_ATTEMPTS = 5;
 
+function applyOnlineEvent(users: User[], event: PresenceEvent): User[] {
+  const others = users.filter(u => u.username !== event.username);
+  if (event.type === MessageType.USER_OFFLINE) return others;
+  const existing = users.find(u => u.username === event.username);
+  return [...others, { ...existing, username: event.username, status: 'online', currentRoom: event.roomId } as User];
+}
+
+function applyRoomEvent(users: User[], event: PresenceEvent): User[] {
+  const others = users.filter(u => u.username !== event.username);
+  return event.type === MessageType.JOIN
+    ? [...others, { username: event.username, status: 'online' } as User]
+    : others;
+}
+
 export function useWebSocket(username: string | null) {
   const [connectionState, setConnectionState] = useState<ConnectionState>({
     isConnected: false,
@@ -18,20 +32,35 @@ export function useWebSocket(username: string | null) {
   const [currentRoom, setCurrentRoom] = useState<string | null>(null);
   const [messages, setMessages] = useState<any[]>([]);
 
+  // The current room and the highest seq seen in it, which a reconnect resumes after.
+  const currentRoomRef = useRef<string | null>(null);
+  const lastSeqRef = useRef<number | null>(null);
+
+  const noteSeq = useCallback((seq?: number | null) => {
+    if (seq != null && (lastSeqRef.current === null || seq > lastSeqRef.current)) {
+      lastSeqRef.current = seq;
+    }
+  }, []);
+
   const fetchMessageHistory = useCallback(async (roomId: string) => {
     try {
       const data = await api.get(`/messages/${roomId}`);
-      setMessages(data.map((m: any) => ({
+      const history = data.map((m: any) => ({
         id: m.id,
         content: m.content,
         senderName: m.senderName,
         timestamp: new Date(m.timestamp),
-        type: m.type
-      })));
+        type: m.type,
+        seq: m.seq ?? undefined
+      }));
+      const historySeq = Math.max(0, ...history.map((m: any) => m.seq ?? 0));
+      history.forEach((m: any) => noteSeq(m.seq));
+      // Keeps what arrived live while the request was in flight.
+      setMessages(prev => [...history, ...prev.filter(m => m.seq != null && m.seq > historySeq)]);
     } catch (error) {
       console.error('Failed to fetch messages', error);
     }
-  }, []);
+  }, [noteSeq]);
 
   useEffect(() => {
     const fetchRooms = async () => {
@@ -53,6 +82,9 @@ export function useWebSocket(username: string | null) {
   const [notifications, setNotifications] = useState<SystemNotification[]>([]);
 
   const wsRef = useRef<WebSocket | null>(null);
+  // Last applied presence versions; a delta that does not follow on triggers a snapshot resync.
+  const onlineVersionRef = useRef<number | null>(null);
+  const roomVersionsRef = useRef<Record<string, number>>({});
   const heartbeatRef = useRef<NodeJS.Timeout | null>(null);
   const reconnectTimeoutRef = useRef<NodeJS.Timeout | null>(null);
 
@@ -91,53 +123,113 @@ export function useWebSocket(username: string | null) {
     }, HEARTBEAT_INTERVAL);
   }, [sendMessage, username]);
 
+  // Returns true if the delta should be applied; requests a snapshot when one was missed.
+  const acceptOnlineDelta = useCallback((version: number) => {
+    const current = onlineVersionRef.current;
+    if (current === null || version <= current) return false;
+    if (version !== current + 1) {
+      onlineVersionRef.current = null;
+      sendMessage(MessageType.ONLINE_USERS, { username });
+      return false;
+    }
+    onlineVersionRef.current = version;
+    return true;
+  }, [sendMessage, username]);
+
+  const acceptRoomDelta = useCallback((roomId: string, version: number) => {
+    const current = roomVersionsRef.current[roomId];
+    if (current === undefined || version <= current) return false;
+    if (version !== current + 1) {
+      delete roomVersionsRef.current[roomId];
+      sendMessage(MessageType.ROOM_PRESENCE, { roomId });
+      return false;
+    }
+    roomVersionsRef.current[roomId] = version;
+    return true;
+  }, [sendMessage]);
+
+  const updateRoomUsers = useCallback((roomId: string, update: (users: User[]) => User[]) => {
+    setRooms(prev => prev.map(room => {
+      if (room.id !== roomId) return room;
+      const users = update(room.users);
+      return { ...room, users, userCount: users.length };
+    }));
+  }, []);
+
   const handleMessage = useCallback((event: MessageEvent) => {
     try {
       const message: WebSocketMessage = JSON.parse(event.data);
       
       switch (message.type) {
         case MessageType.ONLINE_USERS:
+          onlineVersionRef.current = message.payload.version ?? null;
           setOnlineUsers(message.payload.users || []);
           break;
-        
+
+        case MessageType.PRESENCE_BATCH: {
+          const { scope, roomId: batchRoom, version, events = [] } = message.payload;
+          if (scope === 'online') {
+            if (acceptOnlineDelta(version)) {
+              setOnlineUsers(prev => events.reduce(applyOnlineEvent, prev));
+            }
+          } else if (acceptRoomDelta(batchRoom, version)) {
+            updateRoomUsers(batchRoom, users => events.reduce(applyRoomEvent, users));
+            events
+              .filter((e: PresenceEvent) => e.username !== username)
+              .forEach((e: PresenceEvent) => e.type === MessageType.JOIN
+                ? addNotification(`${e.username} joined the room`, 'success')
+                : addNotification(`${e.username} left the room`, 'warning'));
+          }
+          break;
+        }
+
         case MessageType.ROOM_PRESENCE:
           const roomId = message.payload.roomId;
           const roomUsers = message.payload.users || [];
-          setRooms(prev => prev.map(room => 
-            room.id === roomId 
-              ? { ...room, users: roomUsers, userCount: roomUsers.length }
-              : room
-          ));
+          roomVersionsRef.current[roomId] = message.payload.version ?? 0;
+          updateRoomUsers(roomId, () => roomUsers);
           break;
         
         case MessageType.SYSTEM:
           addNotification(message.payload.message, message.payload.notificationType || 'info');
           break;
         
-        case MessageType.JOIN:
-          addNotification(`${message.payload.username} joined ${message.payload.roomName || 'the room'}`, 'success');
-          break;
-        
-        case MessageType.LEAVE:
-          addNotification(`${message.payload.username} left ${message.payload.roomName || 'the room'}`, 'warning');
-          break;
-
         case MessageType.CHAT:
-          setMessages(prev => [...prev, {
+          noteSeq(message.seq);
+          setMessages(prev => message.seq != null && prev.some(m => m.seq === message.seq) ? prev : [...prev, {
             id: message.payload.id || crypto.randomUUID(),
             content: message.payload.content,
             senderName: message.senderName,
             timestamp: new Date(message.timestamp),
-            type: message.type
+            type: message.type,
+            seq: message.seq
           }]);
           break;
 
+        case MessageType.HISTORY: {
+          const history = message.payload.messages || [];
+          // Replaces what came before, so the stream restarts at this history.
+          lastSeqRef.current = null;
+          noteSeq(message.seq);
+          history.forEach((m: any) => noteSeq(m.seq));
+          setMessages(history.map((m: any) => ({
+            id: m.id || crypto.randomUUID(),
+            content: m.content,
+            senderName: m.senderName,
+            timestamp: new Date(m.timestamp),
+            type: m.type,
+            seq: m.seq ?? undefined
+          })));
+          break;
+        }
+
         case MessageType.OFFER:
         case MessageType.ANSWER:
         case MessageType.ICE_CANDIDATE:
         case MessageType.CALL_REQUEST:
         case MessageType.CALL_RESPONSE:
         case MessageType.CALL_HANGUP:
+          noteSeq(message.seq);
           // Emit custom event for WebRTC logic to pick up
           window.dispatchEvent(new CustomEvent('webrtc-signal', { detail: message }));
           break;
@@ -148,14 +240,16 @@ export function useWebSocket(username: string | null) {
     } catch (error) {
       console.error('Error parsing WebSocket message:', error);
     }
-  }, [addNotification]);
+  }, [addNotification, acceptOnlineDelta, acceptRoomDelta, updateRoomUsers, noteSeq, username]);
 
 
   const connect = useCallback(() => {
     if (!username) return;
 
     try {
-      wsRef.current = new WebSocket(WEBSOCKET_URL);
+      // The server authenticates the handshake and pushes the online list once registered.
+      const token = localStorage.getItem('token');
+      wsRef.current = new WebSocket(`${WEBSOCKET_URL}?token=${encodeURIComponent(token ?? '')}`);
 
       wsRef.current.onopen = () => {
         setConnectionState({
@@ -165,10 +259,18 @@ export function useWebSocket(username: string | null) {
         });
         addNotification('Connected to server', 'success');
         startHeartbeat();
-        
-        // Request login registration and online users after connection
-        sendMessage(MessageType.LOGIN, { username });
-        sendMessage(MessageType.ONLINE_USERS, { username });
+        // A new connection starts outside every room: rejoin, replaying only what was missed.
+        const roomId = currentRoomRef.current;
+        if (roomId) {
+          if (lastSeqRef.current !== null) {
+            const resume: ResumeRoomPayload = { roomId, lastSeq: lastSeqRef.current };
+            sendMessage(MessageType.RESUME, resume);
+          } else {
+            sendMessage(MessageType.JOIN, { roomId, username });
+            fetchMessageHistory(roomId);
+          }
+          sendMessage(MessageType.ROOM_PRESENCE, { roomId });
+        }
       };
 
       wsRef.current.onmessage = handleMessage;
@@ -202,7 +304,7 @@ export function useWebSocket(username: string | null) {
       console.error('WebSocket connection error:', error);
       addNotification('Failed to connect to server', 'error');
     }
-  }, [username, handleMessage, startHeartbeat, sendMessage, addNotification, connectionState.reconnectAttempts]);
+  }, [username, handleMessage, startHeartbeat, sendMessage, addNotification, fetchMessageHistory, connectionState.reconnectAttempts]);
 
   const disconnect = useCallback(() => {
     if (heartbeatRef.current) {
@@ -222,6 +324,10 @@ export function useWebSocket(username: string | null) {
       lastPing: null,
       reconnectAttempts: 0,
     });
+    onlineVersionRef.current = null;
+    roomVersionsRef.current = {};
+    currentRoomRef.current = null;
+    lastSeqRef.current = null;
     setOnlineUsers([]);
     setRooms([]);
     setCurrentRoom(null);
@@ -233,6 +339,8 @@ export function useWebSocket(username: string | null) {
       sendMessage(MessageType.LEAVE, { roomId: currentRoom, username });
     }
     setMessages([]); // Clear current messages
+    lastSeqRef.current = null;
+    currentRoomRef.current = roomId;
     sendMessage(MessageType.JOIN, { roomId, username });
     setCurrentRoom(roomId);
     sendMessage(MessageType.ROOM_PRESENCE, { roomId });
@@ -242,6 +350,8 @@ export function useWebSocket(username: string | null) {
   const leaveRoom = useCallback(() => {
     if (currentRoom) {
       sendMessage(MessageType.LEAVE, { roomId: currentRoom, username });
+      currentRoomRef.current = null;
+      lastSeqRef.current = null;
       setCurrentRoom(null);
     }
   }, [currentRoom, sendMessage, username]);
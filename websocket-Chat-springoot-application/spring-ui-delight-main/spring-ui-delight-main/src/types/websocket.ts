@@ -1,6 +1,7 @@
 // WebSocket message types matching Spring Boot backend
 export enum MessageType {
   JOIN = 'JOIN',
+  RESUME = 'RESUME',
   LEAVE = 'LEAVE',
   PING = 'PING',
   SYSTEM = 'SYSTEM',
@@ -14,6 +15,11 @@ export enum MessageType {
   CALL_REQUEST = 'CALL_REQUEST',
   CALL_RESPONSE = 'CALL_RESPONSE',
   CALL_HANGUP = 'CALL_HANGUP',
+  HISTORY = 'HISTORY',
+  USER_ONLINE = 'USER_ONLINE',
+  USER_OFFLINE = 'USER_OFFLINE',
+  USER_MOVED = 'USER_MOVED',
+  PRESENCE_BATCH = 'PRESENCE_BATCH',
 }
 
 export interface User {
@@ -38,6 +44,16 @@ export interface WebSocketMessage {
   timestamp: Date;
   senderId?: string;
   senderName?: string;
+  // Position in the room's stream, on CHAT, HISTORY and relayed signaling frames.
+  seq?: number;
+}
+
+// One entry of a PRESENCE_BATCH frame: USER_ONLINE / USER_OFFLINE / USER_MOVED for the
+// online scope, JOIN / LEAVE for a room scope.
+export interface PresenceEvent {
+  type: MessageType;
+  username: string;
+  roomId?: string;
 }
 
 export interface JoinRoomPayload {
@@ -45,6 +61,12 @@ export interface JoinRoomPayload {
   username: string;
 }
 
+// Rejoins a room after a reconnect; the server replays the CHAT frames after lastSeq.
+export interface ResumeRoomPayload {
+  roomId: string;
+  lastSeq: number;
+}
+
 export interface LeaveRoomPayload {
   roomId: string;
   username: string;